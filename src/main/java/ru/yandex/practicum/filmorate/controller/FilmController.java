@@ -1,22 +1,42 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SimilarityBasis;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping
+@Slf4j
 public class FilmController {
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final JsonResponseCache responseCache;
 
     @Autowired
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, JsonResponseCache responseCache) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.responseCache = responseCache;
     }
 
     @PostMapping("/films")
@@ -24,19 +44,61 @@ public class FilmController {
         return filmService.createFilm(film);
     }
 
+    @PostMapping("/films/batch")
+    public List<BatchItemResult> createFilms(@RequestBody List<Film> films) {
+        return filmService.createFilms(films);
+    }
+
     @PutMapping("/films")
     public Film updateFilm(@RequestBody Film newFilm) {
         return filmService.updateFilm(newFilm);
     }
 
     @GetMapping("/films")
-    public Collection<Film> getAllFilms() {
-        return filmService.getAllFilms();
+    public Collection<Film> getAllFilms(@RequestParam(required = false) Long after,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestParam(required = false) String likes) {
+        if (after == null && limit == null) {
+            return filmService.getAllFilms(LikesView.parse(likes));
+        }
+        return filmService.getFilmsPage(after, limit, LikesView.parse(likes));
+    }
+
+    @GetMapping("/films/stream")
+    public ResponseEntity<StreamingResponseBody> streamAllFilms(@RequestParam(required = false) String likes) {
+        // Параметр разбирается до начала ответа, чтобы ошибка вернулась с кодом 400
+        LikesView likesView = LikesView.parse(likes);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                // Первый байт уходит клиенту сразу, дальше фильмы пишутся по мере чтения из БД
+                generator.flush();
+                filmService.streamAllFilms(film -> {
+                    try {
+                        generator.writeObject(film);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, likesView);
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                log.warn("Потоковая выгрузка фильмов прервана: {}", e.getMessage());
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
     }
 
     @GetMapping("/films/{id}")
-    public Film getFilm(@PathVariable Long id) {
-        return filmService.getFilm(id);
+    public ResponseEntity<byte[]> getFilm(@PathVariable Long id, @RequestParam(required = false) String likes,
+                                          WebRequest request) {
+        LikesView likesView = LikesView.parse(likes);
+        String etag = filmService.getFilmETag(id);
+        // Готовый JSON из кэша пишется в ответ как есть, без повторной сериализации; If-None-Match проверяет кэш
+        return responseCache.respond("film:" + id + ":" + likesView, etag,
+                () -> filmService.getFilm(id, likesView), request);
     }
 
     @PutMapping("/films/{id}/like/{userId}")
@@ -49,13 +111,61 @@ public class FilmController {
         filmService.deleteLike(id, userId);
     }
 
+    @PostMapping("/films/likes/batch")
+    public List<BatchItemResult> addLikes(@RequestBody List<Like> likes) {
+        return filmService.addLikes(likes);
+    }
+
     @GetMapping("/films/popular")
-    public Collection<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count) {
-        return filmService.getPopularFilms(count);
+    public ResponseEntity<byte[]> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                                  @RequestParam(required = false) Integer genreId,
+                                                  @RequestParam(required = false) Integer mpaId,
+                                                  @RequestParam(required = false) Integer year,
+                                                  @RequestParam(required = false) String likes,
+                                                  WebRequest request) {
+        LikesView likesView = LikesView.parse(likes);
+        String etag = filmService.getPopularFilmsETag();
+        String key = "popular:" + count + ":" + genreId + ":" + mpaId + ":" + year + ":" + likesView;
+        return responseCache.respond(key, etag,
+                () -> filmService.getPopularFilms(count, genreId, mpaId, year, likesView), request);
+    }
+
+    @GetMapping("/films/search")
+    public List<Film> searchFilms(@RequestParam(required = false) String query,
+                                  @RequestParam(required = false) String by,
+                                  @RequestParam(required = false) Integer limit,
+                                  @RequestParam(defaultValue = "false") boolean weighted,
+                                  @RequestParam(required = false) String likes) {
+        return filmService.searchFilms(query, SearchField.parse(by), limit, weighted, LikesView.parse(likes));
+    }
+
+    @GetMapping("/films/autocomplete")
+    public List<Film> autocompleteFilms(@RequestParam(required = false) String prefix,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestParam(required = false) String likes) {
+        return filmService.autocompleteFilms(prefix, limit, LikesView.parse(likes));
+    }
+
+    @GetMapping("/films/{id}/similar")
+    public List<Film> getSimilarFilms(@PathVariable Long id,
+                                      @RequestParam(required = false) Integer count,
+                                      @RequestParam(required = false) String by,
+                                      @RequestParam(required = false) String likes) {
+        return filmService.getSimilarFilms(id, count, SimilarityBasis.parse(by), LikesView.parse(likes));
+    }
+
+    @GetMapping("/users/{id}/recommendations")
+    public List<Film> getRecommendations(@PathVariable Long id,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) String likes) {
+        return filmService.getRecommendations(id, limit, LikesView.parse(likes));
     }
 
     @GetMapping("/genres")
-    public Collection<Genre> getAllGenres() {
+    public Collection<Genre> getAllGenres(WebRequest request) {
+        if (request.checkNotModified(filmService.getGenresETag())) {
+            return null;
+        }
         return filmService.getAllGenres();
     }
 
@@ -65,7 +175,10 @@ public class FilmController {
     }
 
     @GetMapping("/mpa")
-    public Collection<MpaRating> getAllMpa() {
+    public Collection<MpaRating> getAllMpa(WebRequest request) {
+        if (request.checkNotModified(filmService.getMpaETag())) {
+            return null;
+        }
         return filmService.getAllMpa();
     }
 
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+// Мост из блокирующего JDBC в Reactor: вызовы идут на отдельных потоках, их не больше, чем соединений в пуле.
+// Очередь задач ограничена, при переполнении клиент сразу получает 503
+@Component
+@Profile("reactive")
+@Slf4j
+public class JdbcBridge {
+    private final Scheduler scheduler;
+
+    public JdbcBridge(@Value("${spring.datasource.hikari.maximum-pool-size:10}") int threads,
+                      @Value("${filmorate.reactive.queue-capacity:1000}") int queueCapacity) {
+        this.scheduler = Schedulers.newBoundedElastic(threads, queueCapacity, "filmorate-jdbc");
+        log.info("Реактивное чтение: потоков JDBC {}, очередь до {}", threads, queueCapacity);
+    }
+
+    public <T> Mono<T> mono(Callable<T> call) {
+        return Mono.fromCallable(call)
+                .subscribeOn(scheduler)
+                .onErrorMap(RejectedExecutionException.class, e -> {
+                    log.warn("Очередь запросов к БД заполнена, запрос отклонен.");
+                    return new ServiceUnavailableException("Сервер перегружен, повторите запрос позже.");
+                });
+    }
+
+    public <T> Flux<T> flux(Callable<? extends Iterable<T>> call) {
+        return mono(call).flatMapIterable(items -> items);
+    }
+
+    @PreDestroy
+    public void dispose() {
+        scheduler.dispose();
+    }
+}
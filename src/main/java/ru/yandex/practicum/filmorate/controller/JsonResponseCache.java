@@ -0,0 +1,239 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.WebRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+// Готовые JSON-ответы в байтах, а для клиентов с gzip еще и в сжатом виде. Запись действительна, пока совпадает
+// ETag, под которым она сохранена: изменение фильма, его жанров или лайков меняет ETag, и запись пересобирается.
+// Объем ограничен max-bytes, при переполнении вытесняются давно не запрошенные ответы
+@Component
+@Slf4j
+public class JsonResponseCache {
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    // Порядок доступа: первым идет давно не запрошенный ответ. ReentrantLock не закрепляет виртуальный поток
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes;
+    private final Counter hits;
+    private final Counter misses;
+
+    public JsonResponseCache(ObjectMapper objectMapper, MeterRegistry registry,
+                             @Value("${filmorate.json-cache.max-bytes:33554432}") long maxBytes) {
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.hits = Counter.builder("filmorate.json.cache.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("filmorate.json.cache.requests").tag("result", "miss").register(registry);
+        Gauge.builder("filmorate.json.cache.entries", this, JsonResponseCache::size).register(registry);
+        Gauge.builder("filmorate.json.cache.bytes", this, JsonResponseCache::bytes)
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("filmorate.json.cache.hit.ratio", this, JsonResponseCache::hitRatio).register(registry);
+        log.info("Кэш JSON-ответов: до {} КБ", maxBytes >> 10);
+    }
+
+    // ETag вычисляется до загрузки данных: если запись успела между ними, сохраненный ответ просто не совпадет
+    // с новым ETag при следующем запросе. Сжатый ответ — другое представление с другими байтами, поэтому
+    // у него свой сильный ETag с суффиксом -gz. null, если у клиента уже есть это представление (ответ 304)
+    public ResponseEntity<byte[]> respond(String key, String etag, Supplier<?> loader, WebRequest request) {
+        boolean gzip = acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        // При совпадении If-None-Match ответ 304 уходит без запросов к БД
+        if (request.checkNotModified(gzip ? gzipETag(etag) : etag)) {
+            return null;
+        }
+
+        Entry entry = get(key, etag);
+        if (entry == null) {
+            misses.increment();
+            entry = new Entry(key, etag, serialize(loader.get()));
+            put(entry);
+        } else {
+            hits.increment();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip(entry));
+        }
+        return response.body(entry.json);
+    }
+
+    // gzip подходит, если он указан с ненулевым q или не указан, но разрешен через *
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim().toLowerCase();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        // Неразборчивое значение не считается разрешением: несжатый ответ подходит всегда
+                        quality = 0;
+                    }
+                }
+            }
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzipQuality = quality;
+            } else if (name.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    static String gzipETag(String etag) {
+        return etag.endsWith("\"") ? etag.substring(0, etag.length() - 1) + "-gz\"" : etag + "-gz";
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long bytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private Entry get(String key, String etag) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            return entry != null && entry.etag.equals(etag) ? entry : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(Entry entry) {
+        // Один большой ответ не должен вытеснить весь кэш
+        if (entry.json.length > maxBytes / 8) {
+            return;
+        }
+        lock.lock();
+        try {
+            Entry previous = entries.put(entry.key, entry);
+            if (previous != null) {
+                bytes -= previous.size();
+            }
+            bytes += entry.size();
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Сжатая копия строится при первом запросе с gzip и учитывается в объеме, только если запись еще в кэше
+    private byte[] gzip(Entry entry) {
+        byte[] gzip = entry.gzip;
+        if (gzip != null) {
+            return gzip;
+        }
+        gzip = compress(entry.json);
+        lock.lock();
+        try {
+            if (entry.gzip != null) {
+                return entry.gzip;
+            }
+            entry.gzip = gzip;
+            if (entries.get(entry.key) == entry) {
+                bytes += gzip.length;
+                evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return gzip;
+    }
+
+    private void evict() {
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            bytes -= eldest.next().size();
+            eldest.remove();
+        }
+    }
+
+    private byte[] serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] compress(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Entry {
+        private final String key;
+        private final String etag;
+        private final byte[] json;
+        private volatile byte[] gzip;
+
+        private Entry(String key, String etag, byte[] json) {
+            this.key = key;
+            this.etag = etag;
+            this.json = json;
+        }
+
+        // Ключ и ETag учитываются приблизительно, по два байта на символ
+        private long size() {
+            byte[] compressed = gzip;
+            return json.length + (compressed != null ? compressed.length : 0) + 2L * (key.length() + etag.length());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikesView;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Потоковые варианты чтения фильмов: те же пути, что у FilmController, но для Accept: application/x-ndjson.
+// Каждый фильм уходит клиенту отдельной строкой JSON, как только загружен
+@RestController
+@Profile("reactive")
+public class ReactiveFilmController {
+    private static final int PAGE_SIZE = 500;
+
+    private final FilmService filmService;
+    private final JdbcBridge jdbc;
+
+    public ReactiveFilmController(FilmService filmService, JdbcBridge jdbc) {
+        this.filmService = filmService;
+        this.jdbc = jdbc;
+    }
+
+    // Фильмы читаются страницами по id: следующая страница запрашивается, когда клиент принял предыдущую
+    @GetMapping(value = "/films", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Film> getAllFilms(@RequestParam(required = false) String likes) {
+        LikesView likesView = LikesView.parse(likes);
+        return page(0, likesView)
+                .expand(films -> films.size() < PAGE_SIZE ? Mono.empty() : page(films.getLast().getId(), likesView))
+                .flatMapIterable(films -> films);
+    }
+
+    @GetMapping(value = "/films/{id}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Film> getFilm(@PathVariable Long id, @RequestParam(required = false) String likes) {
+        LikesView likesView = LikesView.parse(likes);
+        return jdbc.mono(() -> filmService.getFilm(id, likesView)).flux();
+    }
+
+    @GetMapping(value = "/films/popular", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Film> getPopularFilms(@RequestParam(defaultValue = "10") int count,
+                                      @RequestParam(required = false) Integer genreId,
+                                      @RequestParam(required = false) Integer mpaId,
+                                      @RequestParam(required = false) Integer year,
+                                      @RequestParam(required = false) String likes) {
+        LikesView likesView = LikesView.parse(likes);
+        return jdbc.flux(() -> filmService.getPopularFilms(count, genreId, mpaId, year, likesView));
+    }
+
+    private Mono<List<Film>> page(long after, LikesView likesView) {
+        return jdbc.mono(() -> new ArrayList<>(filmService.getFilmsPage(after, PAGE_SIZE, likesView)));
+    }
+}
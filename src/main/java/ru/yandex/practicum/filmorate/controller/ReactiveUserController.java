@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+// Потоковый вариант списка друзей для Accept: application/x-ndjson
+@RestController
+@RequestMapping("/users")
+@Profile("reactive")
+public class ReactiveUserController {
+    private final UserService userService;
+    private final JdbcBridge jdbc;
+
+    public ReactiveUserController(UserService userService, JdbcBridge jdbc) {
+        this.userService = userService;
+        this.jdbc = jdbc;
+    }
+
+    @GetMapping(value = "/{id}/friends", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<User> getAllFriends(@PathVariable Long id) {
+        return jdbc.flux(() -> userService.getAllFriends(id));
+    }
+}
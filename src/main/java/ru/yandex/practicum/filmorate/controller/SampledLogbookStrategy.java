@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+import org.zalando.logbook.Strategy;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// В журнал попадает доля обменов и все ответы с ошибкой. Доля выбирается до обработки запроса: тела
+// пропущенных обменов не буферизуются, а их ответы с ошибкой пишутся без тел
+@Component
+@Profile("prod")
+@Slf4j
+public class SampledLogbookStrategy implements Strategy {
+    // Потерянные записи (исключение мимо фильтра Logbook) не должны копиться бесконечно
+    private static final int MAX_SAMPLED_IN_PROGRESS = 10_000;
+
+    private final double sampleRate;
+    private final int errorStatus;
+    // Logbook вызывает process(запрос), write(запрос) и process(ответ) подряд в одном потоке до обработки
+    // запроса, поэтому решение о выборке передается между ними через поток
+    private final ThreadLocal<Boolean> sampledInThread = new ThreadLocal<>();
+    // Обмены из выборки, ответ которых еще не записан: при асинхронной обработке он пишется в другом потоке
+    private final Set<String> sampledInProgress = ConcurrentHashMap.newKeySet();
+
+    public SampledLogbookStrategy(@Value("${filmorate.logging.http-sample-rate:0.01}") double sampleRate,
+                                  @Value("${filmorate.logging.http-error-status:400}") int errorStatus) {
+        this.sampleRate = sampleRate;
+        this.errorStatus = errorStatus;
+        log.info("Журнал HTTP: доля успешных запросов {}, ошибки от статуса {} пишутся всегда",
+                sampleRate, errorStatus);
+    }
+
+    @Override
+    public HttpRequest process(HttpRequest request) throws IOException {
+        boolean sampled = ThreadLocalRandom.current().nextDouble() < sampleRate;
+        sampledInThread.set(sampled);
+        return sampled ? request.withBody() : request.withoutBody();
+    }
+
+    @Override
+    public void write(Precorrelation precorrelation, HttpRequest request, Sink sink) {
+        // Запрос откладывается до ответа
+        if (Boolean.TRUE.equals(sampledInThread.get())) {
+            if (sampledInProgress.size() >= MAX_SAMPLED_IN_PROGRESS) {
+                log.warn("Журнал HTTP: {} обменов из выборки без ответа, список сброшен", sampledInProgress.size());
+                sampledInProgress.clear();
+            }
+            sampledInProgress.add(precorrelation.getId());
+        }
+    }
+
+    @Override
+    public HttpResponse process(HttpRequest request, HttpResponse response) throws IOException {
+        boolean sampled = Boolean.TRUE.equals(sampledInThread.get());
+        sampledInThread.remove();
+        return sampled ? response.withBody() : response.withoutBody();
+    }
+
+    @Override
+    public void write(Correlation correlation, HttpRequest request, HttpResponse response, Sink sink)
+            throws IOException {
+        boolean sampled = sampledInProgress.remove(correlation.getId());
+        if (sampled || response.getStatus() >= errorStatus) {
+            sink.writeBoth(correlation, request, response);
+        }
+    }
+}
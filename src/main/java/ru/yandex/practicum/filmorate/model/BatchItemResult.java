@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+    private int index;
+    private Long id;
+    private Status status;
+    private String error;
+
+    public enum Status {
+        // Запись сохранена
+        CREATED,
+        // Запись не прошла проверку и не отправлялась в БД
+        REJECTED,
+        // Запись прошла проверку, но БД ее не приняла
+        FAILED
+    }
+
+    public static BatchItemResult created(int index, Long id) {
+        return new BatchItemResult(index, id, Status.CREATED, null);
+    }
+
+    public static BatchItemResult rejected(int index, String error) {
+        return new BatchItemResult(index, null, Status.REJECTED, error);
+    }
+
+    public static BatchItemResult failed(int index, String error) {
+        return new BatchItemResult(index, null, Status.FAILED, error);
+    }
+}
@@ -1,6 +1,8 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -21,7 +23,14 @@ public class Film {
 
     @JsonProperty("mpa")
     private MpaRating mpaRating;
-    private Set<Long> likes = new HashSet<>();
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonDeserialize(as = IdSet.class)
+    private Set<Long> likes = new IdSet();
+
+    // Заполняется вместо likes, когда клиент запросил только число лайков
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Integer likeCount;
 
     @JsonProperty("genres")
     private Set<Genre> filmGenres = new HashSet<>();
@@ -0,0 +1,534 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+// Множество id на отсортированном массиве long: 8 байт на элемент вместо упакованного Long в HashSet.
+// Вставка или удаление в середине большого множества сдвигали бы весь хвост массива, поэтому при первой
+// такой операции массив делится на блоки до CHUNK_SIZE id, и дальше сдвигается только один блок
+@JsonSerialize(using = IdSet.Serializer.class)
+public class IdSet extends AbstractSet<Long> {
+    private static final long[] EMPTY = new long[0];
+    // Во сколько раз большее множество должно превосходить меньшее, чтобы слияние сменилось поиском галопом
+    private static final int GALLOP_RATIO = 16;
+    // Блок — 4 КБ: сдвиг внутри него дешев, а на миллион id приходится около двух тысяч блоков
+    static final int CHUNK_SIZE = 512;
+    // Пока множество не разбито на блоки, id лежат в ids, а chunks равен null
+    private long[] ids;
+    private long[][] chunks;
+    private int[] chunkSizes;
+    private int chunkCount;
+    private int size;
+    private int modCount;
+
+    public IdSet() {
+        ids = EMPTY;
+    }
+
+    public IdSet(int capacity) {
+        ids = capacity > 0 ? new long[capacity] : EMPTY;
+    }
+
+    public IdSet(Collection<Long> source) {
+        if (source instanceof IdSet other) {
+            ids = other.toLongArray();
+            size = ids.length;
+            return;
+        }
+        ids = source.isEmpty() ? EMPTY : new long[source.size()];
+        for (Long id : source) {
+            ids[size++] = id;
+        }
+        sortAndDeduplicate();
+    }
+
+    public static IdSet of(long... values) {
+        IdSet set = new IdSet(values.length);
+        System.arraycopy(values, 0, set.ids, 0, values.length);
+        set.size = values.length;
+        set.sortAndDeduplicate();
+        return set;
+    }
+
+    public boolean contains(long id) {
+        if (chunks == null) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+        int chunk = chunkFor(id);
+        return chunk < chunkCount && Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], id) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long id && contains(id.longValue());
+    }
+
+    public boolean add(long id) {
+        if (chunks == null) {
+            // Строки из БД приходят отсортированными, поэтому обычно id просто дописывается в конец
+            if (size == 0 || ids[size - 1] < id) {
+                ensureCapacity(size + 1);
+                ids[size++] = id;
+                modCount++;
+                return true;
+            }
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position >= 0) {
+                return false;
+            }
+            int insertAt = -position - 1;
+            if (size - insertAt <= CHUNK_SIZE) {
+                ensureCapacity(size + 1);
+                System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+                ids[insertAt] = id;
+                size++;
+                modCount++;
+                return true;
+            }
+            splitIntoChunks();
+        }
+        return addToChunk(id);
+    }
+
+    @Override
+    public boolean add(Long id) {
+        return add(id.longValue());
+    }
+
+    public boolean remove(long id) {
+        if (chunks == null) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            removeAt(0, position);
+            return true;
+        }
+        int chunk = chunkFor(id);
+        int position = chunk < chunkCount ? Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], id) : -1;
+        if (position < 0) {
+            return false;
+        }
+        removeAt(chunk, position);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long id && remove(id.longValue());
+    }
+
+    @Override
+    public void clear() {
+        if (chunks != null) {
+            chunks = null;
+            chunkSizes = null;
+            chunkCount = 0;
+            ids = EMPTY;
+        }
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int block;
+            private int index;
+            // Сколько id уже выдано
+            private int returned;
+            private boolean canRemove;
+            private int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return returned < size;
+            }
+
+            @Override
+            public Long next() {
+                if (expectedModCount != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (returned >= size) {
+                    throw new NoSuchElementException();
+                }
+                while (index >= blockSize(block)) {
+                    index -= blockSize(block);
+                    block++;
+                }
+                returned++;
+                canRemove = true;
+                return block(block)[index++];
+            }
+
+            @Override
+            public void remove() {
+                if (!canRemove) {
+                    throw new IllegalStateException();
+                }
+                // Удаление может разбить массив на блоки или убрать опустевший блок, поэтому позиция ищется заново
+                removeAt(--returned);
+                block = 0;
+                index = returned;
+                canRemove = false;
+                expectedModCount = modCount;
+            }
+        };
+    }
+
+    // Пересечение слиянием отсортированных массивов за O(n + m); блоки обоих множеств обходятся по порядку
+    public IdSet intersection(IdSet other) {
+        IdSet result = new IdSet(Math.min(size, other.size));
+        int i = 0;
+        int j = 0;
+        while (i < blockCount() && j < other.blockCount()) {
+            long[] first = block(i);
+            long[] second = other.block(j);
+            int firstSize = blockSize(i);
+            int secondSize = other.blockSize(j);
+            result.size = intersect(first, firstSize, second, secondSize, result.ids, result.size);
+            if (first[firstSize - 1] <= second[secondSize - 1]) {
+                i++;
+            }
+            if (first[firstSize - 1] >= second[secondSize - 1]) {
+                j++;
+            }
+        }
+        result.trimToSize();
+        return result;
+    }
+
+    // Размер пересечения без создания результата
+    public int intersectionSize(IdSet other) {
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < blockCount() && j < other.blockCount()) {
+            long[] first = block(i);
+            long[] second = other.block(j);
+            int firstSize = blockSize(i);
+            int secondSize = other.blockSize(j);
+            count += countCommon(first, firstSize, second, secondSize);
+            if (first[firstSize - 1] <= second[secondSize - 1]) {
+                i++;
+            }
+            if (first[firstSize - 1] >= second[secondSize - 1]) {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public void forEachId(LongConsumer action) {
+        for (int block = 0; block < blockCount(); block++) {
+            long[] values = block(block);
+            for (int i = 0, length = blockSize(block); i < length; i++) {
+                action.accept(values[i]);
+            }
+        }
+    }
+
+    public long[] toLongArray() {
+        if (chunks == null) {
+            return Arrays.copyOf(ids, size);
+        }
+        long[] result = new long[size];
+        int offset = 0;
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            System.arraycopy(chunks[chunk], 0, result, offset, chunkSizes[chunk]);
+            offset += chunkSizes[chunk];
+        }
+        return result;
+    }
+
+    public void trimToSize() {
+        if (chunks != null) {
+            chunks = Arrays.copyOf(chunks, chunkCount);
+            chunkSizes = Arrays.copyOf(chunkSizes, chunkCount);
+        } else if (ids.length > size) {
+            ids = size > 0 ? Arrays.copyOf(ids, size) : EMPTY;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IdSet other) {
+            if (chunks == null && other.chunks == null) {
+                return Arrays.equals(ids, 0, size, other.ids, 0, other.size);
+            }
+            return size == other.size && Arrays.equals(toLongArray(), other.toLongArray());
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // Совпадает с контрактом Set.hashCode: сумма Long.hashCode элементов
+        int hash = 0;
+        for (int block = 0; block < blockCount(); block++) {
+            long[] values = block(block);
+            for (int i = 0, length = blockSize(block); i < length; i++) {
+                hash += Long.hashCode(values[i]);
+            }
+        }
+        return hash;
+    }
+
+    // Неразбитое множество — это один блок
+    private int blockCount() {
+        return chunks != null ? chunkCount : (size > 0 ? 1 : 0);
+    }
+
+    private long[] block(int block) {
+        return chunks != null ? chunks[block] : ids;
+    }
+
+    private int blockSize(int block) {
+        return chunks != null ? chunkSizes[block] : size;
+    }
+
+    // Первый блок, последний id которого не меньше id; chunkCount, если таких нет
+    private int chunkFor(long id) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (chunks[mid][chunkSizes[mid] - 1] < id) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private boolean addToChunk(long id) {
+        int chunk = Math.min(chunkFor(id), chunkCount - 1);
+        int position = Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], id);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        if (chunkSizes[chunk] == CHUNK_SIZE) {
+            if (insertAt == CHUNK_SIZE && chunk == chunkCount - 1) {
+                // Дописывание в конец открывает новый блок, а не делит заполненный пополам
+                insertChunk(++chunk, new long[CHUNK_SIZE], 0);
+                insertAt = 0;
+            } else {
+                int half = splitChunk(chunk);
+                if (insertAt > half) {
+                    chunk++;
+                    insertAt -= half;
+                }
+            }
+        }
+        long[] target = chunks[chunk];
+        System.arraycopy(target, insertAt, target, insertAt + 1, chunkSizes[chunk] - insertAt);
+        target[insertAt] = id;
+        chunkSizes[chunk]++;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    private void removeAt(int position) {
+        int block = 0;
+        while (position >= blockSize(block)) {
+            position -= blockSize(block);
+            block++;
+        }
+        removeAt(block, position);
+    }
+
+    private void removeAt(int block, int index) {
+        if (chunks == null) {
+            if (size - index - 1 <= CHUNK_SIZE) {
+                System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+                size--;
+                modCount++;
+                return;
+            }
+            splitIntoChunks();
+            block = index / CHUNK_SIZE;
+            index %= CHUNK_SIZE;
+        }
+        long[] chunk = chunks[block];
+        System.arraycopy(chunk, index + 1, chunk, index, chunkSizes[block] - index - 1);
+        chunkSizes[block]--;
+        size--;
+        modCount++;
+        if (chunkSizes[block] == 0) {
+            removeChunk(block);
+        }
+    }
+
+    private void splitIntoChunks() {
+        int count = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new long[count + 1][];
+        chunkSizes = new int[count + 1];
+        for (int chunk = 0; chunk < count; chunk++) {
+            int from = chunk * CHUNK_SIZE;
+            chunks[chunk] = new long[CHUNK_SIZE];
+            chunkSizes[chunk] = Math.min(CHUNK_SIZE, size - from);
+            System.arraycopy(ids, from, chunks[chunk], 0, chunkSizes[chunk]);
+        }
+        chunkCount = count;
+        ids = null;
+    }
+
+    // Заполненный блок делится пополам; возвращает размер левой половины
+    private int splitChunk(int chunk) {
+        int half = CHUNK_SIZE / 2;
+        long[] upper = new long[CHUNK_SIZE];
+        System.arraycopy(chunks[chunk], half, upper, 0, CHUNK_SIZE - half);
+        chunkSizes[chunk] = half;
+        insertChunk(chunk + 1, upper, CHUNK_SIZE - half);
+        return half;
+    }
+
+    private void insertChunk(int at, long[] chunk, int chunkSize) {
+        if (chunkCount == chunks.length) {
+            int capacity = Math.max(4, chunkCount + (chunkCount >> 1));
+            chunks = Arrays.copyOf(chunks, capacity);
+            chunkSizes = Arrays.copyOf(chunkSizes, capacity);
+        }
+        System.arraycopy(chunks, at, chunks, at + 1, chunkCount - at);
+        System.arraycopy(chunkSizes, at, chunkSizes, at + 1, chunkCount - at);
+        chunks[at] = chunk;
+        chunkSizes[at] = chunkSize;
+        chunkCount++;
+    }
+
+    private void removeChunk(int at) {
+        System.arraycopy(chunks, at + 1, chunks, at, chunkCount - at - 1);
+        System.arraycopy(chunkSizes, at + 1, chunkSizes, at, chunkCount - at - 1);
+        chunks[--chunkCount] = null;
+        if (chunkCount == 0) {
+            chunks = null;
+            chunkSizes = null;
+            ids = EMPTY;
+        }
+    }
+
+    // Дописывает общие id двух отсортированных массивов в out, возвращает новый размер out
+    private static int intersect(long[] first, int firstSize, long[] second, int secondSize, long[] out, int outSize) {
+        int i = 0;
+        int j = 0;
+        while (i < firstSize && j < secondSize) {
+            if (first[i] == second[j]) {
+                out[outSize++] = first[i];
+                i++;
+                j++;
+            } else if (first[i] < second[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return outSize;
+    }
+
+    private static int countCommon(long[] first, int firstSize, long[] second, int secondSize) {
+        long[] small = firstSize <= secondSize ? first : second;
+        long[] large = small == first ? second : first;
+        int smallSize = Math.min(firstSize, secondSize);
+        int largeSize = Math.max(firstSize, secondSize);
+        if (smallSize == 0) {
+            return 0;
+        }
+
+        int count = 0;
+        if (largeSize / smallSize >= GALLOP_RATIO) {
+            int from = 0;
+            for (int i = 0; i < smallSize && from < largeSize; i++) {
+                from = gallop(large, from, largeSize, small[i]);
+                if (from < largeSize && large[from] == small[i]) {
+                    count++;
+                    from++;
+                }
+            }
+            return count;
+        }
+
+        int i = 0;
+        int j = 0;
+        while (i < smallSize && j < largeSize) {
+            if (small[i] == large[j]) {
+                count++;
+                i++;
+                j++;
+            } else if (small[i] < large[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    // Первая позиция в [from, to), где значение не меньше id: шаг растет вдвое, затем бинарный поиск
+    private static int gallop(long[] ids, int from, int to, long id) {
+        int bound = 1;
+        while (from + bound < to && ids[from + bound] < id) {
+            bound <<= 1;
+        }
+        int position = Arrays.binarySearch(ids, from + (bound >>> 1), Math.min(from + bound + 1, to), id);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, Math.max(4, ids.length + (ids.length >> 1))));
+        }
+    }
+
+    private void sortAndDeduplicate() {
+        Arrays.sort(ids, 0, size);
+        int unique = 0;
+        for (int i = 0; i < size; i++) {
+            if (unique == 0 || ids[unique - 1] != ids[i]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        size = unique;
+    }
+
+    // Пишет массив чисел напрямую из long[], без упаковки в Long
+    public static class Serializer extends StdSerializer<IdSet> {
+        public Serializer() {
+            super(IdSet.class);
+        }
+
+        @Override
+        public void serialize(IdSet value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (value.chunks == null) {
+                generator.writeArray(value.ids, 0, value.size);
+                return;
+            }
+            generator.writeStartArray(value, value.size);
+            for (int chunk = 0; chunk < value.chunkCount; chunk++) {
+                for (int i = 0; i < value.chunkSizes[chunk]; i++) {
+                    generator.writeNumber(value.chunks[chunk][i]);
+                }
+            }
+            generator.writeEndArray();
+        }
+    }
+}
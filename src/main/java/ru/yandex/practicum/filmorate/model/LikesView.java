@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+public enum LikesView {
+    // Полный список id пользователей, поставивших лайк
+    IDS,
+    // Только число лайков: список id не читается из БД и не создается
+    COUNT;
+
+    public static LikesView parse(String value) {
+        if (value == null || value.equalsIgnoreCase("ids")) {
+            return IDS;
+        }
+        if (value.equalsIgnoreCase("count")) {
+            return COUNT;
+        }
+        throw new ValidationException("Параметр likes должен быть ids или count.");
+    }
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+public enum SearchField {
+    // Название фильма
+    TITLE,
+    // Описание фильма
+    DESCRIPTION;
+
+    // Список через запятую, например "title,description"; без параметра поиск идет по обоим полям
+    public static Set<SearchField> parse(String value) {
+        if (value == null || value.isBlank()) {
+            return EnumSet.allOf(SearchField.class);
+        }
+        Set<SearchField> fields = EnumSet.noneOf(SearchField.class);
+        for (String part : value.split(",")) {
+            try {
+                fields.add(valueOf(part.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                throw new ValidationException("Параметр by должен содержать title и/или description.");
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.model;
+
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+
+public enum SimilarityBasis {
+    // Сходство по общим лайкнувшим пользователям
+    LIKES,
+    // Сходство по жанрам, рейтингу MPA, году выхода и длительности
+    CONTENT;
+
+    public static SimilarityBasis parse(String value) {
+        if (value == null || value.equalsIgnoreCase("likes")) {
+            return LIKES;
+        }
+        if (value.equalsIgnoreCase("content")) {
+            return CONTENT;
+        }
+        throw new ValidationException("Параметр by должен быть likes или content.");
+    }
+}
@@ -1,32 +1,65 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SimilarityBasis;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmService {
 
     Film createFilm(Film film);
 
+    List<BatchItemResult> createFilms(List<Film> films);
+
     Film updateFilm(Film newFilm);
 
-    Collection<Film> getAllFilms();
+    Collection<Film> getAllFilms(LikesView likesView);
+
+    Collection<Film> getFilmsPage(Long after, Integer limit, LikesView likesView);
+
+    void streamAllFilms(Consumer<Film> consumer, LikesView likesView);
 
-    Film getFilm(Long id);
+    Film getFilm(Long id, LikesView likesView);
+
+    String getFilmETag(Long id);
 
     void addLike(Long id, Long userId);
 
     void deleteLike(Long id, Long userId);
 
-    Collection<Film> getPopularFilms(int count);
+    List<BatchItemResult> addLikes(List<Like> likes);
+
+    Collection<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year, LikesView likesView);
+
+    String getPopularFilmsETag();
+
+    List<Film> getRecommendations(Long userId, Integer limit, LikesView likesView);
+
+    List<Film> searchFilms(String query, Set<SearchField> fields, Integer limit, boolean weighted,
+                           LikesView likesView);
+
+    List<Film> autocompleteFilms(String prefix, Integer limit, LikesView likesView);
+
+    List<Film> getSimilarFilms(Long id, Integer count, SimilarityBasis basis, LikesView likesView);
 
     Collection<Genre> getAllGenres();
 
+    String getGenresETag();
+
     Genre getGenreById(int id);
 
     Collection<MpaRating> getAllMpa();
 
+    String getMpaETag();
+
     MpaRating getMpaById(int id);
 }
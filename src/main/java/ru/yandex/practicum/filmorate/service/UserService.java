@@ -1,19 +1,27 @@
 package ru.yandex.practicum.filmorate.service;
 
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 public interface UserService {
     User createUser(User user);
 
+    List<BatchItemResult> createUsers(List<User> users);
+
     User updateUser(User newUser);
 
     Collection<User> getAllUsers();
 
+    Collection<User> getUsersPage(Long after, Integer limit);
+
     User getUser(Long id);
 
+    String getUserETag(Long id);
+
     void addFriend(Long id, Long friendId);
 
     void deleteFriend(Long id, Long friendId);
@@ -21,4 +29,6 @@ public interface UserService {
     Set<User> getAllFriends(Long id);
 
     Collection<User> getCommonFriends(Long id, Long otherId);
+
+    List<User> getFriendSuggestions(Long id, Integer limit);
 }
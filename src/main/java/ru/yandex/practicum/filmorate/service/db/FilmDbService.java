@@ -3,20 +3,34 @@ package ru.yandex.practicum.filmorate.service.db;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.model.MpaRating;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.SearchField;
+import ru.yandex.practicum.filmorate.model.SimilarityBasis;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.db.LikesStorage;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+import ru.yandex.practicum.filmorate.storage.memory.LikesMatrix;
+import ru.yandex.practicum.filmorate.storage.memory.RecommendationPrecomputer;
 
 import java.time.LocalDate;
-import java.util.Collection;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 @Primary
@@ -25,20 +39,90 @@ public class FilmDbService implements FilmService {
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final LikesStorage likesStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final LikesMatrix likesMatrix;
+    private final FilmFeatureIndex featureIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmTitleIndex titleIndex;
+    private final Optional<RecommendationPrecomputer> recommendationPrecomputer;
+    private final EntityVersions versions;
     private static final int MAX_DESCRIPTION_LENGTH = 200;
     private static final LocalDate DECEMBER_1895 = LocalDate.of(1895,12,28);
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 100_000;
+    private static final int DEFAULT_RECOMMENDATIONS_LIMIT = 10;
+    private static final int MAX_RECOMMENDATIONS_LIMIT = 100;
+    private static final int DEFAULT_SIMILAR_COUNT = 10;
+    private static final int MAX_SIMILAR_COUNT = 100;
+    private static final int DEFAULT_SEARCH_LIMIT = 10;
+    private static final int MAX_SEARCH_LIMIT = 100;
+    private static final int DEFAULT_AUTOCOMPLETE_LIMIT = 10;
 
     @Autowired
-    public FilmDbService(FilmStorage filmStorage, UserStorage userStorage, LikesStorage likesStorage) {
+    public FilmDbService(FilmStorage filmStorage, UserStorage userStorage, LikesStorage likesStorage,
+                         FilmPopularityIndex popularityIndex, LikesMatrix likesMatrix, FilmFeatureIndex featureIndex,
+                         FilmSearchIndex searchIndex, FilmTitleIndex titleIndex,
+                         Optional<RecommendationPrecomputer> recommendationPrecomputer, EntityVersions versions) {
         this.filmStorage = filmStorage;
         this.userStorage = userStorage;
         this.likesStorage = likesStorage;
+        this.popularityIndex = popularityIndex;
+        this.likesMatrix = likesMatrix;
+        this.featureIndex = featureIndex;
+        this.searchIndex = searchIndex;
+        this.titleIndex = titleIndex;
+        this.recommendationPrecomputer = recommendationPrecomputer;
+        this.versions = versions;
     }
 
     @Override
     public Film createFilm(Film film) {
         validateFilm(film);
-        return filmStorage.createFilm(film);
+        Film createdFilm = filmStorage.createFilm(film);
+        popularityIndex.putFilm(createdFilm);
+        return createdFilm;
+    }
+
+    @Override
+    public List<BatchItemResult> createFilms(List<Film> films) {
+        validateBatchSize(films);
+        BatchItemResult[] results = new BatchItemResult[films.size()];
+
+        // Сначала проверяется весь пакет, в БД уходят только корректные фильмы
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            try {
+                validateBatchItem(films.get(i));
+                validateFilm(films.get(i));
+                validateFilmReferences(films.get(i));
+                validIndexes.add(i);
+            } catch (ValidationException | NotFoundException e) {
+                results[i] = BatchItemResult.rejected(i, e.getMessage());
+            }
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = validIndexes.subList(from, Math.min(from + BATCH_CHUNK_SIZE, validIndexes.size()));
+            try {
+                saveFilmsChunk(films, chunk, results);
+            } catch (DataAccessException e) {
+                // Транзакция пакета откатилась: сохраняем фильмы по одному, чтобы найти виновника
+                log.warn("Пакет фильмов не сохранен, повтор по одному: {}", e.getMessage());
+                for (Integer index : chunk) {
+                    try {
+                        saveFilmsChunk(films, List.of(index), results);
+                    } catch (DataAccessException itemException) {
+                        results[index] = BatchItemResult.failed(index, "Фильм не сохранен в БД.");
+                    }
+                }
+            }
+        }
+
+        log.debug("Пакетная загрузка фильмов завершена. Получено: {}, сохранено: {}",
+                films.size(), countCreated(results));
+        return Arrays.asList(results);
     }
 
     @Override
@@ -48,47 +132,225 @@ public class FilmDbService implements FilmService {
         }
         validateFilm(newFilm);
 
-        return filmStorage.updateFilm(newFilm);
+        Film updatedFilm = filmStorage.updateFilm(newFilm);
+        popularityIndex.putFilm(updatedFilm);
+        return updatedFilm;
     }
 
     @Override
-    public Collection<Film> getAllFilms() {
-        return filmStorage.getAllFilms();
+    public Collection<Film> getAllFilms(LikesView likesView) {
+        return filmStorage.getAllFilms(likesView);
     }
 
     @Override
-    public Film getFilm(Long id) {
-        return filmStorage.getFilm(id);
+    public Collection<Film> getFilmsPage(Long after, Integer limit, LikesView likesView) {
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (after != null && after < 0) {
+            throw new ValidationException("Параметр after не может быть отрицательным.");
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_PAGE_SIZE + ".");
+        }
+
+        return filmStorage.getFilmsPage(after != null ? after : 0, pageSize, likesView);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer, LikesView likesView) {
+        filmStorage.streamAllFilms(consumer, likesView);
+    }
+
+    @Override
+    public Film getFilm(Long id, LikesView likesView) {
+        return filmStorage.getFilm(id, likesView);
+    }
+
+    @Override
+    public String getFilmETag(Long id) {
+        // У несуществующего фильма ETag нет: иначе 404 ушел бы с ETag, а If-None-Match мог бы получить 304.
+        // Обычно хватает индекса в памяти, в БД проверяется только фильм, которого в индексе еще нет
+        if (!popularityIndex.containsFilm(id) && !filmStorage.existsById(id)) {
+            log.warn("Фильм с id = {} не найден", id);
+            throw new NotFoundException("Фильм с id = " + id + " не найден");
+        }
+        return versions.toETag(versions.getFilmVersion(id));
     }
 
     @Override
     public void addLike(Long id, Long userId) {
-        Film film = filmStorage.getFilm(id);
         validateLike(id, userId);
-        if (film.getLikes().contains(userId)) {
+        // Рейтинг узнает о лайке до записи: иначе перестроение, прочитавшее уже записанный лайк,
+        // получило бы его еще раз от changeLikes
+        popularityIndex.beginLikeChange(id);
+        boolean added = false;
+        try {
+            added = likesStorage.addLike(id, userId);
+        } finally {
+            popularityIndex.changeLikes(id, added ? 1 : 0);
+        }
+        if (!added) {
             log.warn("Попытка повторно поставить лайк фильму");
             throw new ValidationException("Фильм можно лайкнуть только один раз!");
         }
 
-        likesStorage.addLike(id, userId);
+        titleIndex.changeLikes(id, 1);
+        likesMatrix.addLike(id, userId);
     }
 
     @Override
     public void deleteLike(Long id, Long userId) {
-        Film film = filmStorage.getFilm(id);
         validateLike(id, userId);
-        if (!film.getLikes().contains(userId)) {
+        popularityIndex.beginLikeChange(id);
+        boolean deleted = false;
+        try {
+            deleted = likesStorage.deleteLike(id, userId);
+        } finally {
+            popularityIndex.changeLikes(id, deleted ? -1 : 0);
+        }
+        if (!deleted) {
             log.warn("Попытка удалить несуществующий лайк. Ранее лайк этому фильму не был поставлен");
             throw new ValidationException("Нельзя удалить несуществующий лайк. " +
                     "Ранее лайк этому фильму не был поставлен");
+        }
+
+        titleIndex.changeLikes(id, -1);
+        likesMatrix.deleteLike(id, userId);
+    }
+
+    @Override
+    public List<BatchItemResult> addLikes(List<Like> likes) {
+        validateBatchSize(likes);
+        BatchItemResult[] results = new BatchItemResult[likes.size()];
+
+        for (int from = 0; from < likes.size(); from += BATCH_CHUNK_SIZE) {
+            int to = Math.min(from + BATCH_CHUNK_SIZE, likes.size());
+            List<Integer> chunk = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                Like like = likes.get(i);
+                if (like == null || like.getFilmId() == null || like.getUserId() == null) {
+                    results[i] = BatchItemResult.rejected(i, "Не указаны id фильма и пользователя.");
+                } else {
+                    chunk.add(i);
+                }
+            }
+
+            // Существование фильмов и пользователей проверяется двумя запросами на весь пакет
+            Set<Long> existingFilms = filmStorage.getExistingIds(chunk.stream()
+                    .map(i -> likes.get(i).getFilmId())
+                    .collect(Collectors.toSet()));
+            Set<Long> existingUsers = userStorage.getExistingIds(chunk.stream()
+                    .map(i -> likes.get(i).getUserId())
+                    .collect(Collectors.toSet()));
+            List<Integer> validChunk = new ArrayList<>();
+            for (Integer i : chunk) {
+                if (!existingFilms.contains(likes.get(i).getFilmId())) {
+                    results[i] = BatchItemResult.rejected(i, "Фильм с id = " + likes.get(i).getFilmId() + " не найден");
+                } else if (!existingUsers.contains(likes.get(i).getUserId())) {
+                    results[i] = BatchItemResult.rejected(i,
+                            "Пользователь с userId = " + likes.get(i).getUserId() + " не найден");
+                } else {
+                    validChunk.add(i);
+                }
             }
 
-        likesStorage.deleteLike(id, userId);
+            try {
+                saveLikesChunk(likes, validChunk, results);
+            } catch (DataAccessException e) {
+                log.warn("Пакет лайков не сохранен, повтор по одному: {}", e.getMessage());
+                for (Integer index : validChunk) {
+                    try {
+                        saveLikesChunk(likes, List.of(index), results);
+                    } catch (DataAccessException itemException) {
+                        results[index] = BatchItemResult.failed(index, "Лайк не сохранен в БД.");
+                    }
+                }
+            }
+        }
+
+        log.debug("Пакетная загрузка лайков завершена. Получено: {}, добавлено: {}",
+                likes.size(), countCreated(results));
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public Collection<Film> getPopularFilms(int count, Integer genreId, Integer mpaId, Integer year,
+                                            LikesView likesView) {
+        return filmStorage.getFilmsByIds(popularityIndex.getTopFilmIds(count, genreId, mpaId, year), likesView);
+    }
+
+    // В ответ входят данные фильмов и порядок рейтинга, ETag меняется при изменении любого из них
+    @Override
+    public String getPopularFilmsETag() {
+        return versions.toETag(versions.getFilmsVersion(), popularityIndex.getVersion());
+    }
+
+    @Override
+    public List<Film> getRecommendations(Long userId, Integer limit, LikesView likesView) {
+        int recommendationsLimit = limit != null ? limit : DEFAULT_RECOMMENDATIONS_LIMIT;
+        if (recommendationsLimit < 1 || recommendationsLimit > MAX_RECOMMENDATIONS_LIMIT) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_RECOMMENDATIONS_LIMIT + ".");
+        }
+        if (!userStorage.existsById(userId)) {
+            log.warn("Пользователь с userId = {} не найден", userId);
+            throw new NotFoundException("Пользователь с userId = " + userId + " не найден");
+        }
+
+        // При фоновом расчете запрос только читает готовый список; без него список считается по матрице лайков
+        long[] filmIds = recommendationPrecomputer
+                .map(precomputer -> precomputer.getRecommendations(userId, recommendationsLimit))
+                .orElse(null);
+        if (filmIds == null) {
+            filmIds = likesMatrix.recommendFilms(userId, recommendationsLimit);
+        }
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList(), likesView);
     }
 
     @Override
-    public Collection<Film> getPopularFilms(int count) {
-        return filmStorage.getPopularFilms(count);
+    public List<Film> searchFilms(String query, Set<SearchField> fields, Integer limit, boolean weighted,
+                                  LikesView likesView) {
+        int searchLimit = limit != null ? limit : DEFAULT_SEARCH_LIMIT;
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Параметр query не может быть пустым.");
+        }
+        if (searchLimit < 1 || searchLimit > MAX_SEARCH_LIMIT) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_SEARCH_LIMIT + ".");
+        }
+
+        long[] filmIds = searchIndex.search(query, fields.contains(SearchField.TITLE),
+                fields.contains(SearchField.DESCRIPTION), searchLimit, weighted ? popularityIndex::getLikeCount : null);
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList(), likesView);
+    }
+
+    @Override
+    public List<Film> autocompleteFilms(String prefix, Integer limit, LikesView likesView) {
+        int autocompleteLimit = limit != null ? limit : DEFAULT_AUTOCOMPLETE_LIMIT;
+        if (prefix == null || prefix.isBlank()) {
+            throw new ValidationException("Параметр prefix не может быть пустым.");
+        }
+        if (autocompleteLimit < 1 || autocompleteLimit > FilmTitleIndex.TOP_K) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + FilmTitleIndex.TOP_K + ".");
+        }
+
+        long[] filmIds = titleIndex.complete(prefix, autocompleteLimit);
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList(), likesView);
+    }
+
+    @Override
+    public List<Film> getSimilarFilms(Long id, Integer count, SimilarityBasis basis, LikesView likesView) {
+        int similarCount = count != null ? count : DEFAULT_SIMILAR_COUNT;
+        if (similarCount < 1 || similarCount > MAX_SIMILAR_COUNT) {
+            throw new ValidationException("Параметр count должен быть от 1 до " + MAX_SIMILAR_COUNT + ".");
+        }
+        if (!filmStorage.existsById(id)) {
+            log.warn("Фильм с id = {} не найден", id);
+            throw new NotFoundException("Фильм с id = " + id + " не найден");
+        }
+
+        long[] filmIds = switch (basis) {
+            case LIKES -> likesMatrix.getSimilarFilms(id, similarCount);
+            case CONTENT -> featureIndex.getSimilarFilms(id, similarCount);
+        };
+        return filmStorage.getFilmsByIds(Arrays.stream(filmIds).boxed().toList(), likesView);
     }
 
     @Override
@@ -96,6 +358,11 @@ public class FilmDbService implements FilmService {
         return filmStorage.getAllGenres();
     }
 
+    @Override
+    public String getGenresETag() {
+        return versions.toETag(versions.getGenresVersion());
+    }
+
     @Override
     public Genre getGenreById(int id) {
         return filmStorage.getGenreById(id);
@@ -106,6 +373,11 @@ public class FilmDbService implements FilmService {
         return filmStorage.getAllMpa();
     }
 
+    @Override
+    public String getMpaETag() {
+        return versions.toETag(versions.getMpaVersion());
+    }
+
     @Override
     public MpaRating getMpaById(int id) {
         return filmStorage.getMpaById(id);
@@ -134,13 +406,84 @@ public class FilmDbService implements FilmService {
         log.debug("Проверка данных фильма {} прошла успешно.", film.getName());
     }
 
+    private void saveFilmsChunk(List<Film> films, List<Integer> chunk, BatchItemResult[] results) {
+        List<Film> createdFilms = filmStorage.createFilms(chunk.stream()
+                .map(films::get)
+                .collect(Collectors.toList()));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Long id = createdFilms.get(i).getId();
+            popularityIndex.putFilm(createdFilms.get(i));
+            results[chunk.get(i)] = BatchItemResult.created(chunk.get(i), id);
+        }
+    }
+
+    private void saveLikesChunk(List<Like> likes, List<Integer> chunk, BatchItemResult[] results) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Like> chunkLikes = chunk.stream()
+                .map(likes::get)
+                .collect(Collectors.toList());
+        chunkLikes.forEach(like -> popularityIndex.beginLikeChange(like.getFilmId()));
+        boolean[] added = new boolean[chunkLikes.size()];
+        try {
+            added = likesStorage.addLikes(chunkLikes);
+        } finally {
+            for (int i = 0; i < chunkLikes.size(); i++) {
+                popularityIndex.changeLikes(chunkLikes.get(i).getFilmId(), added[i] ? 1 : 0);
+            }
+        }
+
+        for (int i = 0; i < chunk.size(); i++) {
+            int index = chunk.get(i);
+            if (added[i]) {
+                titleIndex.changeLikes(chunkLikes.get(i).getFilmId(), 1);
+                likesMatrix.addLike(chunkLikes.get(i).getFilmId(), chunkLikes.get(i).getUserId());
+                results[index] = BatchItemResult.created(index, null);
+            } else {
+                results[index] = BatchItemResult.rejected(index, "Фильм можно лайкнуть только один раз!");
+            }
+        }
+    }
+
+    private void validateBatchSize(List<?> items) {
+        if (items == null || items.size() > MAX_BATCH_SIZE) {
+            log.warn("Размер пакета не соответствует требованиям.");
+            throw new ValidationException("Пакет должен содержать не более " + MAX_BATCH_SIZE + " записей.");
+        }
+    }
+
+    private void validateBatchItem(Object item) {
+        if (item == null) {
+            throw new ValidationException("Элемент пакета не может быть пустым.");
+        }
+    }
+
+    private void validateFilmReferences(Film film) {
+        // Справочники закешированы, поэтому проверка пакета не обращается к БД
+        if (film.getMpaRating() != null && film.getMpaRating().getId() != null) {
+            filmStorage.getMpaById(film.getMpaRating().getId());
+        }
+        if (film.getFilmGenres() != null) {
+            film.getFilmGenres().stream()
+                    .filter(genre -> genre != null && genre.getId() != null)
+                    .forEach(genre -> filmStorage.getGenreById(genre.getId()));
+        }
+    }
+
+    private long countCreated(BatchItemResult[] results) {
+        return Arrays.stream(results)
+                .filter(result -> result.getStatus() == BatchItemResult.Status.CREATED)
+                .count();
+    }
+
     private void validateLike(Long id, Long userId) {
-        Film film = filmStorage.getFilm(id);
-        User user = userStorage.getUser(userId);
-        if (film == null) {
+        // Проверка по первичным ключам: фильм и пользователь целиком не загружаются
+        if (!filmStorage.existsById(id)) {
             log.warn("Фильм с id = {} не найден", id);
             throw new NotFoundException("Фильм с id = " + id + " не найден");
-        } else if (user == null) {
+        } else if (!userStorage.existsById(userId)) {
             log.warn("Пользователь с userId = {} не найден", userId);
             throw new NotFoundException("Пользователь с userId = " + userId + " не найден");
         }
@@ -3,17 +3,20 @@ package ru.yandex.practicum.filmorate.service.db;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.BatchItemResult;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.db.FriendStorage;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
 import java.time.LocalDate;
-import java.util.Collection;
-import java.util.Set;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Service
 @Primary
@@ -21,11 +24,19 @@ import java.util.Set;
 public class UserDbService implements UserService {
     private final UserStorage userStorage;
     private final FriendStorage friendStorage;
+    private final EntityVersions versions;
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 100_000;
+    private static final int DEFAULT_SUGGESTIONS_LIMIT = 10;
+    private static final int MAX_SUGGESTIONS_LIMIT = 100;
 
     @Autowired
-    public UserDbService(UserStorage userStorage, FriendStorage friendStorage) {
+    public UserDbService(UserStorage userStorage, FriendStorage friendStorage, EntityVersions versions) {
         this.userStorage = userStorage;
         this.friendStorage = friendStorage;
+        this.versions = versions;
     }
 
     @Override
@@ -34,6 +45,51 @@ public class UserDbService implements UserService {
         return userStorage.createUser(user);
     }
 
+    @Override
+    public List<BatchItemResult> createUsers(List<User> users) {
+        if (users == null || users.size() > MAX_BATCH_SIZE) {
+            log.warn("Размер пакета не соответствует требованиям.");
+            throw new ValidationException("Пакет должен содержать не более " + MAX_BATCH_SIZE + " записей.");
+        }
+        BatchItemResult[] results = new BatchItemResult[users.size()];
+
+        // Сначала проверяется весь пакет, в БД уходят только корректные пользователи
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (users.get(i) == null) {
+                results[i] = BatchItemResult.rejected(i, "Элемент пакета не может быть пустым.");
+                continue;
+            }
+            try {
+                validateUser(users.get(i));
+                validIndexes.add(i);
+            } catch (ValidationException e) {
+                results[i] = BatchItemResult.rejected(i, e.getMessage());
+            }
+        }
+
+        for (int from = 0; from < validIndexes.size(); from += BATCH_CHUNK_SIZE) {
+            List<Integer> chunk = validIndexes.subList(from, Math.min(from + BATCH_CHUNK_SIZE, validIndexes.size()));
+            try {
+                saveUsersChunk(users, chunk, results);
+            } catch (DataAccessException e) {
+                // Транзакция пакета откатилась: сохраняем пользователей по одному, чтобы найти виновника
+                log.warn("Пакет пользователей не сохранен, повтор по одному: {}", e.getMessage());
+                for (Integer index : chunk) {
+                    try {
+                        saveUsersChunk(users, List.of(index), results);
+                    } catch (DataAccessException itemException) {
+                        results[index] = BatchItemResult.failed(index, "Пользователь не сохранен в БД.");
+                    }
+                }
+            }
+        }
+
+        log.debug("Пакетная загрузка пользователей завершена. Получено: {}, сохранено: {}", users.size(),
+                Arrays.stream(results).filter(result -> result.getStatus() == BatchItemResult.Status.CREATED).count());
+        return Arrays.asList(results);
+    }
+
     @Override
     public User updateUser(User newUser) {
         if (!userStorage.existsById(newUser.getId())) {
@@ -48,11 +104,29 @@ public class UserDbService implements UserService {
         return userStorage.getAllUsers();
     }
 
+    @Override
+    public Collection<User> getUsersPage(Long after, Integer limit) {
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (after != null && after < 0) {
+            throw new ValidationException("Параметр after не может быть отрицательным.");
+        }
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_PAGE_SIZE + ".");
+        }
+
+        return userStorage.getUsersPage(after != null ? after : 0, pageSize);
+    }
+
     @Override
     public User getUser(Long id) {
         return userStorage.getUser(id);
     }
 
+    @Override
+    public String getUserETag(Long id) {
+        return versions.toETag(versions.getUserVersion(id));
+    }
+
     @Override
     public void addFriend(Long id, Long friendId) {
         validateFilm(id, friendId);
@@ -87,6 +161,30 @@ public class UserDbService implements UserService {
         return friendStorage.getCommonFriends(id, otherId);
     }
 
+    @Override
+    public List<User> getFriendSuggestions(Long id, Integer limit) {
+        int suggestionsLimit = limit != null ? limit : DEFAULT_SUGGESTIONS_LIMIT;
+        if (suggestionsLimit < 1 || suggestionsLimit > MAX_SUGGESTIONS_LIMIT) {
+            throw new ValidationException("Параметр limit должен быть от 1 до " + MAX_SUGGESTIONS_LIMIT + ".");
+        }
+        if (userStorage.getUser(id) == null) {
+            log.warn("Пользователь с id = {}, не найден!", id);
+            throw new NotFoundException("Пользователь с id = " + id + ", не найден!");
+        }
+
+        return friendStorage.getFriendSuggestions(id, suggestionsLimit);
+    }
+
+    private void saveUsersChunk(List<User> users, List<Integer> chunk, BatchItemResult[] results) {
+        List<User> createdUsers = userStorage.createUsers(chunk.stream()
+                .map(users::get)
+                .collect(Collectors.toList()));
+
+        for (int i = 0; i < chunk.size(); i++) {
+            results[chunk.get(i)] = BatchItemResult.created(chunk.get(i), createdUsers.get(i).getId());
+        }
+    }
+
     private void validateUser(User user) {
         log.debug("Начало проверки соответствия данных пользователя {} всем критериям.", user.getName());
 
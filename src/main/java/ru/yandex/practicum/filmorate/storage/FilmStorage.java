@@ -2,21 +2,43 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
     Film createFilm(Film film);
 
+    List<Film> createFilms(List<Film> films);
+
     Film updateFilm(Film newFilm);
 
     Collection<Film> getAllFilms();
 
+    Collection<Film> getAllFilms(LikesView likesView);
+
+    List<Film> getFilmsPage(long after, int limit);
+
+    List<Film> getFilmsPage(long after, int limit, LikesView likesView);
+
+    void streamAllFilms(Consumer<Film> consumer);
+
+    void streamAllFilms(Consumer<Film> consumer, LikesView likesView);
+
     Film getFilm(Long id);
 
+    Film getFilm(Long id, LikesView likesView);
+
     Collection<Film> getPopularFilms(int count);
 
+    List<Film> getFilmsByIds(List<Long> ids);
+
+    List<Film> getFilmsByIds(List<Long> ids, LikesView likesView);
+
     Collection<Genre> getAllGenres();
 
     Genre getGenreById(int id);
@@ -26,4 +48,6 @@ public interface FilmStorage {
     MpaRating getMpaById(int id);
 
     boolean existsById(Long id);
+
+    Set<Long> getExistingIds(Set<Long> ids);
 }
@@ -3,15 +3,23 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 
 public interface UserStorage {
     User createUser(User user);
 
+    List<User> createUsers(List<User> users);
+
     User updateUser(User newUser);
 
     Collection<User> getAllUsers();
 
+    List<User> getUsersPage(long after, int limit);
+
     User getUser(Long id);
 
     boolean existsById(Long id);
+
+    Set<Long> getExistingIds(Set<Long> ids);
 }
@@ -3,15 +3,20 @@ package ru.yandex.practicum.filmorate.storage.db;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import ru.yandex.practicum.filmorate.exception.InternalServerException;
 
 import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RequiredArgsConstructor
@@ -21,10 +26,17 @@ public abstract class AbstractDbStorage<T> {
     protected final RowMapper<T> mapper;
 
     protected Optional<T> findOne(String query, Object... params) {
+        return findOne(mapper, query, params);
+    }
+
+    // Строка параметров собирается, только если TRACE включен: под нагрузкой это заметная доля CPU
+    protected Optional<T> findOne(RowMapper<T> rowMapper, String query, Object... params) {
         log.debug("Выполнение поиска одной записи. SQL: {}", query);
-        log.trace("Параметры запроса: {}", Arrays.toString(params));
+        if (log.isTraceEnabled()) {
+            log.trace("Параметры запроса: {}", Arrays.toString(params));
+        }
         try {
-            T result = jdbc.queryForObject(query, mapper, params);
+            T result = jdbc.queryForObject(query, rowMapper, params);
             return Optional.ofNullable(result);
         } catch (EmptyResultDataAccessException e) {
             log.debug("Запись не найдена (EmptyResultDataAccessException).");
@@ -33,14 +45,33 @@ public abstract class AbstractDbStorage<T> {
     }
 
     protected List<T> findMany(String query, Object... params) {
+        return findMany(mapper, query, params);
+    }
+
+    protected List<T> findMany(RowMapper<T> rowMapper, String query, Object... params) {
         log.debug("Выполнение поиска нескольких записей. SQL: {}", query);
-        log.trace("Параметры запроса: {}", Arrays.toString(params));
-        return jdbc.query(query, mapper, params);
+        if (log.isTraceEnabled()) {
+            log.trace("Параметры запроса: {}", Arrays.deepToString(params));
+        }
+        return jdbc.query(query, rowMapper, params);
+    }
+
+    protected List<T> findPage(String query, String idColumn, long after, int limit) {
+        return findPage(mapper, query, idColumn, after, limit);
+    }
+
+    protected List<T> findPage(RowMapper<T> rowMapper, String query, String idColumn, long after, int limit) {
+        String pageQuery = query + " WHERE " + idColumn + " > ? ORDER BY " + idColumn + " LIMIT ?";
+        log.debug("Выполнение постраничного поиска. SQL: {}", pageQuery);
+        log.trace("Параметры страницы: after = {}, limit = {}", after, limit);
+        return jdbc.query(pageQuery, rowMapper, after, limit);
     }
 
     protected long insert(String query, Object... params) {
         log.debug("Выполнение вставки записи. SQL: {}", query);
-        log.trace("Параметры вставки: {}", Arrays.toString(params));
+        if (log.isTraceEnabled()) {
+            log.trace("Параметры вставки: {}", Arrays.toString(params));
+        }
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
 
         jdbc.update(connection -> {
@@ -60,13 +91,78 @@ public abstract class AbstractDbStorage<T> {
         }
     }
 
+    protected List<Long> insertBatch(String query, List<Object[]> batchArgs) {
+        log.debug("Выполнение пакетной вставки {} записей. SQL: {}", batchArgs.size(), query);
+        if (batchArgs.isEmpty()) {
+            return List.of();
+        }
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+
+        jdbc.batchUpdate(connection -> connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS),
+                new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        Object[] params = batchArgs.get(i);
+                        for (int j = 0; j < params.length; j++) {
+                            ps.setObject(j + 1, params[j]);
+                        }
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return batchArgs.size();
+                    }
+                }, keyHolder);
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != batchArgs.size()) {
+            log.error("Не удалось сохранить данные пакетом: получено {} ключей из {}.", keys.size(), batchArgs.size());
+            throw new InternalServerException("Не удалось сохранить данные.");
+        }
+        log.debug("Пакет из {} записей успешно сохранен.", keys.size());
+        return keys.stream()
+                .map(key -> ((Number) key.values().iterator().next()).longValue())
+                .toList();
+    }
+
     protected void update(String query, Object... params) {
         log.debug("Выполнение обновления записи. SQL: {}", query);
-        log.trace("Параметры обновления: {}", Arrays.toString(params));
+        if (log.isTraceEnabled()) {
+            log.trace("Параметры обновления: {}", Arrays.toString(params));
+        }
         int updatedRows = jdbc.update(query, params);
         if (updatedRows == 0) {
             log.error("Ошибка при обновлении записи.");
             throw new InternalServerException("Не удалось обновить данные");
         }
     }
+
+    // Индексы в памяти меняются сразу после записи в БД; при откате транзакции изменение возвращается
+    protected static void onRollback(Runnable undo) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    undo.run();
+                }
+            }
+        });
+    }
+
+    // Версии сущностей меняются только после фиксации: иначе ETag новой версии мог бы достаться старым данным
+    protected static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
 }
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ограничитель одновременных обращений к БД: разрешений столько же, сколько соединений в пуле.
+// Поток ждет разрешение не дольше max-wait-ms, а при длинной очереди получает отказ сразу,
+// поэтому тысячи виртуальных потоков не копятся в ожидании пула соединений
+@Component
+@ConditionalOnProperty(name = "filmorate.db.bulkhead.enabled", havingValue = "true")
+@Slf4j
+public class DbBulkhead {
+    private static final String REJECTED_MESSAGE = "Сервер перегружен, повторите запрос позже.";
+
+    private final Semaphore permits;
+    private final int maxQueue;
+    private final long maxWaitMs;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+
+    public DbBulkhead(MeterRegistry registry,
+                      @Value("${filmorate.db.bulkhead.permits:${spring.datasource.hikari.maximum-pool-size:10}}")
+                      int permits,
+                      @Value("${filmorate.db.bulkhead.max-queue:200}") int maxQueue,
+                      @Value("${filmorate.db.bulkhead.max-wait-ms:1000}") long maxWaitMs) {
+        this.permits = new Semaphore(permits, true);
+        this.maxQueue = maxQueue;
+        this.maxWaitMs = maxWaitMs;
+        this.waitTimer = Timer.builder("filmorate.db.bulkhead.wait")
+                .description("Время ожидания свободного соединения с БД")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        this.queueFullRejections = Counter.builder("filmorate.db.bulkhead.rejected")
+                .tag("reason", "queue-full")
+                .register(registry);
+        this.timeoutRejections = Counter.builder("filmorate.db.bulkhead.rejected")
+                .tag("reason", "timeout")
+                .register(registry);
+        Gauge.builder("filmorate.db.bulkhead.waiting", waiting, AtomicInteger::get).register(registry);
+        Gauge.builder("filmorate.db.bulkhead.available", this.permits, Semaphore::availablePermits)
+                .register(registry);
+        log.info("Ограничитель обращений к БД: соединений {}, очередь до {}, ожидание до {} мс",
+                permits, maxQueue, maxWaitMs);
+    }
+
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return;
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            queueFullRejections.increment();
+            log.warn("Очередь к БД заполнена ({} ожидающих), запрос отклонен.", maxQueue);
+            throw new ServiceUnavailableException(REJECTED_MESSAGE);
+        }
+        long start = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (!acquired) {
+                timeoutRejections.increment();
+                log.warn("Соединение с БД не освободилось за {} мс, запрос отклонен.", maxWaitMs);
+                throw new ServiceUnavailableException(REJECTED_MESSAGE);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceUnavailableException(REJECTED_MESSAGE);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Разрешение ограничителя берется при получении соединения и возвращается при его закрытии.
+// Так под ограничение попадают все обращения через JdbcTemplate и транзакции, а не только AbstractDbStorage
+@Component
+@ConditionalOnProperty(name = "filmorate.db.bulkhead.enabled", havingValue = "true")
+public class DbBulkheadDataSourceWrapper implements BeanPostProcessor {
+    // Ограничитель зависит от реестра метрик, поэтому создается при первом соединении, а не вместе с пулом
+    private final ObjectProvider<DbBulkhead> bulkhead;
+
+    public DbBulkheadDataSourceWrapper(ObjectProvider<DbBulkhead> bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof BulkheadDataSource)) {
+            return new BulkheadDataSource(dataSource, bulkhead);
+        }
+        return bean;
+    }
+
+    static final class BulkheadDataSource extends DelegatingDataSource {
+        private final ObjectProvider<DbBulkhead> bulkhead;
+
+        private BulkheadDataSource(DataSource target, ObjectProvider<DbBulkhead> bulkhead) {
+            super(target);
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            DbBulkhead limiter = bulkhead.getObject();
+            limiter.acquire();
+            try {
+                return guard(super.getConnection(), limiter);
+            } catch (SQLException | RuntimeException e) {
+                limiter.release();
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            DbBulkhead limiter = bulkhead.getObject();
+            limiter.acquire();
+            try {
+                return guard(super.getConnection(username, password), limiter);
+            } catch (SQLException | RuntimeException e) {
+                limiter.release();
+                throw e;
+            }
+        }
+
+        // Повторное закрытие соединения не должно вернуть разрешение дважды
+        private static Connection guard(Connection connection, DbBulkhead limiter) {
+            AtomicBoolean released = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                            try {
+                                return method.invoke(connection, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getTargetException();
+                            } finally {
+                                limiter.release();
+                            }
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
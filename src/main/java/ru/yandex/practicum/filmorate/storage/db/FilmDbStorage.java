@@ -1,17 +1,35 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
-
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Repository
@@ -21,31 +39,79 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
     private final GenreStorage genreStorage;
     private final MpaRatingStorage mpaRatingStorage;
     private final LikesStorage likesStorage;
-    private static final int MIN_MPA_ID = 1;
-    private static final int MAX_MPA_ID = 5;
-    private static final int MIN_GENRE_ID = 1;
-    private static final int MAX_GENRE_ID = 6;
+    // Векторы признаков для сходства по содержанию обновляются при каждой записи фильма
+    private final FilmFeatureIndex featureIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FilmTitleIndex titleIndex;
+    private final EntityVersions versions;
+    // Независимые подзапросы гидратации идут одновременно в виртуальных потоках, каждый на своем соединении
+    private final ExecutorService hydrationExecutor;
+    private final long hydrationTimeoutMs;
+    // Встроенная H2 размер выборки не учитывает: без LAZY_QUERY_EXECUTION каждый курсор выгрузки собирается
+    // (и при необходимости сортируется) целиком уже в executeQuery — до MAX_MEMORY_ROWS строк в куче, остальное
+    // во временном файле. Постоянная память только на стороне приложения: в каждый момент собран один фильм.
+    // Размер выборки действует для серверных СУБД
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String FIND_FILMS_QUERY = "SELECT f.*, r.RATING_NAME FROM FILMS AS f " +
+            "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID";
+    private static final String INSERT_FILM_QUERY = "INSERT INTO FILMS(FILM_NAME, DESCRIPTION, RELEASE_DATE, " +
+            "DURATION, RATING_ID) VALUES (?, ?, ?, ?, ?)";
+    private static final String INSERT_FILM_GENRE_QUERY = "INSERT INTO FILM_GENRES (FILM_ID, GENRE_ID) VALUES (?, ?)";
+    // Фильм вместе с жанрами и лайками за один запрос: дочерние строки собираются в массивы
+    private static final String FIND_FILM_AGGREGATE_QUERY = "SELECT f.*, r.RATING_NAME, " +
+            "ARRAY(SELECT fg.GENRE_ID FROM FILM_GENRES AS fg " +
+            "      WHERE fg.FILM_ID = f.FILM_ID ORDER BY fg.GENRE_ID) AS GENRE_IDS, " +
+            "ARRAY(SELECT l.USER_ID FROM LIKES AS l " +
+            "      WHERE l.FILM_ID = f.FILM_ID ORDER BY l.USER_ID) AS LIKE_USER_IDS " +
+            "FROM FILMS AS f " +
+            "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID";
+    // То же без подзапроса по LIKES: число лайков берется из FILMS.LIKE_COUNT
+    private static final String FIND_FILM_WITH_LIKE_COUNT_QUERY = "SELECT f.*, r.RATING_NAME, " +
+            "ARRAY(SELECT fg.GENRE_ID FROM FILM_GENRES AS fg " +
+            "      WHERE fg.FILM_ID = f.FILM_ID ORDER BY fg.GENRE_ID) AS GENRE_IDS " +
+            "FROM FILMS AS f " +
+            "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID";
+    private static final String STREAM_FILMS_QUERY = "SELECT f.*, r.RATING_NAME FROM FILMS AS f " +
+            "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID " +
+            "ORDER BY f.FILM_ID";
+    private static final String STREAM_GENRES_QUERY = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRES " +
+            "ORDER BY FILM_ID, GENRE_ID";
+    private static final String STREAM_LIKES_QUERY = "SELECT FILM_ID, USER_ID FROM LIKES ORDER BY FILM_ID, USER_ID";
 
     public FilmDbStorage(JdbcTemplate jdbc, RowMapper<Film> mapper, GenreStorage genreStorage,
-                         MpaRatingStorage mpaRatingStorage, LikesStorage likesStorage) {
+                         MpaRatingStorage mpaRatingStorage, LikesStorage likesStorage,
+                         FilmFeatureIndex featureIndex, FilmSearchIndex searchIndex,
+                         FilmTitleIndex titleIndex, EntityVersions versions,
+                         @Value("${filmorate.films.parallel-hydration.enabled:false}") boolean parallelHydration,
+                         @Value("${filmorate.films.parallel-hydration.timeout-ms:5000}") long hydrationTimeoutMs) {
         super(jdbc, mapper);
         this.genreStorage = genreStorage;
         this.mpaRatingStorage = mpaRatingStorage;
         this.likesStorage = likesStorage;
+        this.featureIndex = featureIndex;
+        this.searchIndex = searchIndex;
+        this.titleIndex = titleIndex;
+        this.versions = versions;
+        this.hydrationExecutor = parallelHydration ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.hydrationTimeoutMs = hydrationTimeoutMs;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (hydrationExecutor != null) {
+            hydrationExecutor.shutdownNow();
+        }
     }
 
     @Override
     public Film createFilm(Film film) {
-        String insertFilmQuery = "INSERT INTO FILMS(FILM_NAME, DESCRIPTION, RELEASE_DATE, " +
-                "DURATION, RATING_ID) VALUES (?, ?, ?, ?, ?)";
-
         Integer mpaId = validateMpa(film);
 
         Set<Genre> preparedGenres = validateGenres(film);
         film.setFilmGenres(new HashSet<>(preparedGenres));
 
         long id = insert(
-                insertFilmQuery,
+                INSERT_FILM_QUERY,
                 film.getName(),
                 film.getDescription(),
                 film.getReleaseDate(),
@@ -56,7 +122,37 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
         saveFilmGenres(film);
         log.debug("Фильм {} успешно добавлен", film.getName());
 
-        return getFilm(id);
+        Film createdFilm = getFilm(id);
+        indexFilm(createdFilm);
+        return createdFilm;
+    }
+
+    @Override
+    @Transactional
+    public List<Film> createFilms(List<Film> films) {
+        List<Object[]> filmArgs = new ArrayList<>(films.size());
+        for (Film film : films) {
+            Integer mpaId = validateMpa(film);
+            film.setFilmGenres(new HashSet<>(validateGenres(film)));
+            filmArgs.add(new Object[]{film.getName(), film.getDescription(), film.getReleaseDate(),
+                    film.getDuration(), mpaId});
+        }
+
+        List<Long> ids = insertBatch(INSERT_FILM_QUERY, filmArgs);
+
+        List<Object[]> genreArgs = new ArrayList<>();
+        for (int i = 0; i < films.size(); i++) {
+            Film film = films.get(i);
+            film.setId(ids.get(i));
+            film.setLikes(new IdSet());
+            film.getFilmGenres().forEach(genre -> genreArgs.add(new Object[]{film.getId(), genre.getId()}));
+        }
+        jdbc.batchUpdate(INSERT_FILM_GENRE_QUERY, genreArgs);
+        log.debug("Пакет из {} фильмов успешно добавлен. Жанров: {}", films.size(), genreArgs.size());
+
+        films.forEach(this::indexFilm);
+        // Фильмы не перечитываются: все поля уже известны, новый фильм не имеет лайков
+        return films;
     }
 
     @Override
@@ -82,66 +178,225 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
         updateFilmGenres(newFilm);
         log.debug("Фильм с id {} успешно обновлен.", newFilm.getId());
 
-        return getFilm(newFilm.getId());
+        Film updatedFilm = getFilm(newFilm.getId());
+        indexFilm(updatedFilm);
+        return updatedFilm;
     }
 
     @Override
     public Collection<Film> getAllFilms() {
-        String findAllFilmsQuery = "SELECT f.*, r.RATING_NAME FROM FILMS AS f " +
-                "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID";
+        return getAllFilms(LikesView.IDS);
+    }
+
+    @Override
+    public Collection<Film> getAllFilms(LikesView likesView) {
+        if (likesView == LikesView.COUNT) {
+            return findMany(this::mapFilmWithLikeCount, FIND_FILM_WITH_LIKE_COUNT_QUERY);
+        }
 
-        List<Film> films = findMany(findAllFilmsQuery);
+        if (isParallelHydration()) {
+            // Фильмы, жанры и лайки не зависят друг от друга: все три запроса идут одновременно
+            CompletableFuture<List<Film>> films = runAsync(() -> findMany(FIND_FILMS_QUERY));
+            CompletableFuture<Map<Long, Set<Genre>>> genres = runAsync(genreStorage::getGenresByAllFilms);
+            CompletableFuture<Map<Long, Set<Long>>> likes = runAsync(likesStorage::getLikesByAllFilms);
+            awaitAll(films, genres, likes);
+            return attachGenresAndLikes(films.join(), genres.join(), likes.join());
+        }
+
+        List<Film> films = findMany(FIND_FILMS_QUERY);
         Map<Long, Set<Genre>> genres = genreStorage.getGenresByAllFilms();
         Map<Long, Set<Long>> likes = likesStorage.getLikesByAllFilms();
 
+        return attachGenresAndLikes(films, genres, likes);
+    }
+
+    private List<Film> attachGenresAndLikes(List<Film> films, Map<Long, Set<Genre>> genres,
+                                            Map<Long, Set<Long>> likes) {
         return films.stream()
                 .peek(film -> film.setFilmGenres(genres.get(film.getId())))
                 .peek(film -> film.setLikes(likes.get(film.getId())))
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<Film> getFilmsPage(long after, int limit) {
+        return getFilmsPage(after, limit, LikesView.IDS);
+    }
+
+    @Override
+    public List<Film> getFilmsPage(long after, int limit, LikesView likesView) {
+        return findPage(aggregateMapper(likesView), aggregateQuery(likesView), "f.FILM_ID", after, limit);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer) {
+        streamAllFilms(consumer, LikesView.IDS);
+    }
+
+    @Override
+    public void streamAllFilms(Consumer<Film> consumer, LikesView likesView) {
+        boolean withLikeIds = likesView == LikesView.IDS;
+        log.debug("Потоковая выгрузка всех фильмов. Размер выборки: {}", STREAM_FETCH_SIZE);
+        jdbc.execute((ConnectionCallback<Void>) connection -> {
+            // Курсор по LIKES открывается только если клиенту нужен полный список id
+            try (PreparedStatement filmsStatement = connection.prepareStatement(STREAM_FILMS_QUERY);
+                 PreparedStatement genresStatement = connection.prepareStatement(STREAM_GENRES_QUERY);
+                 PreparedStatement likesStatement = withLikeIds
+                         ? connection.prepareStatement(STREAM_LIKES_QUERY) : null) {
+                filmsStatement.setFetchSize(STREAM_FETCH_SIZE);
+                genresStatement.setFetchSize(STREAM_FETCH_SIZE);
+                if (likesStatement != null) {
+                    likesStatement.setFetchSize(STREAM_FETCH_SIZE);
+                }
+
+                try (ResultSet films = filmsStatement.executeQuery();
+                     ResultSet genres = genresStatement.executeQuery();
+                     ResultSet likes = likesStatement != null ? likesStatement.executeQuery() : null) {
+                    // Все три курсора отсортированы по FILM_ID, поэтому жанры и лайки сливаются за один проход
+                    boolean hasGenre = genres.next();
+                    boolean hasLike = likes != null && likes.next();
+                    int rowNum = 0;
+
+                    while (films.next()) {
+                        Film film = mapper.mapRow(films, rowNum++);
+                        long filmId = film.getId();
+
+                        Set<Genre> filmGenres = new LinkedHashSet<>();
+                        while (hasGenre && genres.getLong("FILM_ID") <= filmId) {
+                            if (genres.getLong("FILM_ID") == filmId) {
+                                filmGenres.add(genreStorage.getGenreById(genres.getInt("GENRE_ID")));
+                            }
+                            hasGenre = genres.next();
+                        }
+                        film.setFilmGenres(filmGenres);
+
+                        if (withLikeIds) {
+                            IdSet filmLikes = new IdSet();
+                            while (hasLike && likes.getLong("FILM_ID") <= filmId) {
+                                if (likes.getLong("FILM_ID") == filmId) {
+                                    filmLikes.add(likes.getLong("USER_ID"));
+                                }
+                                hasLike = likes.next();
+                            }
+                            likesStorage.applyPendingLikes(filmId, filmLikes);
+                            film.setLikes(filmLikes);
+                        } else {
+                            setLikeCount(film, films.getInt("LIKE_COUNT"));
+                        }
+                        consumer.accept(film);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
     @Override
     public Film getFilm(Long id) {
-        String findFilmQuery = "SELECT f.*, r.RATING_NAME FROM FILMS AS f " +
-                "LEFT OUTER JOIN MPA_RATINGS AS r ON f.RATING_ID=r.RATING_ID " +
-                "WHERE f.FILM_ID = ?";
+        return getFilm(id, LikesView.IDS);
+    }
 
-        Film film = findOne(findFilmQuery, id)
+    @Override
+    public Film getFilm(Long id, LikesView likesView) {
+        return findOne(aggregateMapper(likesView), aggregateQuery(likesView) + " WHERE f.FILM_ID = ?", id)
                 .orElseThrow(() -> new NotFoundException("Фильм с id = " + id + " не найден"));
+    }
+
+    @Override
+    public Collection<Film> getPopularFilms(int count) {
+        String findPopularFilms = FIND_FILM_AGGREGATE_QUERY + " ORDER BY f.LIKE_COUNT DESC, f.FILM_ID LIMIT ?";
+        // Жанры и лайки уже собираются агрегатным запросом за один проход: отдельные подзапросы медленнее
+        return findMany(this::mapFilmAggregate, findPopularFilms, count);
+    }
 
-        if (film.getMpaRating() != null && film.getMpaRating().getId() != null) {
-            MpaRating fullMpa = mpaRatingStorage.getMpaById(film.getMpaRating().getId());
-            film.setMpaRating(fullMpa);
+    // Внутри транзакции подзапросы идут последовательно: соединения из пула не видят ее незафиксированных данных
+    private boolean isParallelHydration() {
+        return hydrationExecutor != null && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    private <R> CompletableFuture<R> runAsync(Supplier<R> query) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Future<?> task = hydrationExecutor.submit(() -> {
+            try {
+                result.complete(query.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        // Отмена прерывает виртуальный поток: блокирующий ввод-вывод драйвера завершается с ошибкой
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    // Первая ошибка подзапроса прерывает ожидание и пробрасывается без обертки, остальные подзапросы отменяются
+    private void awaitAll(CompletableFuture<?>... queries) {
+        CompletableFuture<Void> all = CompletableFuture.allOf(queries);
+        for (CompletableFuture<?> query : queries) {
+            query.whenComplete((value, error) -> {
+                if (error != null) {
+                    all.completeExceptionally(error);
+                }
+            });
+        }
+        try {
+            all.get(hydrationTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            cancelAll(queries);
+            log.warn("Подзапросы загрузки фильмов не уложились в {} мс.", hydrationTimeoutMs);
+            throw new InternalServerException("Превышено время ожидания ответа БД.");
+        } catch (InterruptedException e) {
+            cancelAll(queries);
+            Thread.currentThread().interrupt();
+            throw new InternalServerException("Загрузка фильмов прервана.");
+        } catch (ExecutionException e) {
+            cancelAll(queries);
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            log.error("Ошибка подзапроса загрузки фильмов.", cause);
+            throw new InternalServerException("Не удалось загрузить фильмы.");
         }
+    }
 
-        film.setFilmGenres(new LinkedHashSet<>(genreStorage.getGenresByFilmId(id)));
-        film.setLikes(likesStorage.getLikesByFilmId(id));
+    private static void cancelAll(CompletableFuture<?>... queries) {
+        for (CompletableFuture<?> query : queries) {
+            query.cancel(true);
+        }
+    }
 
-        return film;
+    @Override
+    public List<Film> getFilmsByIds(List<Long> ids) {
+        return getFilmsByIds(ids, LikesView.IDS);
     }
 
     @Override
-    public Collection<Film> getPopularFilms(int count) {
-        String findPopularFilms =
-                        "SELECT f.*, r.RATING_NAME, " +
-                        "       (SELECT COUNT(*) FROM LIKES l WHERE l.FILM_ID = f.FILM_ID) as like_count " +
-                        "FROM FILMS f " +
-                        "LEFT JOIN MPA_RATINGS r ON f.RATING_ID = r.RATING_ID " +
-                        "ORDER BY like_count DESC " +
-                        "LIMIT ?";
-
-        List<Film> films = findMany(findPopularFilms, count);
-        Set<Long> filmIds = films.stream().map(Film::getId).collect(Collectors.toSet());
-
-        Map<Long, Set<Genre>> genres = genreStorage.getGenresByFilmIds(filmIds);
-        Map<Long, Set<Long>> likes = likesStorage.getLikesByFilmIds(filmIds);
-
-        films.stream()
-                .forEach(film -> {
-                    film.setLikes(likes.get(film.getId()));
-                    film.setFilmGenres(genres.get(film.getId()));
-                });
-        return films;
+    public List<Film> getFilmsByIds(List<Long> ids, LikesView likesView) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String findFilmsByIdsQuery = aggregateQuery(likesView) + " WHERE f.FILM_ID = ANY(?)";
+
+        Map<Long, Film> films = findMany(aggregateMapper(likesView), findFilmsByIdsQuery,
+                        (Object) ids.toArray(Long[]::new))
+                .stream()
+                .collect(Collectors.toMap(Film::getId, film -> film));
+
+        // Порядок результата совпадает с порядком запрошенных id
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -181,13 +436,22 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
         return count != null && count > 0;
     }
 
+    @Override
+    public Set<Long> getExistingIds(Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        String findExistingIdsQuery = "SELECT FILM_ID FROM FILMS WHERE FILM_ID = ANY(?)";
+
+        return new HashSet<>(jdbc.queryForList(findExistingIdsQuery, Long.class, (Object) ids.toArray(Long[]::new)));
+    }
+
     private void saveFilmGenres(Film film) {
-        String saveQuery = "INSERT INTO FILM_GENRES (FILM_ID, GENRE_ID) VALUES (?, ?)";
         List<Object[]> batchArgs = film.getFilmGenres().stream()
                 .map(genre -> new Object[]{film.getId(), genre.getId()})
                 .collect(Collectors.toList());
 
-        jdbc.batchUpdate(saveQuery, batchArgs);
+        jdbc.batchUpdate(INSERT_FILM_GENRE_QUERY, batchArgs);
         log.debug("Жанры успешно добавлены.");
     }
 
@@ -199,6 +463,50 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
         log.debug("Жанры успешно обновлены.");
     }
 
+    private String aggregateQuery(LikesView likesView) {
+        return likesView == LikesView.COUNT ? FIND_FILM_WITH_LIKE_COUNT_QUERY : FIND_FILM_AGGREGATE_QUERY;
+    }
+
+    private RowMapper<Film> aggregateMapper(LikesView likesView) {
+        return likesView == LikesView.COUNT ? this::mapFilmWithLikeCount : this::mapFilmAggregate;
+    }
+
+    private Film mapFilmWithLikeCount(ResultSet rs, int rowNum) throws SQLException {
+        Film film = mapper.mapRow(rs, rowNum);
+        film.setFilmGenres(mapGenres(rs));
+        setLikeCount(film, rs.getInt("LIKE_COUNT"));
+        return film;
+    }
+
+    private void setLikeCount(Film film, int storedCount) {
+        film.setLikes(null);
+        film.setLikeCount(storedCount + likesStorage.getPendingLikesDelta(film.getId()));
+    }
+
+    private Set<Genre> mapGenres(ResultSet rs) throws SQLException {
+        Set<Genre> genres = new LinkedHashSet<>();
+        for (Object genreId : (Object[]) rs.getArray("GENRE_IDS").getArray()) {
+            genres.add(genreStorage.getGenreById(((Number) genreId).intValue()));
+        }
+        return genres;
+    }
+
+    private Film mapFilmAggregate(ResultSet rs, int rowNum) throws SQLException {
+        Film film = mapper.mapRow(rs, rowNum);
+
+        Set<Genre> genres = mapGenres(rs);
+        Object[] userIds = (Object[]) rs.getArray("LIKE_USER_IDS").getArray();
+        IdSet likes = new IdSet(userIds.length);
+        for (Object userId : userIds) {
+            likes.add(((Number) userId).longValue());
+        }
+        likesStorage.applyPendingLikes(film.getId(), likes);
+
+        film.setFilmGenres(genres);
+        film.setLikes(likes);
+        return film;
+    }
+
     private Integer validateMpa(Film film) {
         if (film.getMpaRating() == null || film.getMpaRating().getId() == null) {
             log.debug("MPA не указан, используется значение по умолчанию: 1");
@@ -208,13 +516,7 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
 
         Integer mpaId = film.getMpaRating().getId();
 
-        if (mpaId < MIN_MPA_ID || mpaId > MAX_MPA_ID) {
-            throw new NotFoundException(
-                    String.format("ID MPA рейтинга должен быть от %d до %d. Получено: %d",
-                            MIN_MPA_ID, MAX_MPA_ID, mpaId)
-            );
-        }
-        // Проверка существования в БД
+        // Проверка по справочнику рейтингов
         try {
             MpaRating mpa = mpaRatingStorage.getMpaById(mpaId);
             film.setMpaRating(mpa);
@@ -242,15 +544,7 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
 
             Integer genreId = genre.getId();
 
-            // Проверка диапазона
-            if (genreId < MIN_GENRE_ID || genreId > MAX_GENRE_ID) {
-                throw new NotFoundException(
-                        String.format("ID жанра должен быть от %d до %d. Получено: %d",
-                                MIN_GENRE_ID, MAX_GENRE_ID, genreId)
-                );
-            }
-
-            // Проверка существования в БД
+            // Проверка по справочнику жанров
             Genre dbGenre = genreStorage.getGenreById(genreId);
             // Добавляем только если еще нет (удаляем дубликаты)
             if (!result.contains(dbGenre)) {
@@ -261,4 +555,19 @@ public class FilmDbStorage extends AbstractDbStorage<Film> implements FilmStorag
 
         return result;
     }
+
+    // Индексы в памяти обновляются сразу; при откате транзакции фильм перечитывается в них из БД.
+    // Версия фильма для ETag меняется только после фиксации
+    private void indexFilm(Film film) {
+        featureIndex.putFilm(film);
+        searchIndex.putFilm(film);
+        titleIndex.putFilm(film);
+        long id = film.getId();
+        onRollback(() -> {
+            featureIndex.reloadFilm(id);
+            searchIndex.reloadFilm(id);
+            titleIndex.reloadFilm(id);
+        });
+        afterCommit(() -> versions.filmChanged(id));
+    }
 }
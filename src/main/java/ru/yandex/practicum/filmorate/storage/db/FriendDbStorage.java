@@ -2,15 +2,14 @@ package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.IdSet;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
 
 @Repository
@@ -19,76 +18,91 @@ import java.util.*;
 public class FriendDbStorage implements FriendStorage {
     private final JdbcTemplate jdbc;
     private final RowMapper<User> mapper;
+    // Граф дружбы целиком в памяти: чтение друзей не обращается к FRIENDSHIPS
+    private final FriendGraphIndex friendGraph;
+    private final EntityVersions versions;
 
     @Override
     public void addFriend(Long id, Long friendId) {
         String addFriendQuery = "INSERT INTO FRIENDSHIPS(USER_ID, FRIEND_ID) VALUES (?, ?)";
         jdbc.update(addFriendQuery, id, friendId);
+        friendGraph.addFriend(id, friendId);
+        AbstractDbStorage.onRollback(() -> friendGraph.deleteFriend(id, friendId));
+        AbstractDbStorage.afterCommit(() -> versions.userChanged(id));
         log.debug("Друг успешно добавлен.");
     }
 
     @Override
     public void deleteFriend(Long id, Long friendId) {
         String deleteFriendQuery = "DELETE FROM FRIENDSHIPS WHERE USER_ID = ? AND FRIEND_ID = ?";
-        jdbc.update(deleteFriendQuery, id, friendId);
+        int deletedRows = jdbc.update(deleteFriendQuery, id, friendId);
+        friendGraph.deleteFriend(id, friendId);
+        if (deletedRows > 0) {
+            AbstractDbStorage.onRollback(() -> friendGraph.addFriend(id, friendId));
+            AbstractDbStorage.afterCommit(() -> versions.userChanged(id));
+        }
         log.debug("Друг успешно удален.");
     }
 
     @Override
     public Set<Long> getAllFriendsIdByUserId(Long id) {
-        String findAllFriendsQuery = "SELECT FRIEND_ID FROM FRIENDSHIPS WHERE USER_ID = ?";
-        List<Long> friends = jdbc.queryForList(findAllFriendsQuery, Long.class, id);
-
-        return new HashSet<>(friends);
+        return friendGraph.getFriendIds(id);
     }
 
     @Override
     public Set<User> getAllFriendsByUserId(Long id) {
-        String findAllFriendsQuery = "SELECT u.USER_ID, u.EMAIL, u.LOGIN, u.USER_NAME, u.BIRTHDAY " +
-                                    "FROM FRIENDSHIPS f " +
-                                    "LEFT JOIN USERS u ON f.FRIEND_ID=u.USER_ID " +
-                                    "WHERE f.USER_ID = ?";
-        List<User> friends = jdbc.query(findAllFriendsQuery, mapper, id);
-
-        return new HashSet<>(friends);
+        return new HashSet<>(findUsersWithFriends(friendGraph.getFriendIds(id)));
     }
 
     @Override
     public Collection<User> getCommonFriends(Long id, Long otherId) {
-        String findCommonFriends =
-                        "SELECT u.* " +
-                        "FROM FRIENDSHIPS f1 " +
-                        "INNER JOIN FRIENDSHIPS f2 ON f1.FRIEND_ID = f2.FRIEND_ID " +
-                        "INNER JOIN USERS u ON f1.FRIEND_ID = u.USER_ID " +
-                        "WHERE f1.USER_ID = ? " +
-                        "  AND f2.USER_ID = ? " +
-                        "  AND f1.FRIEND_ID != f1.USER_ID " +
-                        "  AND f2.FRIEND_ID != f2.USER_ID ";
+        // Пересечение считается в индексе, из БД читаются только строки найденных пользователей
+        return findUsersWithFriends(friendGraph.getCommonFriendIds(id, otherId));
+    }
 
-        List<User> commonFriends = jdbc.query(findCommonFriends, mapper, id, otherId);
-        commonFriends.forEach(user -> {
-            Set<Long> friends = getAllFriendsIdByUserId(user.getId());
-            user.setFriends(friends);
-        });
+    @Override
+    public Map<Long, Set<Long>> getFriendsByAllUsers() {
+        return friendGraph.getAllFriendIds();
+    }
 
-        return new HashSet<>(commonFriends);
+    @Override
+    public Map<Long, Set<Long>> getFriendsByUserIds(Set<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return friendGraph.getFriendIds(userIds);
     }
 
     @Override
-    public Map<Long, Set<Long>> getFriendsByAllUsers() {
-        String findFriendsByAllUsers = "SELECT USER_ID, FRIEND_ID FROM FRIENDSHIPS";
+    public List<User> getFriendSuggestions(Long id, int limit) {
+        return findUsersWithFriends(friendGraph.getFriendSuggestions(id, limit));
+    }
+
+    private List<User> findUsersWithFriends(IdSet userIds) {
+        return findUsersWithFriends(userIds.toLongArray());
+    }
+
+    // Пользователи возвращаются в порядке переданных id
+    private List<User> findUsersWithFriends(long[] userIds) {
+        if (userIds.length == 0) {
+            return new ArrayList<>();
+        }
+        String findUsersQuery = "SELECT * FROM USERS WHERE USER_ID = ANY(?)";
+        List<Long> ids = Arrays.stream(userIds).boxed().toList();
 
-        return jdbc.query(findFriendsByAllUsers, new ResultSetExtractor<Map<Long, Set<Long>>>() {
-            @Override
-            public Map<Long, Set<Long>> extractData(ResultSet rs) throws SQLException, DataAccessException {
-                Map<Long, Set<Long>> result = new HashMap<>();
+        Map<Long, User> usersById = new HashMap<>();
+        jdbc.query(findUsersQuery, mapper, (Object) ids.toArray(Long[]::new))
+                .forEach(user -> usersById.put(user.getId(), user));
+        Map<Long, Set<Long>> friends = friendGraph.getFriendIds(ids);
 
-                while (rs.next()) {
-                    result.computeIfAbsent(rs.getLong("USER_ID"), k -> new HashSet<>())
-                            .add(rs.getLong("FRIEND_ID"));
-                }
-                return result;
+        List<User> users = new ArrayList<>(usersById.size());
+        for (Long userId : ids) {
+            User user = usersById.get(userId);
+            if (user != null) {
+                user.setFriends(friends.getOrDefault(userId, new IdSet()));
+                users.add(user);
             }
-        });
+        }
+        return users;
     }
 }
@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.storage.db;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -19,4 +20,8 @@ public interface FriendStorage {
     Collection<User> getCommonFriends(Long id, Long otherId);
 
     Map<Long, Set<Long>> getFriendsByAllUsers();
+
+    Map<Long, Set<Long>> getFriendsByUserIds(Set<Long> userIds);
+
+    List<User> getFriendSuggestions(Long id, int limit);
 }
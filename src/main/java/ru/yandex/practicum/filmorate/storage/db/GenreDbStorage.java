@@ -1,5 +1,8 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
@@ -7,44 +10,93 @@ import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 @Repository
+@Slf4j
 public class GenreDbStorage extends AbstractDbStorage<Genre> implements GenreStorage {
-    private static final String FIND_ALL_QUERY = "SELECT * FROM GENRES";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM GENRES WHERE GENRE_ID = ?";
-    private static final String FIND_BY_FILM_ID_QUERY = "SELECT fg.FILM_ID, fg.GENRE_ID, g.GENRE_NAME " +
-                                                        "FROM FILM_GENRES AS fg " +
-                                                        "INNER JOIN GENRES AS g ON fg.GENRE_ID = g.GENRE_ID " +
-                                                        "WHERE fg.FILM_ID = ? " +
-                                                        "ORDER BY fg.GENRE_ID";
-    private static final String FIND_BY_ALL_FILMS_QUERY = "SELECT fg.FILM_ID, fg.GENRE_ID, g.GENRE_NAME " +
-                                                        "FROM FILM_GENRES AS fg " +
-                                                        "INNER JOIN GENRES AS g ON fg.GENRE_ID = g.GENRE_ID " +
-                                                        "ORDER BY fg.GENRE_ID";
-
-    public GenreDbStorage(JdbcTemplate jdbc, RowMapper<Genre> mapper) {
+    private static final String FIND_ALL_QUERY = "SELECT * FROM GENRES ORDER BY GENRE_ID";
+    private static final String FIND_BY_FILM_ID_QUERY = "SELECT FILM_ID, GENRE_ID " +
+                                                        "FROM FILM_GENRES " +
+                                                        "WHERE FILM_ID = ? " +
+                                                        "ORDER BY GENRE_ID";
+    private static final String FIND_BY_ALL_FILMS_QUERY = "SELECT FILM_ID, GENRE_ID " +
+                                                        "FROM FILM_GENRES " +
+                                                        "ORDER BY GENRE_ID";
+
+    // Справочник жанров: индекс массива — GENRE_ID. Массив не меняется, при обновлении подменяется целиком
+    private volatile Genre[] genresById = new Genre[0];
+    private final EntityVersions versions;
+    // Загрузка справочника идет в один поток; по промаху она запускается не чаще раза в интервал
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final long missRefreshIntervalNanos;
+    private volatile long lastRefreshNanos;
+
+    public GenreDbStorage(JdbcTemplate jdbc, RowMapper<Genre> mapper, EntityVersions versions,
+                          @Value("${filmorate.reference.miss-refresh-interval-ms:1000}") long missRefreshIntervalMs) {
         super(jdbc, mapper);
+        this.versions = versions;
+        this.missRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(missRefreshIntervalMs);
+    }
+
+    @PostConstruct
+    @Override
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            List<Genre> genres = findMany(FIND_ALL_QUERY);
+            int maxId = genres.stream()
+                    .mapToInt(Genre::getId)
+                    .max()
+                    .orElse(0);
+
+            Genre[] snapshot = new Genre[maxId + 1];
+            genres.forEach(genre -> snapshot[genre.getId()] = genre);
+            // Повторная загрузка при поиске неизвестного id не должна сбрасывать ETag, если справочник не изменился
+            if (!Arrays.equals(snapshot, genresById)) {
+                genresById = snapshot;
+                versions.genresChanged();
+            }
+            lastRefreshNanos = System.nanoTime();
+            log.debug("Справочник жанров загружен. Жанров: {}", genres.size());
+        } finally {
+            refreshLock.unlock();
+        }
     }
 
     @Override
     public Collection<Genre> getAllGenres() {
-        return findMany(FIND_ALL_QUERY);
+        return Arrays.stream(genresById)
+                .filter(Objects::nonNull)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
     }
 
     @Override
     public Genre getGenreById(Integer id) {
-        return findOne(FIND_BY_ID_QUERY, id)
-                .orElseThrow(() -> new NotFoundException("Жанр с id = " + id + " не найден"));
+        Genre genre = lookup(id);
+        if (genre == null) {
+            // Жанр мог появиться в БД после загрузки справочника
+            refreshOnMiss();
+            genre = lookup(id);
+        }
+        if (genre == null) {
+            throw new NotFoundException("Жанр с id = " + id + " не найден");
+        }
+        return copyOf(genre);
     }
 
     @Override
     public Set<Genre> getGenresByFilmId(Long filmId) {
-        return new LinkedHashSet<>(findMany(FIND_BY_FILM_ID_QUERY, filmId));
+        return new LinkedHashSet<>(jdbc.query(FIND_BY_FILM_ID_QUERY,
+                (rs, rowNum) -> getGenreById(rs.getInt("GENRE_ID")), filmId));
     }
 
     @Override
@@ -56,10 +108,7 @@ public class GenreDbStorage extends AbstractDbStorage<Genre> implements GenreSto
 
                 while (rs.next()) {
                     Long filmId = rs.getLong("FILM_ID");
-                    Integer genreId = rs.getInt("GENRE_ID");
-                    String genreName = rs.getString("GENRE_NAME");
-
-                    Genre genre = new Genre(genreId, genreName);
+                    Genre genre = getGenreById(rs.getInt("GENRE_ID"));
                     result.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
                 }
                 return result;
@@ -69,14 +118,16 @@ public class GenreDbStorage extends AbstractDbStorage<Genre> implements GenreSto
 
     @Override
     public Map<Long, Set<Genre>> getGenresByFilmIds(Set<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new HashMap<>();
+        }
         String placeholders = filmIds.stream()
                 .map(id -> "?")
                 .collect(Collectors.joining(","));
-        String findByFilmIdsQuery = String.format("SELECT fg.FILM_ID, fg.GENRE_ID, g.GENRE_NAME " +
-                                        "FROM FILM_GENRES AS fg " +
-                                        "INNER JOIN GENRES AS g ON fg.GENRE_ID = g.GENRE_ID " +
-                                        "WHERE fg.FILM_ID IN (%s) " +
-                                        "ORDER BY fg.GENRE_ID", placeholders);
+        String findByFilmIdsQuery = String.format("SELECT FILM_ID, GENRE_ID " +
+                                        "FROM FILM_GENRES " +
+                                        "WHERE FILM_ID IN (%s) " +
+                                        "ORDER BY GENRE_ID", placeholders);
 
         return jdbc.query(findByFilmIdsQuery, filmIds.toArray(), new ResultSetExtractor<Map<Long, Set<Genre>>>() {
             @Override
@@ -85,14 +136,40 @@ public class GenreDbStorage extends AbstractDbStorage<Genre> implements GenreSto
 
                 while (rs.next()) {
                     Long filmId = rs.getLong("FILM_ID");
-                    Integer genreId = rs.getInt("GENRE_ID");
-                    String genreName = rs.getString("GENRE_NAME");
-
-                    Genre genre = new Genre(genreId, genreName);
+                    Genre genre = getGenreById(rs.getInt("GENRE_ID"));
                     result.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
                 }
                 return result;
             }
         });
     }
+
+    // Повторные запросы несуществующего id, в том числе из пакетной загрузки, не идут в БД каждый раз.
+    // Потоки, промахнувшиеся во время загрузки, дожидаются ее и не запускают свою
+    private void refreshOnMiss() {
+        long missNanos = System.nanoTime();
+        if (missNanos - lastRefreshNanos < missRefreshIntervalNanos) {
+            return;
+        }
+        refreshLock.lock();
+        try {
+            if (missNanos - lastRefreshNanos >= missRefreshIntervalNanos) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private Genre lookup(Integer id) {
+        Genre[] snapshot = genresById;
+        if (id == null || id < 0 || id >= snapshot.length) {
+            return null;
+        }
+        return snapshot[id];
+    }
+
+    private Genre copyOf(Genre genre) {
+        return new Genre(genre.getId(), genre.getName());
+    }
 }
@@ -10,6 +10,8 @@ public interface GenreStorage {
 
     Collection<Genre> getAllGenres();
 
+    void refresh();
+
     Genre getGenreById(Integer id);
 
     Set<Genre> getGenresByFilmId(Long filmId);
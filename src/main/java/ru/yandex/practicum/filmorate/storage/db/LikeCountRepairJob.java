@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.memory.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LikeCountRepairJob {
+    private final LikesStorage likesStorage;
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmTitleIndex titleIndex;
+
+    // При старте догоняем счетчики для данных, записанных до появления FILMS.LIKE_COUNT
+    @EventListener(ApplicationReadyEvent.class)
+    public void repairOnStartup() {
+        repair();
+    }
+
+    // По умолчанию периодическая сверка выключена ("-"), включается через filmorate.likes.repair-cron
+    @Scheduled(cron = "${filmorate.likes.repair-cron:-}")
+    public void repair() {
+        int repaired = likesStorage.rebuildLikeCounts();
+        if (repaired > 0) {
+            log.warn("Счетчики лайков расходились с таблицей LIKES и были исправлены у {} фильмов", repaired);
+            // Рейтинг и подсказки строятся по FILMS.LIKE_COUNT, поэтому после исправления счетчиков перестраиваются
+            popularityIndex.rebuild();
+            titleIndex.rebuild();
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exception.InternalServerException;
+import ru.yandex.practicum.filmorate.model.IdSet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Событие лайка сначала попадает в журнал на диске и в буфер в памяти,
+// а в таблицу LIKES уходит пачкой по размеру буфера или по таймеру
+@Component
+@ConditionalOnProperty(name = "filmorate.likes.write-behind.enabled", havingValue = "true")
+@Slf4j
+public class LikeWriteBehindBuffer {
+    private static final String EXISTS_QUERY = "SELECT COUNT(*) FROM LIKES WHERE USER_ID = ? AND FILM_ID = ?";
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final byte LIKE = 1;
+    private static final byte UNLIKE = 0;
+    private static final int RECORD_SIZE = 1 + Long.BYTES * 2;
+    private static final int LOCK_STRIPES = 64;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Path journalDir;
+
+    // Блокировка чтения берут записи событий, блокировку записи — подмена буфера и журнала при сбросе
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private final Object[] keyLocks = new Object[LOCK_STRIPES];
+    private final Object flushLock = new Object();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    // Фиксация пачки и смена флага идут под блокировкой записи: счетчик из FILMS.LIKE_COUNT и дельта буфера,
+    // прочитанные под блокировкой чтения, не расходятся на пачку
+    private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    // Буфер и последняя отправленная пачка подменяются одной записью в поле, поэтому чтение видит их согласованно
+    private volatile Buffers buffers = new Buffers(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), true);
+    // Сегмент журнала отправленной пачки. Пока пачка не зафиксирована, она остается в чтениях,
+    // а следующая пачка в БД не отправляется: иначе старые события могли бы лечь поверх более новых
+    private Journal inFlightJournal;
+
+    private Journal journal;
+    // Число ротаций буфера: меняется только под блокировкой записи rotationLock
+    private volatile long rotations;
+    private long nextSegmentNumber;
+    private ScheduledExecutorService flusher;
+
+    @Autowired
+    public LikeWriteBehindBuffer(JdbcTemplate jdbc,
+                                 PlatformTransactionManager transactionManager,
+                                 @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                                 @Value("${filmorate.likes.write-behind.flush-interval-ms:200}") long flushIntervalMs,
+                                 @Value("${filmorate.likes.write-behind.journal-dir:./db/likes-journal}")
+                                 String journalDir) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.journalDir = Path.of(journalDir);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            keyLocks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        recover();
+        journal = Journal.open(nextSegment());
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "likes-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена. Пачка: {}, интервал: {} мс, журнал: {}",
+                batchSize, flushIntervalMs, journalDir.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        flush();
+        journal.close();
+        // Если БД недоступна, несброшенные события остаются в журнале до следующего запуска
+        if (buffers.inFlightCommitted() && journal.isEmpty()) {
+            journal.delete();
+        }
+    }
+
+    public boolean addLike(long filmId, long userId) {
+        return record(filmId, userId, true);
+    }
+
+    public boolean deleteLike(long filmId, long userId) {
+        return record(filmId, userId, false);
+    }
+
+    // События применяются к множеству идемпотентно, поэтому уже зафиксированная пачка ему не вредит
+    public void applyPendingLikes(Long filmId, Set<Long> likes) {
+        buffers.applyTo(filmId, likes);
+    }
+
+    public void applyPendingLikes(Map<Long, Set<Long>> likesByFilm, Collection<Long> filmIds) {
+        Buffers current = buffers;
+        for (Long filmId : filmIds) {
+            Set<Long> likes = likesByFilm.computeIfAbsent(filmId, k -> new IdSet());
+            current.applyTo(filmId, likes);
+            if (likes.isEmpty()) {
+                likesByFilm.remove(filmId);
+            }
+        }
+    }
+
+    public Set<Long> getPendingFilmIds() {
+        Buffers current = buffers;
+        Set<Long> filmIds = new HashSet<>(current.inFlight().keySet());
+        filmIds.addAll(current.pending().keySet());
+        return filmIds;
+    }
+
+    public int getPendingLikesDelta(Long filmId) {
+        Buffers current = buffers;
+        int delta = current.inFlightCommitted() ? 0 : sumOf(current.inFlight().get(filmId));
+        return delta + sumOf(current.pending().get(filmId));
+    }
+
+    // Чтение счетчиков из БД вместе с getPendingLikesDelta: пока reader работает, пачка не фиксируется
+    public <T> T readConsistently(Supplier<T> reader) {
+        commitLock.readLock().lock();
+        try {
+            return reader.get();
+        } finally {
+            commitLock.readLock().unlock();
+        }
+    }
+
+    public void flush() {
+        synchronized (flushLock) {
+            // Несохраненная пачка повторяется первой; пока она не записана, буфер не ротируется
+            if (!buffers.inFlightCommitted() && !writeInFlight()) {
+                return;
+            }
+
+            Journal sealed;
+            rotationLock.writeLock().lock();
+            try {
+                // Взаимно погашенные события тоже лежат в журнале, поэтому он ротируется и без изменений в буфере
+                if (pendingCount.get() == 0 && journal.isEmpty()) {
+                    return;
+                }
+                buffers = new Buffers(new ConcurrentHashMap<>(), buffers.pending(), false);
+                rotations++;
+                pendingCount.set(0);
+                sealed = journal;
+                journal = Journal.open(nextSegment());
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+            sealed.close();
+            inFlightJournal = sealed;
+            writeInFlight();
+        }
+    }
+
+    private boolean record(long filmId, long userId, boolean liked) {
+        Journal target = null;
+        long sequence = 0;
+        // Состояние из БД читается без блокировок и годится, пока буфер не ротировался: до ротации событие
+        // этой пары, записанное в БД после чтения, еще лежит в буфере и перекрывает прочитанное
+        Boolean storedLiked = null;
+        long storedAt = -1;
+        while (target == null) {
+            rotationLock.readLock().lock();
+            try {
+                synchronized (keyLocks[Math.floorMod(Objects.hash(filmId, userId), LOCK_STRIPES)]) {
+                    Boolean state = bufferedState(filmId, userId);
+                    if (state == null && storedAt == rotations) {
+                        state = storedLiked;
+                    }
+                    if (state != null) {
+                        if (state == liked) {
+                            return false;
+                        }
+                        target = journal;
+                        sequence = target.append(liked ? LIKE : UNLIKE, filmId, userId);
+                        addPending(filmId, userId, liked);
+                    }
+                }
+                storedAt = rotations;
+            } finally {
+                rotationLock.readLock().unlock();
+            }
+            if (target == null) {
+                Integer count = jdbc.queryForObject(EXISTS_QUERY, Integer.class, userId, filmId);
+                storedLiked = count != null && count > 0;
+            }
+        }
+
+        // Ответ клиенту уходит только после того, как событие физически записано на диск
+        target.sync(sequence);
+        if (pendingCount.get() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+        return true;
+    }
+
+    // null, если событий пары нет ни в буфере, ни в отправленной пачке
+    private Boolean bufferedState(long filmId, long userId) {
+        Buffers current = buffers;
+        Boolean state = stateIn(current.pending(), filmId, userId);
+        return state != null ? state : stateIn(current.inFlight(), filmId, userId);
+    }
+
+    private void addPending(long filmId, long userId, boolean liked) {
+        Map<Long, Boolean> filmPending = buffers.pending().computeIfAbsent(filmId, k -> new ConcurrentHashMap<>());
+        // В буфере может лежать только противоположное событие: пара лайк/снятие взаимно гасится
+        if (filmPending.remove(userId) != null) {
+            pendingCount.decrementAndGet();
+        } else {
+            filmPending.put(userId, liked);
+            pendingCount.incrementAndGet();
+        }
+    }
+
+    private boolean writeInFlight() {
+        commitLock.writeLock().lock();
+        try {
+            // Флаг ставится в afterCommit: до коммита счетчик FILMS.LIKE_COUNT еще не включает пачку
+            Buffers sent = buffers;
+            write(sent.inFlight(), () -> buffers = new Buffers(sent.pending(), sent.inFlight(), true));
+        } catch (RuntimeException e) {
+            log.error("Не удалось сбросить пачку лайков в БД, журнал {} будет применен повторно",
+                    inFlightJournal.path, e);
+            return false;
+        } finally {
+            commitLock.writeLock().unlock();
+        }
+        inFlightJournal.delete();
+        return true;
+    }
+
+    private void write(Map<Long, Map<Long, Boolean>> batch, Runnable onCommit) {
+        List<Object[]> likes = new ArrayList<>();
+        List<Object[]> unlikes = new ArrayList<>();
+        batch.forEach((filmId, users) -> users.forEach((userId, liked) -> {
+            if (liked) {
+                likes.add(new Object[]{userId, filmId, userId, filmId});
+            } else {
+                unlikes.add(new Object[]{filmId, userId});
+            }
+        }));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, Integer> deltas = new HashMap<>();
+            int[] inserted = jdbc.batchUpdate(LikesDbStorage.ADD_LIKE_QUERY, likes);
+            for (int i = 0; i < inserted.length; i++) {
+                deltas.merge((Long) likes.get(i)[1], inserted[i], Integer::sum);
+            }
+            int[] deleted = jdbc.batchUpdate(LikesDbStorage.DELETE_LIKE_QUERY, unlikes);
+            for (int i = 0; i < deleted.length; i++) {
+                deltas.merge((Long) unlikes.get(i)[0], -deleted[i], Integer::sum);
+            }
+
+            List<Object[]> countChanges = new ArrayList<>();
+            deltas.forEach((filmId, delta) -> {
+                if (delta != 0) {
+                    countChanges.add(new Object[]{delta, filmId});
+                }
+            });
+            jdbc.batchUpdate(LikesDbStorage.CHANGE_LIKE_COUNT_QUERY, countChanges);
+            AbstractDbStorage.afterCommit(onCommit);
+        });
+        log.debug("Пачка лайков записана в БД. Лайков: {}, снятий: {}", likes.size(), unlikes.size());
+    }
+
+    private void recover() {
+        try {
+            Files.createDirectories(journalDir);
+            List<Path> segments;
+            try (Stream<Path> files = Files.list(journalDir)) {
+                segments = files
+                        .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                        .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted(Comparator.comparingLong(LikeWriteBehindBuffer::segmentNumber))
+                        .toList();
+            }
+            nextSegmentNumber = segments.stream()
+                    .mapToLong(LikeWriteBehindBuffer::segmentNumber)
+                    .max()
+                    .orElse(0) + 1;
+            replay(segments);
+        } catch (IOException e) {
+            throw new InternalServerException("Не удалось прочитать журнал лайков: " + e.getMessage());
+        }
+    }
+
+    private void replay(List<Path> segments) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        // Операции идемпотентны, поэтому для каждой пары достаточно последнего события
+        Map<Long, Map<Long, Boolean>> batch = new HashMap<>();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        for (Path segment : segments) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                while (true) {
+                    record.clear();
+                    int read = 0;
+                    while (record.hasRemaining() && read >= 0) {
+                        read = channel.read(record);
+                    }
+                    if (record.hasRemaining()) {
+                        // Хвост, оборванный при сбое, не был подтвержден клиенту
+                        break;
+                    }
+                    record.flip();
+                    boolean liked = record.get() == LIKE;
+                    long filmId = record.getLong();
+                    long userId = record.getLong();
+                    batch.computeIfAbsent(filmId, k -> new HashMap<>()).put(userId, liked);
+                }
+            }
+        }
+
+        write(batch, () -> { });
+        for (Path segment : segments) {
+            Files.deleteIfExists(segment);
+        }
+        log.info("Из журнала восстановлены неподтвержденные в БД события лайков. Сегментов: {}", segments.size());
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при сбросе буфера лайков", e);
+        }
+    }
+
+    private Path nextSegment() {
+        return journalDir.resolve(SEGMENT_PREFIX + nextSegmentNumber++ + SEGMENT_SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static Boolean stateIn(Map<Long, Map<Long, Boolean>> events, long filmId, long userId) {
+        Map<Long, Boolean> filmEvents = events.get(filmId);
+        return filmEvents != null ? filmEvents.get(userId) : null;
+    }
+
+    // FILM_ID -> USER_ID -> true (лайк) / false (снятие лайка)
+    private record Buffers(Map<Long, Map<Long, Boolean>> pending, Map<Long, Map<Long, Boolean>> inFlight,
+                           boolean inFlightCommitted) {
+
+        void applyTo(Long filmId, Set<Long> likes) {
+            LikeWriteBehindBuffer.applyTo(likes, inFlight.get(filmId));
+            LikeWriteBehindBuffer.applyTo(likes, pending.get(filmId));
+        }
+    }
+
+    private static void applyTo(Set<Long> likes, Map<Long, Boolean> events) {
+        if (events == null) {
+            return;
+        }
+        events.forEach((userId, liked) -> {
+            if (liked) {
+                likes.add(userId);
+            } else {
+                likes.remove(userId);
+            }
+        });
+    }
+
+    private static int sumOf(Map<Long, Boolean> events) {
+        if (events == null) {
+            return 0;
+        }
+        int delta = 0;
+        for (Boolean liked : events.values()) {
+            delta += liked ? 1 : -1;
+        }
+        return delta;
+    }
+
+    private static final class Journal {
+        private final Path path;
+        private final FileChannel channel;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        // Один force за раз; записи идут под монитором журнала и во время force не ждут
+        private final ReentrantLock forceLock = new ReentrantLock();
+        private long written;
+        private long synced;
+        private boolean closed;
+
+        private Journal(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        static Journal open(Path path) {
+            try {
+                return new Journal(path, FileChannel.open(path, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            } catch (IOException e) {
+                throw new InternalServerException("Не удалось открыть журнал лайков: " + e.getMessage());
+            }
+        }
+
+        synchronized boolean isEmpty() {
+            return written == 0;
+        }
+
+        synchronized long append(byte operation, long filmId, long userId) {
+            record.clear();
+            record.put(operation).putLong(filmId).putLong(userId).flip();
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } catch (IOException e) {
+                throw new InternalServerException("Не удалось записать событие в журнал лайков: " + e.getMessage());
+            }
+            return ++written;
+        }
+
+        // Групповой fsync: один вызов force подтверждает все записи, сделанные до его начала.
+        // Пока он идет, другие лайки дописываются в журнал и ждут следующего force
+        void sync(long sequence) {
+            forceLock.lock();
+            try {
+                long target;
+                synchronized (this) {
+                    if (closed || synced >= sequence) {
+                        return;
+                    }
+                    target = written;
+                }
+                channel.force(false);
+                synchronized (this) {
+                    synced = Math.max(synced, target);
+                }
+            } catch (IOException e) {
+                throw new InternalServerException("Не удалось сохранить журнал лайков: " + e.getMessage());
+            } finally {
+                forceLock.unlock();
+            }
+        }
+
+        void close() {
+            forceLock.lock();
+            try {
+                synchronized (this) {
+                    if (closed) {
+                        return;
+                    }
+                    channel.force(false);
+                    channel.close();
+                    synced = written;
+                    closed = true;
+                }
+            } catch (IOException e) {
+                throw new InternalServerException("Не удалось закрыть журнал лайков: " + e.getMessage());
+            } finally {
+                forceLock.unlock();
+            }
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить сегмент журнала лайков {}", path, e);
+            }
+        }
+    }
+}
@@ -2,14 +2,17 @@ package ru.yandex.practicum.filmorate.storage.db;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.db.mapper.IdSetExtractors;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Repository
@@ -17,66 +20,173 @@ import java.util.stream.Collectors;
 @Slf4j
 public class LikesDbStorage implements LikesStorage {
     private final JdbcTemplate jdbc;
-    private static final String FIND_LIKES_BY_FILM_ID_QUERY = "SELECT USER_ID FROM LIKES WHERE FILM_ID = ?";
-    private static final String ADD_LIKE_QUERY = "INSERT INTO LIKES(USER_ID, FILM_ID) VALUES (?, ?)";
-    private static final String DELETE_LIKE_QUERY = "DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID = ?";
-    private static final String FIND_LIKES_BY_ALL_FILMS_QUERY = "SELECT FILM_ID, USER_ID FROM LIKES";
+    private final Optional<LikeWriteBehindBuffer> writeBehind;
+    private final EntityVersions versions;
+    private static final String FIND_LIKES_BY_FILM_ID_QUERY = "SELECT USER_ID FROM LIKES WHERE FILM_ID = ? " +
+                                                              "ORDER BY USER_ID";
+    static final String ADD_LIKE_QUERY = "INSERT INTO LIKES(USER_ID, FILM_ID) SELECT ?, ? " +
+                                         "WHERE NOT EXISTS (SELECT 1 FROM LIKES " +
+                                         "                  WHERE USER_ID = ? AND FILM_ID = ?)";
+    static final String DELETE_LIKE_QUERY = "DELETE FROM LIKES WHERE FILM_ID = ? AND USER_ID = ?";
+    private static final String FIND_LIKES_BY_ALL_FILMS_QUERY = "SELECT FILM_ID, USER_ID FROM LIKES " +
+                                                                "ORDER BY FILM_ID, USER_ID";
+    static final String CHANGE_LIKE_COUNT_QUERY = "UPDATE FILMS SET LIKE_COUNT = LIKE_COUNT + ? " +
+                                                  "WHERE FILM_ID = ?";
+    private static final String FIND_LIKE_COUNT_QUERY = "SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?";
+    private static final String REBUILD_LIKE_COUNTS_QUERY =
+                    "UPDATE FILMS f SET LIKE_COUNT = (SELECT COUNT(*) FROM LIKES l WHERE l.FILM_ID = f.FILM_ID) " +
+                    "WHERE f.LIKE_COUNT <> (SELECT COUNT(*) FROM LIKES l WHERE l.FILM_ID = f.FILM_ID)";
+    private static final ResultSetExtractor<Map<Long, Set<Long>>> LIKES_BY_FILM_EXTRACTOR =
+            IdSetExtractors.groupedIds("FILM_ID", "USER_ID");
 
     @Override
     public Set<Long> getLikesByFilmId(Long filmId) {
-        List<Long> likes = jdbc.queryForList(FIND_LIKES_BY_FILM_ID_QUERY, Long.class, filmId);
-        return new HashSet<>(likes);
+        Set<Long> likes = jdbc.query(FIND_LIKES_BY_FILM_ID_QUERY, IdSetExtractors.ids("USER_ID"), filmId);
+        applyPendingLikes(filmId, likes);
+        return likes;
     }
 
     @Override
-    public void addLike(Long filmId, Long userId) {
-        jdbc.update(ADD_LIKE_QUERY, userId, filmId);
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
+        if (writeBehind.isPresent()) {
+            // Отложенный лайк сразу виден при чтении, поэтому версия фильма меняется так же, как при записи в БД
+            return filmChanged(filmId, writeBehind.get().addLike(filmId, userId));
+        }
+        int insertedRows;
+        try {
+            insertedRows = jdbc.update(ADD_LIKE_QUERY, userId, filmId, userId, filmId);
+        } catch (DuplicateKeyException e) {
+            // Параллельный запрос успел вставить ту же пару, первичный ключ не дал создать дубль
+            insertedRows = 0;
+        }
+        if (insertedRows == 0) {
+            log.debug("Лайк пользователя {} фильму {} уже поставлен.", userId, filmId);
+            return false;
+        }
+
+        jdbc.update(CHANGE_LIKE_COUNT_QUERY, 1, filmId);
         log.debug("Лайк успешно добавлен.");
+        return filmChanged(filmId, true);
+    }
+
+    @Override
+    @Transactional
+    public boolean[] addLikes(List<Like> likes) {
+        boolean[] added = new boolean[likes.size()];
+        if (writeBehind.isPresent()) {
+            // Буфер сам копит события и пишет их пакетами
+            for (int i = 0; i < likes.size(); i++) {
+                added[i] = filmChanged(likes.get(i).getFilmId(),
+                        writeBehind.get().addLike(likes.get(i).getFilmId(), likes.get(i).getUserId()));
+            }
+            return added;
+        }
+
+        List<Object[]> likeArgs = likes.stream()
+                .map(like -> new Object[]{like.getUserId(), like.getFilmId(), like.getUserId(), like.getFilmId()})
+                .collect(Collectors.toList());
+        // Условная вставка видит строки, добавленные ранее в этом же пакете, поэтому дубли внутри пакета отсеиваются
+        int[] insertedRows = jdbc.batchUpdate(ADD_LIKE_QUERY, likeArgs);
+
+        Map<Long, Integer> countDeltas = new HashMap<>();
+        for (int i = 0; i < likes.size(); i++) {
+            added[i] = insertedRows[i] > 0;
+            if (added[i]) {
+                countDeltas.merge(likes.get(i).getFilmId(), 1, Integer::sum);
+            }
+        }
+        List<Object[]> countArgs = countDeltas.entrySet().stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .collect(Collectors.toList());
+        jdbc.batchUpdate(CHANGE_LIKE_COUNT_QUERY, countArgs);
+        countDeltas.keySet().forEach(filmId -> filmChanged(filmId, true));
+        log.debug("Пакет лайков обработан. Добавлено для {} фильмов.", countDeltas.size());
+
+        return added;
     }
 
     @Override
-    public void deleteLike(Long filmId, Long userId) {
-        jdbc.update(DELETE_LIKE_QUERY, filmId, userId);
+    @Transactional
+    public boolean deleteLike(Long filmId, Long userId) {
+        if (writeBehind.isPresent()) {
+            return filmChanged(filmId, writeBehind.get().deleteLike(filmId, userId));
+        }
+        int deletedRows = jdbc.update(DELETE_LIKE_QUERY, filmId, userId);
+        if (deletedRows == 0) {
+            log.debug("Лайк пользователя {} фильму {} не найден.", userId, filmId);
+            return false;
+        }
+
+        jdbc.update(CHANGE_LIKE_COUNT_QUERY, -deletedRows, filmId);
         log.debug("Лайк успешно удален.");
+        return filmChanged(filmId, true);
     }
 
     @Override
     public Map<Long, Set<Long>> getLikesByAllFilms() {
-        return jdbc.query(FIND_LIKES_BY_ALL_FILMS_QUERY, new ResultSetExtractor<Map<Long, Set<Long>>>() {
-            @Override
-            public Map<Long, Set<Long>> extractData(ResultSet rs) throws SQLException, DataAccessException {
-                Map<Long, Set<Long>> result = new HashMap<>();
-
-                while (rs.next()) {
-                    Long userId = rs.getLong("USER_ID");
-                    Long filmId = rs.getLong("FILM_ID");
-                    result.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-                }
-                return result;
-            }
-        });
+        Map<Long, Set<Long>> likes = jdbc.query(FIND_LIKES_BY_ALL_FILMS_QUERY, LIKES_BY_FILM_EXTRACTOR);
+        writeBehind.ifPresent(buffer -> buffer.applyPendingLikes(likes, buffer.getPendingFilmIds()));
+        return likes;
     }
 
     @Override
     public Map<Long, Set<Long>> getLikesByFilmIds(Set<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return new HashMap<>();
+        }
         String placeholders = filmIds.stream()
                 .map(id -> "?")
                 .collect(Collectors.joining(","));
         String findLikesByFilmIdsQuery = String.format("SELECT FILM_ID, USER_ID FROM LIKES " +
-                                                        "WHERE FILM_ID IN (%s)", placeholders);
-
-        return jdbc.query(findLikesByFilmIdsQuery, filmIds.toArray(), new ResultSetExtractor<Map<Long, Set<Long>>>() {
-            @Override
-            public Map<Long, Set<Long>> extractData(ResultSet rs) throws SQLException, DataAccessException {
-                Map<Long, Set<Long>> result = new HashMap<>();
-
-                while (rs.next()) {
-                    Long userId = rs.getLong("USER_ID");
-                    Long filmId = rs.getLong("FILM_ID");
-                    result.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-                }
-                return result;
-            }
+                                                        "WHERE FILM_ID IN (%s) " +
+                                                        "ORDER BY FILM_ID, USER_ID", placeholders);
+
+        Map<Long, Set<Long>> likes = jdbc.query(findLikesByFilmIdsQuery, filmIds.toArray(),
+                LIKES_BY_FILM_EXTRACTOR);
+        writeBehind.ifPresent(buffer -> buffer.applyPendingLikes(likes, filmIds));
+        return likes;
+    }
+
+    @Override
+    public int getLikesCountByFilmId(Long filmId) {
+        return readWithPendingLikes(() -> {
+            Integer count = jdbc.queryForObject(FIND_LIKE_COUNT_QUERY, Integer.class, filmId);
+            return (count != null ? count : 0) + getPendingLikesDelta(filmId);
         });
     }
+
+    @Override
+    public int getPendingLikesDelta(Long filmId) {
+        return writeBehind.map(buffer -> buffer.getPendingLikesDelta(filmId)).orElse(0);
+    }
+
+    // Пока reader читает FILMS.LIKE_COUNT и дельту буфера, пачка отложенной записи не фиксируется:
+    // иначе зафиксированная пачка попала бы в счетчик дважды или не попала бы вовсе
+    @Override
+    public <T> T readWithPendingLikes(Supplier<T> reader) {
+        return writeBehind.map(buffer -> buffer.readConsistently(reader)).orElseGet(reader);
+    }
+
+    @Override
+    public void applyPendingLikes(Long filmId, Set<Long> likes) {
+        writeBehind.ifPresent(buffer -> buffer.applyPendingLikes(filmId, likes));
+    }
+
+    @Override
+    public int rebuildLikeCounts() {
+        int repairedRows = jdbc.update(REBUILD_LIKE_COUNTS_QUERY);
+        log.debug("Пересчет счетчиков лайков завершен. Исправлено фильмов: {}", repairedRows);
+        if (repairedRows > 0) {
+            AbstractDbStorage.afterCommit(versions::allFilmsChanged);
+        }
+        return repairedRows;
+    }
+
+    private boolean filmChanged(Long filmId, boolean changed) {
+        if (changed) {
+            AbstractDbStorage.afterCommit(() -> versions.filmChanged(filmId));
+        }
+        return changed;
+    }
 }
@@ -1,17 +1,33 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
+import ru.yandex.practicum.filmorate.model.Like;
+
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Supplier;
 
 public interface LikesStorage {
 
     Set<Long> getLikesByFilmId(Long filmId);
 
-    void addLike(Long filmId, Long userId);
+    boolean addLike(Long filmId, Long userId);
+
+    boolean deleteLike(Long filmId, Long userId);
 
-    void deleteLike(Long filmId, Long userId);
+    boolean[] addLikes(List<Like> likes);
 
     Map<Long, Set<Long>> getLikesByAllFilms();
 
     Map<Long, Set<Long>> getLikesByFilmIds(Set<Long> filmIds);
+
+    int getLikesCountByFilmId(Long filmId);
+
+    int rebuildLikeCounts();
+
+    void applyPendingLikes(Long filmId, Set<Long> likes);
+
+    int getPendingLikesDelta(Long filmId);
+
+    <T> T readWithPendingLikes(Supplier<T> reader);
 }
@@ -1,30 +1,114 @@
 package ru.yandex.practicum.filmorate.storage.db;
 
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
 @Repository
+@Slf4j
 public class MpaRatingDbStorage extends AbstractDbStorage<MpaRating> implements MpaRatingStorage {
-    private static final String FIND_ALL_QUERY = "SELECT * FROM MPA_RATINGS";
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM MPA_RATINGS WHERE RATING_ID = ?";
+    private static final String FIND_ALL_QUERY = "SELECT * FROM MPA_RATINGS ORDER BY RATING_ID";
 
-    public MpaRatingDbStorage(JdbcTemplate jdbc, RowMapper<MpaRating> mapper) {
+    // Справочник рейтингов: индекс массива — RATING_ID. Массив не меняется, при обновлении подменяется целиком
+    private volatile MpaRating[] ratingsById = new MpaRating[0];
+    private final EntityVersions versions;
+    // Загрузка справочника идет в один поток; по промаху она запускается не чаще раза в интервал
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final long missRefreshIntervalNanos;
+    private volatile long lastRefreshNanos;
+
+    public MpaRatingDbStorage(JdbcTemplate jdbc, RowMapper<MpaRating> mapper, EntityVersions versions,
+                              @Value("${filmorate.reference.miss-refresh-interval-ms:1000}") long missRefreshIntervalMs) {
         super(jdbc, mapper);
+        this.versions = versions;
+        this.missRefreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(missRefreshIntervalMs);
+    }
+
+    @PostConstruct
+    @Override
+    public void refresh() {
+        refreshLock.lock();
+        try {
+            List<MpaRating> ratings = findMany(FIND_ALL_QUERY);
+            int maxId = ratings.stream()
+                    .mapToInt(MpaRating::getId)
+                    .max()
+                    .orElse(0);
+
+            MpaRating[] snapshot = new MpaRating[maxId + 1];
+            ratings.forEach(rating -> snapshot[rating.getId()] = rating);
+            if (!Arrays.equals(snapshot, ratingsById)) {
+                ratingsById = snapshot;
+                versions.mpaChanged();
+            }
+            lastRefreshNanos = System.nanoTime();
+            log.debug("Справочник рейтингов MPA загружен. Рейтингов: {}", ratings.size());
+        } finally {
+            refreshLock.unlock();
+        }
     }
 
     @Override
     public MpaRating getMpaById(Integer id) {
-        return findOne(FIND_BY_ID_QUERY, id)
-                .orElseThrow(() -> new NotFoundException("Рейтинг с id = " + id + " не найден"));
+        MpaRating rating = lookup(id);
+        if (rating == null) {
+            // Рейтинг мог появиться в БД после загрузки справочника
+            refreshOnMiss();
+            rating = lookup(id);
+        }
+        if (rating == null) {
+            throw new NotFoundException("Рейтинг с id = " + id + " не найден");
+        }
+        return copyOf(rating);
     }
 
     @Override
     public Collection<MpaRating> getAllMpa() {
-        return findMany(FIND_ALL_QUERY);
+        return Arrays.stream(ratingsById)
+                .filter(Objects::nonNull)
+                .map(this::copyOf)
+                .collect(Collectors.toList());
+    }
+
+    // Как и у жанров: не чаще раза в интервал и одна загрузка на все одновременные промахи
+    private void refreshOnMiss() {
+        long missNanos = System.nanoTime();
+        if (missNanos - lastRefreshNanos < missRefreshIntervalNanos) {
+            return;
+        }
+        refreshLock.lock();
+        try {
+            if (missNanos - lastRefreshNanos >= missRefreshIntervalNanos) {
+                refresh();
+            }
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private MpaRating lookup(Integer id) {
+        MpaRating[] snapshot = ratingsById;
+        if (id == null || id < 0 || id >= snapshot.length) {
+            return null;
+        }
+        return snapshot[id];
+    }
+
+    private MpaRating copyOf(MpaRating rating) {
+        return new MpaRating(rating.getId(), rating.getName());
     }
 }
@@ -8,4 +8,6 @@ public interface MpaRatingStorage {
     MpaRating getMpaById(Integer id);
 
     Collection<MpaRating> getAllMpa();
+
+    void refresh();
 }
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.storage.db;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Журнал медленных запросов для всех обращений к БД, а не только через AbstractDbStorage.
+// Параметры запоминаются ссылками и превращаются в строку, только если запрос выполнялся дольше порога
+@Component
+@ConditionalOnProperty(name = "filmorate.sql.slow-query.enabled", havingValue = "true")
+@Slf4j
+public class SlowQueryDataSourceWrapper implements BeanPostProcessor {
+    private static final int MAX_PARAMS_LENGTH = 2000;
+
+    private final long thresholdNanos;
+
+    public SlowQueryDataSourceWrapper(@Value("${filmorate.sql.slow-query.threshold-ms:200}") long thresholdMs) {
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        log.info("Журнал медленных запросов: порог {} мс", thresholdMs);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && !(bean instanceof SlowQueryDataSource)) {
+            return new SlowQueryDataSource(dataSource);
+        }
+        return bean;
+    }
+
+    final class SlowQueryDataSource extends DelegatingDataSource {
+        private SlowQueryDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return watch(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return watch(super.getConnection(username, password));
+        }
+    }
+
+    private Connection watch(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    String name = method.getName();
+                    if (result instanceof CallableStatement) {
+                        return result;
+                    }
+                    if (result instanceof PreparedStatement statement && name.startsWith("prepare")) {
+                        return watch(statement, PreparedStatement.class, (String) args[0]);
+                    }
+                    if (result instanceof Statement statement && name.equals("createStatement")) {
+                        return watch(statement, Statement.class, null);
+                    }
+                    return result;
+                });
+    }
+
+    // У PreparedStatement текст известен при создании, у Statement — передается в execute
+    private <S extends Statement> S watch(S statement, Class<S> type, String preparedSql) {
+        List<Object> params = new ArrayList<>();
+        int[] batchSize = new int[1];
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if (name.startsWith("execute")) {
+                        long start = System.nanoTime();
+                        try {
+                            return invoke(statement, method, args);
+                        } finally {
+                            long elapsed = System.nanoTime() - start;
+                            if (elapsed >= thresholdNanos) {
+                                String sql = preparedSql;
+                                if (sql == null && args != null) {
+                                    sql = (String) args[0];
+                                }
+                                logSlowQuery(elapsed, sql, params, batchSize[0]);
+                            }
+                            // Драйвер очищает пакет после выполнения
+                            if (name.startsWith("executeLargeBatch") || name.startsWith("executeBatch")) {
+                                batchSize[0] = 0;
+                            }
+                        }
+                    }
+                    if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                        int index = (Integer) args[0] - 1;
+                        while (params.size() <= index) {
+                            params.add(null);
+                        }
+                        params.set(index, name.equals("setNull") ? null : args[1]);
+                    } else if (name.equals("clearParameters")) {
+                        params.clear();
+                    } else if (name.equals("addBatch")) {
+                        batchSize[0]++;
+                    } else if (name.equals("clearBatch")) {
+                        batchSize[0] = 0;
+                    }
+                    return invoke(statement, method, args);
+                }));
+    }
+
+    private void logSlowQuery(long elapsedNanos, String sql, List<Object> params, int batchSize) {
+        String formatted = Arrays.deepToString(params.toArray());
+        if (formatted.length() > MAX_PARAMS_LENGTH) {
+            formatted = formatted.substring(0, MAX_PARAMS_LENGTH) + "...";
+        }
+        if (batchSize > 0) {
+            log.warn("Медленный запрос: {} мс, пакет из {} строк. SQL: {}. Параметры последней строки: {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), batchSize, sql, formatted);
+        } else {
+            log.warn("Медленный запрос: {} мс. SQL: {}. Параметры: {}",
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), sql, formatted);
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+}
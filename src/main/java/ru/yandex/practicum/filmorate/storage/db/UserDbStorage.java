@@ -6,11 +6,17 @@ import org.springframework.context.annotation.Primary;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.IdSet;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -20,30 +26,55 @@ import java.util.stream.Collectors;
 @Slf4j
 public class UserDbStorage extends AbstractDbStorage<User> implements UserStorage {
     private final FriendStorage friendStorage;
+    private final EntityVersions versions;
+    private static final String INSERT_USER_QUERY = "INSERT INTO USERS(EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
+            "VALUES (?, ?, ?, ?)";
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper, FriendStorage friendStorage) {
+    public UserDbStorage(JdbcTemplate jdbc, RowMapper<User> mapper, FriendStorage friendStorage,
+                         EntityVersions versions) {
         super(jdbc, mapper);
         this.friendStorage = friendStorage;
+        this.versions = versions;
     }
 
     @Override
     public User createUser(User user) {
-        String insertUserQuery = "INSERT INTO USERS(EMAIL, LOGIN, USER_NAME, BIRTHDAY) " +
-                "VALUES (?, ?, ?, ?)";
         long id = insert(
-                insertUserQuery,
+                INSERT_USER_QUERY,
                 user.getEmail(),
                 user.getLogin(),
                 user.getName(),
                 user.getBirthday()
         );
         user.setId(id);
+        // Версия меняется и у нового id: ETag, выданный раньше вместе с ответом 404, больше не совпадет
+        afterCommit(() -> versions.userChanged(id));
         log.debug("Пользователь {} успешно добавлен", user.getName());
 
         return user;
     }
 
+    @Override
+    @Transactional
+    public List<User> createUsers(List<User> users) {
+        List<Object[]> batchArgs = new ArrayList<>(users.size());
+        for (User user : users) {
+            batchArgs.add(new Object[]{user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()});
+        }
+
+        List<Long> ids = insertBatch(INSERT_USER_QUERY, batchArgs);
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).setId(ids.get(i));
+            users.get(i).setFriends(new IdSet());
+            long id = ids.get(i);
+            afterCommit(() -> versions.userChanged(id));
+        }
+        log.debug("Пакет из {} пользователей успешно добавлен", users.size());
+
+        return users;
+    }
+
     @Override
     public User updateUser(User newUser) {
         String updateUserQuery = "UPDATE USERS SET EMAIL = ?, LOGIN = ?, USER_NAME = ?, BIRTHDAY = ? WHERE USER_ID = ?";
@@ -55,6 +86,8 @@ public class UserDbStorage extends AbstractDbStorage<User> implements UserStorag
                 newUser.getBirthday(),
                 newUser.getId()
         );
+        long id = newUser.getId();
+        afterCommit(() -> versions.userChanged(id));
         log.debug("Пользователь {} успешно обновлен", newUser.getName());
 
         return newUser;
@@ -71,6 +104,17 @@ public class UserDbStorage extends AbstractDbStorage<User> implements UserStorag
                 .collect(Collectors.toList());
     }
 
+    @Override
+    public List<User> getUsersPage(long after, int limit) {
+        List<User> users = findPage("SELECT * FROM USERS", "USER_ID", after, limit);
+        Set<Long> userIds = users.stream().map(User::getId).collect(Collectors.toSet());
+
+        Map<Long, Set<Long>> friends = friendStorage.getFriendsByUserIds(userIds);
+        users.forEach(user -> user.setFriends(friends.getOrDefault(user.getId(), new IdSet())));
+
+        return users;
+    }
+
     @Override
     public User getUser(Long id) {
         String findUserQuery = "SELECT * FROM USERS WHERE USER_ID = ?";
@@ -96,4 +140,14 @@ public class UserDbStorage extends AbstractDbStorage<User> implements UserStorag
 
         return count != null && count > 0;
     }
+
+    @Override
+    public Set<Long> getExistingIds(Set<Long> ids) {
+        if (ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        String findExistingIdsQuery = "SELECT USER_ID FROM USERS WHERE USER_ID = ANY(?)";
+
+        return new HashSet<>(jdbc.queryForList(findExistingIdsQuery, Long.class, (Object) ids.toArray(Long[]::new)));
+    }
 }
@@ -0,0 +1,50 @@
+package ru.yandex.practicum.filmorate.storage.db.mapper;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import ru.yandex.practicum.filmorate.model.IdSet;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+public final class IdSetExtractors {
+
+    private IdSetExtractors() {
+    }
+
+    public static ResultSetExtractor<IdSet> ids(String idColumn) {
+        return rs -> {
+            IdSet result = new IdSet();
+            while (rs.next()) {
+                result.add(rs.getLong(idColumn));
+            }
+            result.trimToSize();
+            return result;
+        };
+    }
+
+    // Запрос должен быть отсортирован по ключу и id: тогда каждое множество заполняется дописыванием в конец
+    public static ResultSetExtractor<Map<Long, Set<Long>>> groupedIds(String keyColumn, String idColumn) {
+        return rs -> {
+            Map<Long, Set<Long>> result = new HashMap<>();
+            IdSet current = null;
+            long currentKey = 0;
+
+            while (rs.next()) {
+                long key = rs.getLong(keyColumn);
+                if (current == null || key != currentKey) {
+                    if (current != null) {
+                        current.trimToSize();
+                    }
+                    current = (IdSet) result.computeIfAbsent(key, k -> new IdSet());
+                    currentKey = key;
+                }
+                current.add(rs.getLong(idColumn));
+            }
+            if (current != null) {
+                current.trimToSize();
+            }
+            return result;
+        };
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Счетчики версий фильмов, пользователей и справочников для ETag. Хранилища увеличивают их после фиксации записи,
+// поэтому клиент с актуальным ETag получает 304 без обращения к БД
+@Component
+public class EntityVersions {
+    // Метка запуска: после перезапуска счетчики начинаются заново, и ETag прошлого запуска не должен совпасть
+    private final String instanceId = Long.toString(System.currentTimeMillis(), 36);
+    // Общая последовательность: каждое изменение получает номер больше всех предыдущих
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> filmVersions = new ConcurrentHashMap<>();
+    private final Map<Long, Long> userVersions = new ConcurrentHashMap<>();
+    // Последнее изменение любого фильма или лайка
+    private final AtomicLong filmsVersion = new AtomicLong();
+    // Изменение, затронувшее сразу все фильмы, например пересчет счетчиков лайков
+    private final AtomicLong allFilmsResetVersion = new AtomicLong();
+    private final AtomicLong genresVersion = new AtomicLong();
+    private final AtomicLong mpaVersion = new AtomicLong();
+
+    public void filmChanged(long filmId) {
+        long version = sequence.incrementAndGet();
+        filmVersions.merge(filmId, version, Math::max);
+        filmsVersion.accumulateAndGet(version, Math::max);
+    }
+
+    public void allFilmsChanged() {
+        long version = sequence.incrementAndGet();
+        allFilmsResetVersion.accumulateAndGet(version, Math::max);
+        filmsVersion.accumulateAndGet(version, Math::max);
+    }
+
+    public void userChanged(long userId) {
+        userVersions.merge(userId, sequence.incrementAndGet(), Math::max);
+    }
+
+    public void genresChanged() {
+        genresVersion.accumulateAndGet(sequence.incrementAndGet(), Math::max);
+    }
+
+    public void mpaChanged() {
+        mpaVersion.accumulateAndGet(sequence.incrementAndGet(), Math::max);
+    }
+
+    public long getFilmVersion(long filmId) {
+        return Math.max(filmVersions.getOrDefault(filmId, 0L), allFilmsResetVersion.get());
+    }
+
+    public long getFilmsVersion() {
+        return filmsVersion.get();
+    }
+
+    public long getUserVersion(long userId) {
+        return userVersions.getOrDefault(userId, 0L);
+    }
+
+    public long getGenresVersion() {
+        return genresVersion.get();
+    }
+
+    public long getMpaVersion() {
+        return mpaVersion.get();
+    }
+
+    // Версия читается до загрузки данных: запись, успевшая между ними, лишь заставит клиента перезапросить ответ
+    public String toETag(long... versions) {
+        StringBuilder etag = new StringBuilder("\"").append(instanceId);
+        for (long version : versions) {
+            etag.append('-').append(version);
+        }
+        return etag.append('"').toString();
+    }
+}
@@ -0,0 +1,213 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Признаки фильмов (жанры, рейтинг MPA, год выхода, длительность) в виде векторов единичной длины
+// в одном плоском массиве float: сходство по содержанию — скалярное произведение, то есть косинус
+@Component
+@Slf4j
+public class FilmFeatureIndex {
+    private static final String LOAD_FILMS_QUERY = "SELECT FILM_ID, RELEASE_DATE, DURATION, RATING_ID FROM FILMS";
+    private static final String LOAD_GENRES_QUERY = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRES";
+    private static final String FIND_FILM_QUERY = "SELECT FILM_ID, RELEASE_DATE, DURATION, RATING_ID FROM FILMS " +
+                                                  "WHERE FILM_ID = ?";
+    private static final String FIND_GENRES_QUERY = "SELECT GENRE_ID FROM FILM_GENRES WHERE FILM_ID = ?";
+
+    // Раскладка вектора: жанры, рейтинг, год и длительность по корзинам
+    static final int DIMENSION = 32;
+    private static final int GENRE_OFFSET = 0;
+    private static final int GENRE_SLOTS = 12;
+    private static final int MPA_OFFSET = GENRE_OFFSET + GENRE_SLOTS;
+    private static final int MPA_SLOTS = 6;
+    private static final int YEAR_OFFSET = MPA_OFFSET + MPA_SLOTS;
+    private static final int YEAR_BUCKETS = 10;
+    private static final int DURATION_OFFSET = YEAR_OFFSET + YEAR_BUCKETS;
+    private static final int DURATION_BUCKETS = 4;
+    private static final int FIRST_YEAR = 1895;
+    private static final int LAST_YEAR = 2030;
+    private static final int MAX_DURATION = 240;
+    private static final float GENRE_WEIGHT = 1.0f;
+    private static final float MPA_WEIGHT = 0.7f;
+    private static final float YEAR_WEIGHT = 0.8f;
+    private static final float DURATION_WEIGHT = 0.5f;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final JdbcTemplate jdbc;
+    private final ScalarFeatureScorer scorer = new ScalarFeatureScorer();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private float[] vectors = new float[INITIAL_CAPACITY * DIMENSION];
+    private long[] filmIds = new long[INITIAL_CAPACITY];
+    private final Map<Long, Integer> positions = new HashMap<>();
+    private int size;
+
+    @Autowired
+    public FilmFeatureIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        Map<Long, List<Integer>> genresByFilm = new HashMap<>();
+        jdbc.query(LOAD_GENRES_QUERY, rs -> {
+            genresByFilm.computeIfAbsent(rs.getLong("FILM_ID"), k -> new ArrayList<>()).add(rs.getInt("GENRE_ID"));
+        });
+
+        lock.writeLock().lock();
+        try {
+            positions.clear();
+            size = 0;
+            jdbc.query(LOAD_FILMS_QUERY, rs -> {
+                long filmId = rs.getLong("FILM_ID");
+                put(filmId, encode(genresByFilm.getOrDefault(filmId, List.of()), (Integer) rs.getObject("RATING_ID"),
+                        toLocalDate(rs.getDate("RELEASE_DATE")), (Integer) rs.getObject("DURATION")));
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс признаков фильмов перестроен. Фильмов: {}", size);
+    }
+
+    public void putFilm(Film film) {
+        List<Integer> genreIds = film.getFilmGenres() == null ? List.of() : film.getFilmGenres().stream()
+                .map(Genre::getId)
+                .toList();
+        Integer mpaId = film.getMpaRating() != null ? film.getMpaRating().getId() : null;
+        float[] vector = encode(genreIds, mpaId, film.getReleaseDate(), film.getDuration());
+
+        lock.writeLock().lock();
+        try {
+            put(film.getId(), vector);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Перечитывает фильм из БД: нужен после отката транзакции, в которой фильм был создан или изменен
+    public void reloadFilm(long filmId) {
+        List<Integer> genreIds = jdbc.queryForList(FIND_GENRES_QUERY, Integer.class, filmId);
+        List<float[]> found = jdbc.query(FIND_FILM_QUERY, (rs, rowNum) -> encode(genreIds,
+                (Integer) rs.getObject("RATING_ID"), toLocalDate(rs.getDate("RELEASE_DATE")),
+                (Integer) rs.getObject("DURATION")), filmId);
+
+        lock.writeLock().lock();
+        try {
+            if (found.isEmpty()) {
+                remove(filmId);
+            } else {
+                put(filmId, found.getFirst());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Фильмы с наибольшим косинусом признаков (при равенстве — по id), кроме самого фильма
+    public long[] getSimilarFilms(long filmId, int count) {
+        lock.readLock().lock();
+        try {
+            Integer position = positions.get(filmId);
+            if (position == null || count <= 0) {
+                return new long[0];
+            }
+            float[] query = Arrays.copyOfRange(vectors, position * DIMENSION, (position + 1) * DIMENSION);
+            float[] scores = new float[size];
+            scorer.score(vectors, size, query, scores);
+
+            FilmNeighbours best = new FilmNeighbours(count);
+            for (int i = 0; i < size; i++) {
+                if (i != position) {
+                    best.offer(filmIds[i], scores[i]);
+                }
+            }
+            return best.top(count);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long filmId, float[] vector) {
+        Integer position = positions.get(filmId);
+        if (position == null) {
+            if (size == filmIds.length) {
+                filmIds = Arrays.copyOf(filmIds, size * 2);
+                vectors = Arrays.copyOf(vectors, size * 2 * DIMENSION);
+            }
+            position = size++;
+            filmIds[position] = filmId;
+            positions.put(filmId, position);
+        }
+        System.arraycopy(vector, 0, vectors, position * DIMENSION, DIMENSION);
+    }
+
+    // Место удаленного фильма занимает последний, массив остается плотным
+    private void remove(long filmId) {
+        Integer position = positions.remove(filmId);
+        if (position == null) {
+            return;
+        }
+        int last = --size;
+        if (position != last) {
+            filmIds[position] = filmIds[last];
+            System.arraycopy(vectors, last * DIMENSION, vectors, position * DIMENSION, DIMENSION);
+            positions.put(filmIds[position], position);
+        }
+    }
+
+    static float[] encode(Collection<Integer> genreIds, Integer mpaId, LocalDate releaseDate, Integer duration) {
+        float[] vector = new float[DIMENSION];
+        for (Integer genreId : genreIds) {
+            vector[GENRE_OFFSET + Math.floorMod(genreId - 1, GENRE_SLOTS)] = GENRE_WEIGHT;
+        }
+        if (mpaId != null) {
+            vector[MPA_OFFSET + Math.floorMod(mpaId - 1, MPA_SLOTS)] = MPA_WEIGHT;
+        }
+        if (releaseDate != null) {
+            float year = Math.clamp(releaseDate.getYear(), FIRST_YEAR, LAST_YEAR);
+            spread(vector, YEAR_OFFSET, YEAR_BUCKETS,
+                    (year - FIRST_YEAR) / (LAST_YEAR - FIRST_YEAR) * (YEAR_BUCKETS - 1), YEAR_WEIGHT);
+        }
+        if (duration != null) {
+            float minutes = Math.clamp(duration, 0, MAX_DURATION);
+            spread(vector, DURATION_OFFSET, DURATION_BUCKETS,
+                    minutes / MAX_DURATION * (DURATION_BUCKETS - 1), DURATION_WEIGHT);
+        }
+
+        float norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    // Числовой признак делится между двумя соседними корзинами: близкие значения дают близкие векторы
+    private static void spread(float[] vector, int offset, int buckets, float position, float weight) {
+        int lower = Math.min((int) position, buckets - 1);
+        float fraction = position - lower;
+        vector[offset + lower] += (1 - fraction) * weight;
+        if (lower + 1 < buckets) {
+            vector[offset + lower + 1] += fraction * weight;
+        }
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+}
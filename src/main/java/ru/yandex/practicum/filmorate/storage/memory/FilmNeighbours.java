@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import java.util.Arrays;
+
+// Ограниченный список похожих фильмов: по убыванию сходства, при равенстве — по возрастанию id
+final class FilmNeighbours {
+    // Результат offer, когда кандидат вставлен и никого не вытеснил
+    static final long NONE = Long.MIN_VALUE;
+
+    private final long[] filmIds;
+    private final double[] scores;
+    private int size;
+
+    FilmNeighbours(int capacity) {
+        filmIds = new long[capacity];
+        scores = new double[capacity];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isFull() {
+        return size == filmIds.length;
+    }
+
+    long filmIdAt(int index) {
+        return filmIds[index];
+    }
+
+    double scoreAt(int index) {
+        return scores[index];
+    }
+
+    int indexOf(long filmId) {
+        for (int i = 0; i < size; i++) {
+            if (filmIds[i] == filmId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Вставка с сохранением порядка. Возвращает вытесненный фильм, сам filmId, если кандидат не прошел, или NONE
+    long offer(long filmId, double score) {
+        long evicted = NONE;
+        int position;
+        if (isFull()) {
+            if (filmIds.length == 0 || !isBetter(filmId, score, filmIds[size - 1], scores[size - 1])) {
+                return filmId;
+            }
+            evicted = filmIds[size - 1];
+            position = size - 1;
+        } else {
+            position = size++;
+        }
+        while (position > 0 && isBetter(filmId, score, filmIds[position - 1], scores[position - 1])) {
+            filmIds[position] = filmIds[position - 1];
+            scores[position] = scores[position - 1];
+            position--;
+        }
+        filmIds[position] = filmId;
+        scores[position] = score;
+        return evicted;
+    }
+
+    void removeAt(int index) {
+        System.arraycopy(filmIds, index + 1, filmIds, index, size - index - 1);
+        System.arraycopy(scores, index + 1, scores, index, size - index - 1);
+        size--;
+    }
+
+    long[] top(int count) {
+        return Arrays.copyOf(filmIds, Math.min(count, size));
+    }
+
+    static boolean isBetter(long filmId, double score, long otherId, double otherScore) {
+        return score > otherScore || (score == otherScore && filmId < otherId);
+    }
+}
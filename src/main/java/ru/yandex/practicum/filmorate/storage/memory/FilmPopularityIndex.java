@@ -0,0 +1,433 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.db.LikesStorage;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+// Рейтинг по лайкам по всему каталогу и отдельно по каждому жанру, рейтингу MPA и году выхода
+@Component
+@Slf4j
+public class FilmPopularityIndex {
+    private static final String LOAD_LIKE_COUNTS_QUERY = "SELECT FILM_ID, RATING_ID, " +
+                                                         "EXTRACT(YEAR FROM RELEASE_DATE) AS RELEASE_YEAR, " +
+                                                         "LIKE_COUNT " +
+                                                         "FROM FILMS";
+    private static final String LOAD_GENRES_QUERY = "SELECT FILM_ID, GENRE_ID FROM FILM_GENRES";
+    private static final String FIND_LIKE_COUNT_QUERY = "SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?";
+    private static final String FIND_FACETS_QUERY = "SELECT RATING_ID, " +
+                                                    "EXTRACT(YEAR FROM RELEASE_DATE) AS RELEASE_YEAR " +
+                                                    "FROM FILMS WHERE FILM_ID = ?";
+    private static final String FIND_GENRES_QUERY = "SELECT GENRE_ID FROM FILM_GENRES WHERE FILM_ID = ?";
+    private static final Comparator<FilmScore> RANKING_ORDER = Comparator.comparingInt(FilmScore::likes)
+            .reversed()
+            .thenComparingLong(FilmScore::filmId);
+
+    private final JdbcTemplate jdbc;
+    private final LikesStorage likesStorage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Rankings rankings = new Rankings();
+    // Фильмы, изменившиеся во время перестроения: их счетчики перечитываются перед подменой рейтинга
+    private Set<Long> touchedDuringRebuild;
+    // Лайки, начатые через beginLikeChange и еще не дошедшие до changeLikes: запись в БД идет между ними
+    private final Map<Long, Integer> likesInFlight = new HashMap<>();
+    // Фильмы, перечитанные при подмене рейтинга, пока их лайки были в пути. Перечитанный счетчик мог уже
+    // включать такой лайк, поэтому их изменения не прибавляются, а после последнего счетчик перечитывается снова
+    private final Set<Long> reloadWhenSettled = new HashSet<>();
+    // Номер изменения рейтинга для ETag популярных фильмов. Сервис обновляет рейтинг уже после записи лайка,
+    // поэтому одной версии из хранилища мало: ответ мог бы собраться по старому порядку с новым ETag
+    private volatile long version;
+
+    @Autowired
+    public FilmPopularityIndex(JdbcTemplate jdbc, LikesStorage likesStorage) {
+        this.jdbc = jdbc;
+        this.likesStorage = likesStorage;
+    }
+
+    // Счетчики берутся из FILMS.LIKE_COUNT вместе с еще не записанными в БД событиями отложенной записи
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            // Лайк, начатый до перестроения, может записаться в БД как до, так и после чтения его строки
+            touchedDuringRebuild = new HashSet<>(likesInFlight.keySet());
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, Set<Integer>> genresByFilm = new HashMap<>();
+        jdbc.query(LOAD_GENRES_QUERY, rs -> {
+            genresByFilm.computeIfAbsent(rs.getLong("FILM_ID"), k -> new HashSet<>()).add(rs.getInt("GENRE_ID"));
+        });
+        Rankings fresh = new Rankings();
+        likesStorage.readWithPendingLikes(() -> {
+            jdbc.query(LOAD_LIKE_COUNTS_QUERY, rs -> {
+                long filmId = rs.getLong("FILM_ID");
+                fresh.putFacets(filmId, new FilmFacets(genresByFilm.getOrDefault(filmId, Set.of()),
+                        (Integer) rs.getObject("RATING_ID"), (Integer) rs.getObject("RELEASE_YEAR")));
+                fresh.put(filmId, rs.getInt("LIKE_COUNT") + likesStorage.getPendingLikesDelta(filmId));
+            });
+            return null;
+        });
+
+        lock.writeLock().lock();
+        try {
+            for (Long filmId : touchedDuringRebuild) {
+                fresh.putFacets(filmId, loadFacets(filmId));
+                fresh.put(filmId, loadLikeCount(filmId));
+                if (likesInFlight.containsKey(filmId)) {
+                    reloadWhenSettled.add(filmId);
+                }
+            }
+            touchedDuringRebuild = null;
+            rankings = fresh;
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс популярности перестроен. Фильмов в рейтинге: {}", fresh.size());
+    }
+
+    // Новый фильм попадает в рейтинг без лайков; у измененного фильма пересчитываются жанры, рейтинг и год
+    public void putFilm(Film film) {
+        Set<Integer> genreIds = film.getFilmGenres() == null ? Set.of() : film.getFilmGenres().stream()
+                .map(Genre::getId)
+                .collect(Collectors.toSet());
+        FilmFacets facets = new FilmFacets(genreIds,
+                film.getMpaRating() != null ? film.getMpaRating().getId() : null,
+                film.getReleaseDate() != null ? film.getReleaseDate().getYear() : null);
+
+        lock.writeLock().lock();
+        try {
+            rankings.putFacets(film.getId(), facets);
+            rankings.putIfAbsent(film.getId());
+            markTouched(film.getId());
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Вызывается до записи лайка в БД; каждому вызову соответствует ровно один changeLikes после записи,
+    // с нулевым изменением, если запись не удалась
+    public void beginLikeChange(long filmId) {
+        lock.writeLock().lock();
+        try {
+            likesInFlight.merge(filmId, 1, Integer::sum);
+            markTouched(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void changeLikes(long filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            boolean settled = likesInFlight.computeIfPresent(filmId,
+                    (k, count) -> count > 1 ? count - 1 : null) == null;
+            if (reloadWhenSettled.contains(filmId)) {
+                // Лайки, бывшие в пути при подмене, уже записаны: счетчик берется из БД целиком
+                if (settled) {
+                    reloadWhenSettled.remove(filmId);
+                    rankings.put(filmId, loadLikeCount(filmId));
+                    version++;
+                }
+            } else if (delta != 0) {
+                rankings.change(filmId, delta);
+                version++;
+            }
+            markTouched(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<Long> getTopFilmIds(int count) {
+        return getTopFilmIds(count, null, null, null);
+    }
+
+    // Фильтры, равные null, не применяются
+    public List<Long> getTopFilmIds(int count, Integer genreId, Integer mpaId, Integer year) {
+        lock.readLock().lock();
+        try {
+            List<Long> top = rankings.top(count, genreId, mpaId, year);
+            if (top != null) {
+                return top;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Сочетание фильтров запрошено впервые: его рейтинг строится один раз и дальше ведется вместе с остальными
+        lock.writeLock().lock();
+        try {
+            rankings.addCombination(new FacetKey(genreId, mpaId, year));
+            return rankings.top(count, genreId, mpaId, year);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Фильм попал в индекс при перестроении или через putFilm, то есть точно есть в БД
+    public boolean containsFilm(long filmId) {
+        lock.readLock().lock();
+        try {
+            return rankings.facets.containsKey(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLikeCount(long filmId) {
+        lock.readLock().lock();
+        try {
+            return rankings.all.likes(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private FilmFacets loadFacets(long filmId) {
+        Set<Integer> genreIds = new HashSet<>(jdbc.queryForList(FIND_GENRES_QUERY, Integer.class, filmId));
+        return jdbc.query(FIND_FACETS_QUERY, rs -> rs.next()
+                ? new FilmFacets(genreIds, (Integer) rs.getObject("RATING_ID"), (Integer) rs.getObject("RELEASE_YEAR"))
+                : new FilmFacets(genreIds, null, null), filmId);
+    }
+
+    private int loadLikeCount(long filmId) {
+        return likesStorage.readWithPendingLikes(() -> {
+            List<Integer> likes = jdbc.queryForList(FIND_LIKE_COUNT_QUERY, Integer.class, filmId);
+            return (likes.isEmpty() ? 0 : likes.get(0)) + likesStorage.getPendingLikesDelta(filmId);
+        });
+    }
+
+    private void markTouched(long filmId) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(filmId);
+        }
+    }
+
+    private record FilmScore(long filmId, int likes) {
+    }
+
+    private record FacetKey(Integer genreId, Integer mpaId, Integer year) {
+    }
+
+    private record FilmFacets(Set<Integer> genreIds, Integer mpaId, Integer year) {
+
+        boolean matches(Integer genreId, Integer mpaId, Integer year) {
+            return (genreId == null || genreIds.contains(genreId))
+                    && (mpaId == null || mpaId.equals(this.mpaId))
+                    && (year == null || year.equals(this.year));
+        }
+
+        // Все сочетания из двух и трех фильтров, под которые подходит фильм
+        void forEachCombination(Consumer<FacetKey> action) {
+            for (Integer genreId : genreIds) {
+                if (mpaId != null) {
+                    action.accept(new FacetKey(genreId, mpaId, null));
+                }
+                if (year != null) {
+                    action.accept(new FacetKey(genreId, null, year));
+                }
+                if (mpaId != null && year != null) {
+                    action.accept(new FacetKey(genreId, mpaId, year));
+                }
+            }
+            if (mpaId != null && year != null) {
+                action.accept(new FacetKey(null, mpaId, year));
+            }
+        }
+    }
+
+    // Общий рейтинг и рейтинги по значениям фильтров. Фильм стоит в рейтинге каждого своего жанра,
+    // своего MPA и своего года, поэтому один фильтр отдает фильмы сразу в нужном порядке.
+    // Для нескольких фильтров рейтинги заводятся только по запрошенным сочетаниям
+    private static class Rankings {
+        private final Ranking all = new Ranking();
+        private final Map<Integer, Ranking> byGenre = new HashMap<>();
+        private final Map<Integer, Ranking> byMpa = new HashMap<>();
+        private final Map<Integer, Ranking> byYear = new HashMap<>();
+        private final Map<FacetKey, Ranking> byCombination = new HashMap<>();
+        private final Map<Long, FilmFacets> facets = new HashMap<>();
+
+        void put(long filmId, int likes) {
+            all.put(filmId, likes);
+            forEachFacetRanking(facets.get(filmId), ranking -> ranking.put(filmId, likes));
+        }
+
+        void putIfAbsent(long filmId) {
+            if (!all.contains(filmId)) {
+                put(filmId, 0);
+            }
+        }
+
+        // Без ограничения снизу: сервис применяет изменения после записи в БД в любом порядке,
+        // и при гонке лайка со снятием -1 может прийти раньше +1. Сумма от порядка не зависит
+        void change(long filmId, int delta) {
+            put(filmId, all.likes(filmId) + delta);
+        }
+
+        void putFacets(long filmId, FilmFacets newFacets) {
+            FilmFacets previous = facets.put(filmId, newFacets);
+            if (previous != null) {
+                previous.genreIds().forEach(genreId -> removeFrom(byGenre, genreId, filmId));
+                removeFrom(byMpa, previous.mpaId(), filmId);
+                removeFrom(byYear, previous.year(), filmId);
+                previous.forEachCombination(key -> {
+                    Ranking ranking = byCombination.get(key);
+                    if (ranking != null) {
+                        ranking.remove(filmId);
+                    }
+                });
+            }
+            if (all.contains(filmId)) {
+                int likes = all.likes(filmId);
+                forEachFacetRanking(newFacets, ranking -> ranking.put(filmId, likes));
+            }
+        }
+
+        // Обходится только голова готового рейтинга, поэтому цена зависит от count, а не от размера фильтра.
+        // null, если рейтинга для запрошенного сочетания фильтров еще нет
+        List<Long> top(int count, Integer genreId, Integer mpaId, Integer year) {
+            List<Ranking> candidates = facetRankings(genreId, mpaId, year);
+            if (candidates.contains(null)) {
+                return new ArrayList<>();
+            }
+            Ranking ranking;
+            if (candidates.isEmpty()) {
+                ranking = all;
+            } else if (candidates.size() == 1) {
+                ranking = candidates.get(0);
+            } else {
+                ranking = byCombination.get(new FacetKey(genreId, mpaId, year));
+                if (ranking == null) {
+                    return null;
+                }
+            }
+            return ranking.order.stream()
+                    .limit(Math.max(0, count))
+                    .map(FilmScore::filmId)
+                    .collect(Collectors.toList());
+        }
+
+        // Один проход по самому короткому из рейтингов фильтров, остальные фильтры проверяются по фильму
+        void addCombination(FacetKey key) {
+            if (byCombination.containsKey(key)) {
+                return;
+            }
+            List<Ranking> candidates = facetRankings(key.genreId(), key.mpaId(), key.year());
+            Ranking combination = new Ranking();
+            if (!candidates.contains(null)) {
+                Ranking shortest = Collections.min(candidates, Comparator.comparingInt(Ranking::size));
+                for (FilmScore score : shortest.order) {
+                    if (matches(score.filmId(), key.genreId(), key.mpaId(), key.year())) {
+                        combination.put(score.filmId(), score.likes());
+                    }
+                }
+            }
+            byCombination.put(key, combination);
+        }
+
+        int size() {
+            return all.size();
+        }
+
+        private void forEachFacetRanking(FilmFacets filmFacets, Consumer<Ranking> action) {
+            if (filmFacets == null) {
+                return;
+            }
+            for (Integer genreId : filmFacets.genreIds()) {
+                action.accept(byGenre.computeIfAbsent(genreId, k -> new Ranking()));
+            }
+            if (filmFacets.mpaId() != null) {
+                action.accept(byMpa.computeIfAbsent(filmFacets.mpaId(), k -> new Ranking()));
+            }
+            if (filmFacets.year() != null) {
+                action.accept(byYear.computeIfAbsent(filmFacets.year(), k -> new Ranking()));
+            }
+            filmFacets.forEachCombination(key -> {
+                Ranking ranking = byCombination.get(key);
+                if (ranking != null) {
+                    action.accept(ranking);
+                }
+            });
+        }
+
+        private List<Ranking> facetRankings(Integer genreId, Integer mpaId, Integer year) {
+            List<Ranking> rankings = new ArrayList<>();
+            if (genreId != null) {
+                rankings.add(byGenre.get(genreId));
+            }
+            if (mpaId != null) {
+                rankings.add(byMpa.get(mpaId));
+            }
+            if (year != null) {
+                rankings.add(byYear.get(year));
+            }
+            return rankings;
+        }
+
+        private boolean matches(long filmId, Integer genreId, Integer mpaId, Integer year) {
+            FilmFacets filmFacets = facets.get(filmId);
+            return filmFacets != null && filmFacets.matches(genreId, mpaId, year);
+        }
+
+        private static void removeFrom(Map<Integer, Ranking> rankings, Integer key, long filmId) {
+            Ranking ranking = key != null ? rankings.get(key) : null;
+            if (ranking != null) {
+                ranking.remove(filmId);
+                if (ranking.size() == 0) {
+                    rankings.remove(key);
+                }
+            }
+        }
+    }
+
+    private static class Ranking {
+        private final TreeSet<FilmScore> order = new TreeSet<>(RANKING_ORDER);
+        private final Map<Long, FilmScore> scores = new HashMap<>();
+
+        void put(long filmId, int likes) {
+            FilmScore previous = scores.put(filmId, new FilmScore(filmId, likes));
+            if (previous != null) {
+                order.remove(previous);
+            }
+            order.add(scores.get(filmId));
+        }
+
+        void remove(long filmId) {
+            FilmScore previous = scores.remove(filmId);
+            if (previous != null) {
+                order.remove(previous);
+            }
+        }
+
+        boolean contains(long filmId) {
+            return scores.containsKey(filmId);
+        }
+
+        int likes(long filmId) {
+            FilmScore score = scores.get(filmId);
+            return score != null ? score.likes() : 0;
+        }
+
+        int size() {
+            return scores.size();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongToIntFunction;
+import java.util.stream.Collectors;
+
+// Обратный индекс по названию и описанию фильмов: слово -> сжатый список фильмов.
+// Поиск находит фильмы, где есть все слова запроса; последнее слово ищется и как начало слова
+@Component
+@Slf4j
+public class FilmSearchIndex {
+    private static final String LOAD_FILMS_QUERY = "SELECT FILM_ID, FILM_NAME, DESCRIPTION FROM FILMS";
+    private static final String FIND_FILM_QUERY = "SELECT FILM_ID, FILM_NAME, DESCRIPTION FROM FILMS " +
+                                                  "WHERE FILM_ID = ?";
+    // Слово в названии весит больше, чем в описании
+    private static final double TITLE_WEIGHT = 2.0;
+    private static final double DESCRIPTION_WEIGHT = 1.0;
+    // Сколько слов словаря может подойти под начало последнего слова запроса
+    private static final int MAX_PREFIX_TERMS = 64;
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private TreeMap<String, PostingList> postings = new TreeMap<>();
+    // Слова каждого фильма: нужны, чтобы убрать фильм из старых списков при изменении
+    private Map<Long, String[]> termsByFilm = new HashMap<>();
+    // Фильмы, изменившиеся во время перестроения: перечитываются из БД перед подменой индекса
+    private Set<Long> touchedDuringRebuild;
+
+    @Autowired
+    public FilmSearchIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<FilmText> films = new ArrayList<>();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            films.add(new FilmText(rs.getLong("FILM_ID"), rs.getString("FILM_NAME"), rs.getString("DESCRIPTION")));
+        });
+        films.sort(Comparator.comparingLong(FilmText::filmId));
+        // Разбор текста — самая дорогая часть, он идет параллельно; списки затем заполняются по возрастанию id
+        List<Map<String, Integer>> filmTerms = films.parallelStream()
+                .map(FilmSearchIndex::collectTerms)
+                .toList();
+
+        TreeMap<String, PostingList> freshPostings = new TreeMap<>();
+        Map<Long, String[]> freshTerms = new HashMap<>();
+        for (int i = 0; i < films.size(); i++) {
+            long filmId = films.get(i).filmId();
+            Map<String, Integer> terms = filmTerms.get(i);
+            terms.forEach((term, fields) -> freshPostings.computeIfAbsent(term, k -> new PostingList())
+                    .append(filmId, fields));
+            freshTerms.put(filmId, terms.keySet().toArray(String[]::new));
+        }
+        freshPostings.values().parallelStream().forEach(PostingList::trimToSize);
+
+        lock.writeLock().lock();
+        try {
+            postings = freshPostings;
+            termsByFilm = freshTerms;
+            for (Long filmId : touchedDuringRebuild) {
+                reload(filmId);
+            }
+            touchedDuringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Поисковый индекс перестроен. Фильмов: {}, слов: {}, размер списков: {} КБ",
+                freshTerms.size(), freshPostings.size(),
+                freshPostings.values().stream().mapToLong(PostingList::byteSize).sum() >> 10);
+    }
+
+    public void putFilm(Film film) {
+        Map<String, Integer> terms = collectTerms(new FilmText(film.getId(), film.getName(), film.getDescription()));
+        lock.writeLock().lock();
+        try {
+            put(film.getId(), terms);
+            markTouched(film.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Перечитывает фильм из БД: нужен после отката транзакции, в которой фильм был создан или изменен
+    public void reloadFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            reload(filmId);
+            markTouched(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // likeCounts == null — только релевантность; иначе релевантность умножается на 1 + ln(1 + лайки)
+    public long[] search(String query, boolean inTitle, boolean inDescription, int limit,
+                         LongToIntFunction likeCounts) {
+        List<String> queryTerms = TextNormalizer.normalize(query);
+        int fieldMask = (inTitle ? PostingList.TITLE : 0) | (inDescription ? PostingList.DESCRIPTION : 0);
+        if (queryTerms.isEmpty() || fieldMask == 0 || limit <= 0) {
+            return new long[0];
+        }
+
+        lock.readLock().lock();
+        try {
+            List<PostingList.Decoded> lists = new ArrayList<>();
+            for (int i = 0; i < queryTerms.size(); i++) {
+                boolean last = i == queryTerms.size() - 1;
+                PostingList.Decoded termList = last ? prefixPostings(queryTerms.get(i))
+                        : exactPostings(queryTerms.get(i));
+                if (termList.filmIds().length == 0) {
+                    return new long[0];
+                }
+                lists.add(termList);
+            }
+            // Пересечение начинается с самого короткого списка
+            lists.sort(Comparator.comparingInt(list -> list.filmIds().length));
+
+            FilmNeighbours best = new FilmNeighbours(limit);
+            PostingList.Decoded shortest = lists.getFirst();
+            int[] cursors = new int[lists.size()];
+            for (int i = 0; i < shortest.filmIds().length; i++) {
+                long filmId = shortest.filmIds()[i];
+                double score = 0;
+                boolean matched = true;
+                for (int j = 0; j < lists.size() && matched; j++) {
+                    PostingList.Decoded list = lists.get(j);
+                    int position = j == 0 ? i : seek(list.filmIds(), cursors[j], filmId);
+                    cursors[j] = position;
+                    int fields = position < list.filmIds().length && list.filmIds()[position] == filmId
+                            ? list.fields()[position] & fieldMask : 0;
+                    matched = fields != 0;
+                    score += ((fields & PostingList.TITLE) != 0 ? TITLE_WEIGHT : 0)
+                            + ((fields & PostingList.DESCRIPTION) != 0 ? DESCRIPTION_WEIGHT : 0);
+                }
+                if (matched) {
+                    if (likeCounts != null) {
+                        score *= 1 + Math.log1p(likeCounts.applyAsInt(filmId));
+                    }
+                    best.offer(filmId, score);
+                }
+            }
+            return best.top(limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private PostingList.Decoded exactPostings(String term) {
+        PostingList list = postings.get(term);
+        return list != null ? list.decode() : new PostingList.Decoded(new long[0], new byte[0]);
+    }
+
+    // Объединение списков всех слов, начинающихся с prefix; поля одного фильма складываются.
+    // Списки сливаются попарно, как в сортировке слиянием
+    private PostingList.Decoded prefixPostings(String prefix) {
+        List<PostingList.Decoded> lists = postings.subMap(prefix, prefix + Character.MAX_VALUE).values().stream()
+                .limit(MAX_PREFIX_TERMS)
+                .map(PostingList::decode)
+                .collect(Collectors.toCollection(ArrayList::new));
+        if (lists.isEmpty()) {
+            return new PostingList.Decoded(new long[0], new byte[0]);
+        }
+        while (lists.size() > 1) {
+            List<PostingList.Decoded> merged = new ArrayList<>((lists.size() + 1) / 2);
+            for (int i = 0; i + 1 < lists.size(); i += 2) {
+                merged.add(union(lists.get(i), lists.get(i + 1)));
+            }
+            if (lists.size() % 2 == 1) {
+                merged.add(lists.getLast());
+            }
+            lists = merged;
+        }
+        return lists.getFirst();
+    }
+
+    private static PostingList.Decoded union(PostingList.Decoded left, PostingList.Decoded right) {
+        long[] filmIds = new long[left.filmIds().length + right.filmIds().length];
+        byte[] fields = new byte[filmIds.length];
+        int i = 0;
+        int j = 0;
+        int size = 0;
+        while (i < left.filmIds().length || j < right.filmIds().length) {
+            long leftId = i < left.filmIds().length ? left.filmIds()[i] : Long.MAX_VALUE;
+            long rightId = j < right.filmIds().length ? right.filmIds()[j] : Long.MAX_VALUE;
+            filmIds[size] = Math.min(leftId, rightId);
+            fields[size] = (byte) ((leftId <= rightId ? left.fields()[i++] : 0)
+                    | (rightId <= leftId ? right.fields()[j++] : 0));
+            size++;
+        }
+        return new PostingList.Decoded(Arrays.copyOf(filmIds, size), Arrays.copyOf(fields, size));
+    }
+
+    // Первая позиция не раньше from, где id >= filmId: шаги удваиваются, затем двоичный поиск
+    private static int seek(long[] filmIds, int from, long filmId) {
+        int step = 1;
+        int high = from;
+        while (high < filmIds.length && filmIds[high] < filmId) {
+            from = high + 1;
+            high += step;
+            step <<= 1;
+        }
+        int position = Arrays.binarySearch(filmIds, from, Math.min(high + 1, filmIds.length), filmId);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    private void reload(long filmId) {
+        List<FilmText> found = jdbc.query(FIND_FILM_QUERY, (rs, rowNum) -> new FilmText(rs.getLong("FILM_ID"),
+                rs.getString("FILM_NAME"), rs.getString("DESCRIPTION")), filmId);
+        put(filmId, found.isEmpty() ? Map.of() : collectTerms(found.getFirst()));
+    }
+
+    private void put(long filmId, Map<String, Integer> terms) {
+        String[] previous = termsByFilm.remove(filmId);
+        if (previous != null) {
+            for (String term : previous) {
+                if (!terms.containsKey(term)) {
+                    PostingList list = postings.get(term);
+                    list.remove(filmId);
+                    if (list.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+        }
+        if (terms.isEmpty()) {
+            return;
+        }
+        terms.forEach((term, fields) -> postings.computeIfAbsent(term, k -> new PostingList()).put(filmId, fields));
+        termsByFilm.put(filmId, terms.keySet().toArray(String[]::new));
+    }
+
+    private void markTouched(long filmId) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(filmId);
+        }
+    }
+
+    // Слово -> поля, в которых оно встретилось
+    private static Map<String, Integer> collectTerms(FilmText film) {
+        Map<String, Integer> terms = new HashMap<>();
+        TextNormalizer.normalize(film.name()).forEach(term -> terms.merge(term, PostingList.TITLE, (a, b) -> a | b));
+        TextNormalizer.normalize(film.description())
+                .forEach(term -> terms.merge(term, PostingList.DESCRIPTION, (a, b) -> a | b));
+        return terms;
+    }
+
+    private record FilmText(long filmId, String name, String description) {
+    }
+}
@@ -0,0 +1,346 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Сжатое префиксное дерево названий фильмов: у ребра — строка, а не одна буква, поэтому узлов не больше 2n.
+// Каждый узел хранит до TOP_K самых популярных фильмов своего поддерева, и подсказка — это спуск по префиксу
+// и копия готового списка. При изменении названия или лайков фильма пересчитываются только узлы на его пути
+@Component
+@Slf4j
+public class FilmTitleIndex {
+    public static final int TOP_K = 20;
+    private static final String LOAD_FILMS_QUERY = "SELECT FILM_ID, FILM_NAME, LIKE_COUNT FROM FILMS";
+    private static final String FIND_FILM_QUERY = "SELECT FILM_ID, FILM_NAME, LIKE_COUNT FROM FILMS " +
+                                                  "WHERE FILM_ID = ?";
+    private static final long[] NO_FILMS = new long[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node root = new Node("");
+    private Map<Long, TitleEntry> entries = new HashMap<>();
+    // Фильмы, изменившиеся во время перестроения: перечитываются из БД перед подменой дерева
+    private Set<Long> touchedDuringRebuild;
+
+    @Autowired
+    public FilmTitleIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Node freshRoot = new Node("");
+        Map<Long, TitleEntry> freshEntries = new HashMap<>();
+        jdbc.query(LOAD_FILMS_QUERY, rs -> {
+            long filmId = rs.getLong("FILM_ID");
+            TitleEntry entry = new TitleEntry(TextNormalizer.foldCase(rs.getString("FILM_NAME")).strip(),
+                    rs.getInt("LIKE_COUNT"));
+            freshEntries.put(filmId, entry);
+            insert(freshRoot, entry.title, filmId);
+        });
+        // Списки считаются один раз снизу вверх, а не после каждой вставки
+        recomputeSubtree(freshRoot, freshEntries);
+
+        lock.writeLock().lock();
+        try {
+            root = freshRoot;
+            entries = freshEntries;
+            for (Long filmId : touchedDuringRebuild) {
+                reload(filmId);
+            }
+            touchedDuringRebuild = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс названий перестроен. Фильмов: {}", freshEntries.size());
+    }
+
+    // Новый фильм попадает в дерево без лайков; у существующего меняется только название
+    public void putFilm(Film film) {
+        String title = TextNormalizer.foldCase(film.getName()).strip();
+        lock.writeLock().lock();
+        try {
+            TitleEntry previous = entries.get(film.getId());
+            put(film.getId(), title, previous != null ? previous.likes : 0);
+            markTouched(film.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Перечитывает фильм из БД: нужен после отката транзакции, в которой фильм был создан или изменен
+    public void reloadFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            reload(filmId);
+            markTouched(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Без ограничения снизу, как и в FilmPopularityIndex: изменения могут прийти в любом порядке
+    public void changeLikes(long filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            TitleEntry entry = entries.get(filmId);
+            if (entry != null) {
+                entry.likes += delta;
+                recomputePath(pathTo(entry.title));
+            }
+            markTouched(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Самые популярные фильмы (при равенстве — по id), название которых начинается с prefix
+    public long[] complete(String prefix, int limit) {
+        String key = TextNormalizer.foldCase(prefix);
+        if (key.isEmpty() || limit <= 0) {
+            return NO_FILMS;
+        }
+        lock.readLock().lock();
+        try {
+            Node node = findPrefix(key);
+            return node != null ? Arrays.copyOf(node.top, Math.min(limit, node.top.length)) : NO_FILMS;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void reload(long filmId) {
+        List<TitleEntry> found = jdbc.query(FIND_FILM_QUERY, (rs, rowNum) -> new TitleEntry(
+                TextNormalizer.foldCase(rs.getString("FILM_NAME")).strip(), rs.getInt("LIKE_COUNT")), filmId);
+        if (found.isEmpty()) {
+            TitleEntry previous = entries.remove(filmId);
+            if (previous != null) {
+                recomputePath(remove(previous.title, filmId));
+            }
+        } else {
+            put(filmId, found.getFirst().title, found.getFirst().likes);
+        }
+    }
+
+    private void put(long filmId, String title, int likes) {
+        TitleEntry previous = entries.put(filmId, new TitleEntry(title, likes));
+        if (previous != null) {
+            recomputePath(remove(previous.title, filmId));
+        }
+        recomputePath(insert(root, title, filmId));
+    }
+
+    // Путь от корня до узла, где кончается название; ребра по дороге при необходимости делятся
+    private static List<Node> insert(Node root, String key, long filmId) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int position = 0;
+        while (position < key.length()) {
+            int index = node.childIndex(key.charAt(position));
+            if (index < 0) {
+                Node leaf = new Node(key.substring(position));
+                node.insertChild(-index - 1, leaf);
+                node = leaf;
+                path.add(node);
+                break;
+            }
+            Node child = node.children[index];
+            int common = commonPrefixLength(child.label, key, position);
+            if (common < child.label.length()) {
+                Node middle = new Node(child.label.substring(0, common));
+                child.label = child.label.substring(common);
+                middle.children = new Node[]{child};
+                middle.top = child.top;
+                node.children[index] = middle;
+                child = middle;
+            }
+            node = child;
+            path.add(node);
+            position += common;
+        }
+        node.films = Arrays.copyOf(node.films, node.films.length + 1);
+        node.films[node.films.length - 1] = filmId;
+        return path;
+    }
+
+    // Путь до узла, откуда убран фильм; опустевшие листья удаляются
+    private List<Node> remove(String key, long filmId) {
+        List<Node> path = pathTo(key);
+        Node node = path.getLast();
+        int index = indexOf(node.films, filmId);
+        if (index >= 0) {
+            long[] films = new long[node.films.length - 1];
+            System.arraycopy(node.films, 0, films, 0, index);
+            System.arraycopy(node.films, index + 1, films, index, films.length - index);
+            node.films = films;
+        }
+        while (path.size() > 1 && path.getLast().films.length == 0 && path.getLast().children.length == 0) {
+            Node leaf = path.removeLast();
+            path.getLast().removeChild(leaf);
+        }
+        return path;
+    }
+
+    // Путь до узла, где кончается уже вставленное название
+    private List<Node> pathTo(String key) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int position = 0;
+        while (position < key.length()) {
+            node = node.children[node.childIndex(key.charAt(position))];
+            path.add(node);
+            position += node.label.length();
+        }
+        return path;
+    }
+
+    // Узел, в поддереве которого лежат все названия, начинающиеся с prefix
+    private Node findPrefix(String prefix) {
+        Node node = root;
+        int position = 0;
+        while (position < prefix.length()) {
+            int index = node.childIndex(prefix.charAt(position));
+            if (index < 0) {
+                return null;
+            }
+            node = node.children[index];
+            int common = commonPrefixLength(node.label, prefix, position);
+            if (position + common == prefix.length()) {
+                return node;
+            }
+            if (common < node.label.length()) {
+                return null;
+            }
+            position += common;
+        }
+        return node;
+    }
+
+    private void recomputePath(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--) {
+            recompute(path.get(i), entries);
+        }
+    }
+
+    private static void recomputeSubtree(Node node, Map<Long, TitleEntry> entries) {
+        for (Node child : node.children) {
+            recomputeSubtree(child, entries);
+        }
+        recompute(node, entries);
+    }
+
+    // Лучшие фильмы поддерева — среди фильмов самого узла и лучших фильмов его детей
+    private static void recompute(Node node, Map<Long, TitleEntry> entries) {
+        FilmNeighbours best = new FilmNeighbours(TOP_K);
+        for (long filmId : node.films) {
+            best.offer(filmId, entries.get(filmId).likes);
+        }
+        for (Node child : node.children) {
+            for (long filmId : child.top) {
+                if (best.offer(filmId, entries.get(filmId).likes) == filmId) {
+                    // Список ребенка упорядочен: дальше кандидаты только хуже
+                    break;
+                }
+            }
+        }
+        node.top = best.top(TOP_K);
+    }
+
+    private static int commonPrefixLength(String label, String key, int offset) {
+        int length = Math.min(label.length(), key.length() - offset);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(offset + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int indexOf(long[] films, long filmId) {
+        for (int i = 0; i < films.length; i++) {
+            if (films[i] == filmId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void markTouched(long filmId) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(filmId);
+        }
+    }
+
+    private static final class TitleEntry {
+        private final String title;
+        private int likes;
+
+        private TitleEntry(String title, int likes) {
+            this.title = title;
+            this.likes = likes;
+        }
+    }
+
+    private static final class Node {
+        private String label;
+        // Дети упорядочены по первой букве ребра
+        private Node[] children = NO_CHILDREN;
+        // Фильмы, название которых кончается в этом узле
+        private long[] films = NO_FILMS;
+        private long[] top = NO_FILMS;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private int childIndex(char first) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                char key = children[middle].label.charAt(0);
+                if (key < first) {
+                    low = middle + 1;
+                } else if (key > first) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void insertChild(int index, Node child) {
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, index);
+            grown[index] = child;
+            System.arraycopy(children, index, grown, index + 1, children.length - index);
+            children = grown;
+        }
+
+        private void removeChild(Node child) {
+            int index = childIndex(child.label.charAt(0));
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, index);
+            System.arraycopy(children, index + 1, shrunk, index, shrunk.length - index);
+            children = shrunk;
+        }
+    }
+}
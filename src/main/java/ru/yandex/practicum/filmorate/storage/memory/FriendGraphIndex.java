@@ -0,0 +1,231 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.db.mapper.IdSetExtractors;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Component
+@Slf4j
+public class FriendGraphIndex {
+    private static final String LOAD_FRIENDSHIPS_QUERY = "SELECT USER_ID, FRIEND_ID FROM FRIENDSHIPS " +
+                                                         "ORDER BY USER_ID, FRIEND_ID";
+    private static final String FIND_FRIENDS_QUERY = "SELECT FRIEND_ID FROM FRIENDSHIPS WHERE USER_ID = ? " +
+                                                     "ORDER BY FRIEND_ID";
+    // Минимум друзей на одну задачу; у пользователей с меньшим числом друзей счет идет в текущем потоке
+    private static final int SUGGESTIONS_TASK_SIZE = 256;
+
+    private final JdbcTemplate jdbc;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Список смежности: пользователь -> отсортированные id его друзей
+    private Map<Long, IdSet> friends = new HashMap<>();
+    // Пользователи, изменившиеся во время перестроения: их списки перечитываются перед подменой
+    private Set<Long> touchedDuringRebuild;
+
+    @Autowired
+    public FriendGraphIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            touchedDuringRebuild = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, IdSet> fresh = new HashMap<>();
+        jdbc.query(LOAD_FRIENDSHIPS_QUERY, IdSetExtractors.groupedIds("USER_ID", "FRIEND_ID"))
+                .forEach((userId, friendIds) -> fresh.put(userId, (IdSet) friendIds));
+
+        lock.writeLock().lock();
+        try {
+            for (Long userId : touchedDuringRebuild) {
+                IdSet friendIds = jdbc.query(FIND_FRIENDS_QUERY, IdSetExtractors.ids("FRIEND_ID"), userId);
+                if (friendIds == null || friendIds.isEmpty()) {
+                    fresh.remove(userId);
+                } else {
+                    fresh.put(userId, friendIds);
+                }
+            }
+            touchedDuringRebuild = null;
+            friends = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс друзей перестроен. Пользователей с друзьями: {}", fresh.size());
+    }
+
+    public void addFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            friends.computeIfAbsent(userId, k -> new IdSet()).add(friendId);
+            markTouched(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteFriend(long userId, long friendId) {
+        lock.writeLock().lock();
+        try {
+            IdSet friendIds = friends.get(userId);
+            if (friendIds != null) {
+                friendIds.remove(friendId);
+                if (friendIds.isEmpty()) {
+                    friends.remove(userId);
+                }
+            }
+            markTouched(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Наружу отдаются копии: множества индекса меняются под блокировкой записи
+    public IdSet getFriendIds(long userId) {
+        lock.readLock().lock();
+        try {
+            IdSet friendIds = friends.get(userId);
+            return friendIds != null ? new IdSet(friendIds) : new IdSet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Set<Long>> getFriendIds(Collection<Long> userIds) {
+        lock.readLock().lock();
+        try {
+            return copyFriendIds(userIds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Long, Set<Long>> getAllFriendIds() {
+        lock.readLock().lock();
+        try {
+            return copyFriendIds(friends.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public IdSet getCommonFriendIds(long userId, long otherId) {
+        lock.readLock().lock();
+        try {
+            IdSet userFriends = friends.get(userId);
+            IdSet otherFriends = friends.get(otherId);
+            if (userFriends == null || otherFriends == null) {
+                return new IdSet();
+            }
+            return userFriends.intersection(otherFriends);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Не-друзья, отсортированные по числу общих друзей (при равенстве — по id)
+    public long[] getFriendSuggestions(long userId, int limit) {
+        lock.readLock().lock();
+        try {
+            IdSet userFriends = friends.get(userId);
+            if (userFriends == null || limit <= 0) {
+                return new long[0];
+            }
+            long[] friendIds = userFriends.toLongArray();
+            // Частей не больше, чем воркеров пула: каждое слияние счетчиков — лишний проход по кандидатам
+            int parallelism = ForkJoinPool.getCommonPoolParallelism();
+            int taskSize = Math.max(SUGGESTIONS_TASK_SIZE, (friendIds.length + parallelism - 1) / parallelism);
+            MutualFriendsTask task = new MutualFriendsTask(friendIds, 0, friendIds.length, taskSize);
+            // Воркеры пула только читают карту: пока держится блокировка чтения, запись в индекс ждет
+            LongIntCounter mutualCounts = friendIds.length > taskSize
+                    ? ForkJoinPool.commonPool().invoke(task)
+                    : task.compute();
+            return mutualCounts.top(limit,
+                    candidateId -> candidateId == userId || userFriends.contains(candidateId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<Long, Set<Long>> copyFriendIds(Collection<Long> userIds) {
+        Map<Long, Set<Long>> result = new HashMap<>();
+        for (Long userId : userIds) {
+            IdSet friendIds = friends.get(userId);
+            if (friendIds != null) {
+                result.put(userId, new IdSet(friendIds));
+            }
+        }
+        return result;
+    }
+
+    // Считает, у скольких друзей из диапазона [from, to) есть каждый пользователь
+    private class MutualFriendsTask extends RecursiveTask<LongIntCounter> {
+        private final long[] friendIds;
+        private final int from;
+        private final int to;
+        private final int taskSize;
+
+        MutualFriendsTask(long[] friendIds, int from, int to, int taskSize) {
+            this.friendIds = friendIds;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected LongIntCounter compute() {
+            if (to - from > taskSize) {
+                int middle = (from + to) >>> 1;
+                MutualFriendsTask left = new MutualFriendsTask(friendIds, from, middle, taskSize);
+                left.fork();
+                LongIntCounter right = new MutualFriendsTask(friendIds, middle, to, taskSize).compute();
+                LongIntCounter leftResult = left.join();
+                // Меньший счетчик вливается в больший
+                if (leftResult.size() < right.size()) {
+                    right.addAll(leftResult);
+                    return right;
+                }
+                leftResult.addAll(right);
+                return leftResult;
+            }
+
+            int expectedCandidates = 0;
+            for (int i = from; i < to; i++) {
+                IdSet friendsOfFriend = friends.get(friendIds[i]);
+                if (friendsOfFriend != null) {
+                    expectedCandidates += friendsOfFriend.size();
+                }
+            }
+            // Кандидатов не больше, чем пользователей; у большинства из них есть друзья
+            LongIntCounter counter = new LongIntCounter(Math.min(expectedCandidates, friends.size()));
+            for (int i = from; i < to; i++) {
+                IdSet friendsOfFriend = friends.get(friendIds[i]);
+                if (friendsOfFriend == null) {
+                    continue;
+                }
+                // Сам пользователь и его друзья тоже считаются: отсев идет при выборе лучших
+                friendsOfFriend.forEachId(counter::increment);
+            }
+            return counter;
+        }
+    }
+
+    private void markTouched(long userId) {
+        if (touchedDuringRebuild != null) {
+            touchedDuringRebuild.add(userId);
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.db.LikesStorage;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+// Матрица лайков в двух ориентациях: у пользователя — отсортированный массив id понравившихся фильмов,
+// у фильма — отсортированный массив id лайкнувших его пользователей.
+// Строки пользователей не меняются на месте: лайк заменяет строку копией, поэтому рекомендации
+// обходят строки без блокировки и не задерживают лайки
+@Component
+@Slf4j
+public class LikesMatrix {
+    // Сколько самых похожих пользователей участвуют в рекомендации
+    private static final int NEIGHBOURS = 20;
+    // Длина хранимого списка похожих фильмов
+    private static final int SIMILAR_FILMS = 20;
+
+    private final LikesStorage likesStorage;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Растет при каждом изменении: по нему фоновый пересчет понимает, что данные устарели
+    private final AtomicLong version = new AtomicLong();
+    private volatile Map<Long, IdSet> filmsByUser = new ConcurrentHashMap<>();
+    private Map<Long, IdSet> likersByFilm = new HashMap<>();
+    // Списки похожих фильмов строятся при первом запросе и дальше поправляются по изменившимся фильмам
+    private final Map<Long, FilmNeighbours> similarFilms = new HashMap<>();
+    // Фильм -> фильмы, в чьих списках он стоит
+    private final Map<Long, IdSet> listedIn = new HashMap<>();
+    // Фильмы, у которых изменились лайки, а списки похожих еще не поправлены. Лайк только отмечает фильм,
+    // пересчет идет в фоне или перед ответом на запрос похожих; несколько лайков одного фильма дают один пересчет
+    private final IdSet staleFilms = new IdSet();
+    // Изменения, пришедшие во время перестроения: применяются к новой матрице перед подменой
+    private List<LikeChange> changesDuringRebuild;
+
+    @Autowired
+    public LikesMatrix(LikesStorage likesStorage) {
+        this.likesStorage = likesStorage;
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        rebuild(likesStorage::getLikesByAllFilms);
+    }
+
+    // Источник отдает лайки как FILM_ID -> USER_ID
+    public void rebuild(Supplier<? extends Map<Long, ? extends Set<Long>>> likesSource) {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, IdSet> freshRows = new ConcurrentHashMap<>();
+        Map<Long, IdSet> freshColumns = new HashMap<>();
+        // Фильмы обходятся по возрастанию id, поэтому строки пользователей заполняются дописыванием в конец
+        likesSource.get().entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> {
+                    long filmId = entry.getKey();
+                    IdSet likers = entry.getValue() instanceof IdSet ids ? ids : new IdSet(entry.getValue());
+                    likers.trimToSize();
+                    freshColumns.put(filmId, likers);
+                    likers.forEachId(userId -> freshRows.computeIfAbsent(userId, k -> new IdSet()).add(filmId));
+                });
+        freshRows.values().forEach(IdSet::trimToSize);
+
+        lock.writeLock().lock();
+        try {
+            for (LikeChange change : changesDuringRebuild) {
+                apply(freshRows, freshColumns, change.filmId(), change.userId(), change.liked());
+            }
+            changesDuringRebuild = null;
+            filmsByUser = freshRows;
+            likersByFilm = freshColumns;
+            similarFilms.clear();
+            listedIn.clear();
+            staleFilms.clear();
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Матрица лайков перестроена. Пользователей с лайками: {}, фильмов: {}",
+                freshRows.size(), freshColumns.size());
+    }
+
+    public void addLike(long filmId, long userId) {
+        change(filmId, userId, true);
+    }
+
+    public void deleteLike(long filmId, long userId) {
+        change(filmId, userId, false);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public long[] getUserIds() {
+        lock.readLock().lock();
+        try {
+            return filmsByUser.keySet().stream()
+                    .mapToLong(Long::longValue)
+                    .sorted()
+                    .toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Фильмы, которые лайкнули самые похожие пользователи, а сам пользователь еще нет.
+    // Вес фильма — сумма пересечений лайков соседей, которым он понравился.
+    // Блокировка не берется: каждая строка — неизменяемый снимок, а лайки во время обхода
+    // видны или не видны по отдельным пользователям
+    public long[] recommendFilms(long userId, int limit) {
+        Map<Long, IdSet> rows = filmsByUser;
+        IdSet userFilms = rows.get(userId);
+        if (userFilms == null || limit <= 0) {
+            return new long[0];
+        }
+
+        // Строки сравниваются с пользователем параллельно в общем пуле, у каждого воркера свой счетчик
+        LongIntCounter overlaps = rows.entrySet().parallelStream()
+                .collect(LongIntCounter::new, (counter, entry) -> {
+                    if (entry.getKey() != userId) {
+                        int overlap = userFilms.intersectionSize(entry.getValue());
+                        if (overlap > 0) {
+                            counter.add(entry.getKey(), overlap);
+                        }
+                    }
+                }, LongIntCounter::addAll);
+
+        LongIntCounter filmScores = new LongIntCounter();
+        for (long neighbourId : overlaps.top(NEIGHBOURS, id -> false)) {
+            int weight = overlaps.get(neighbourId);
+            // Сосед мог снять все лайки уже после сравнения
+            IdSet neighbourFilms = rows.get(neighbourId);
+            if (neighbourFilms != null) {
+                neighbourFilms.forEachId(filmId -> filmScores.add(filmId, weight));
+            }
+        }
+        return filmScores.top(limit, userFilms::contains);
+    }
+
+    // Фильмы с наибольшим коэффициентом Жаккара по множествам лайкнувших (при равенстве — по id)
+    public long[] getSimilarFilms(long filmId, int count) {
+        if (count <= 0) {
+            return new long[0];
+        }
+        lock.readLock().lock();
+        try {
+            if (count > SIMILAR_FILMS) {
+                // Длинный список не хранится и считается по запросу
+                return computeNeighbours(filmId, count).top(count);
+            }
+            FilmNeighbours neighbours = similarFilms.get(filmId);
+            if (neighbours != null && staleFilms.isEmpty()) {
+                return neighbours.top(count);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Любой из отмеченных фильмов может войти в список или выпасть из него, поэтому поправляются все
+            while (!staleFilms.isEmpty()) {
+                updateSimilarFilms(pollStaleFilm());
+            }
+            FilmNeighbours neighbours = similarFilms.get(filmId);
+            if (neighbours == null) {
+                neighbours = computeNeighbours(filmId, SIMILAR_FILMS);
+                store(filmId, neighbours);
+            }
+            return neighbours.top(count);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Отмеченные фильмы разбираются по одному, и между ними блокировка отпускается для лайков и чтений
+    @Scheduled(fixedDelayString = "${filmorate.likes.similar-refresh-interval-ms:1000}")
+    public void refreshSimilarFilms() {
+        while (true) {
+            lock.writeLock().lock();
+            try {
+                if (staleFilms.isEmpty()) {
+                    return;
+                }
+                updateSimilarFilms(pollStaleFilm());
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private void change(long filmId, long userId, boolean liked) {
+        lock.writeLock().lock();
+        try {
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(new LikeChange(filmId, userId, liked));
+            }
+            // Пока ни одного списка нет, отмечать нечего: списки соберутся по уже измененной матрице
+            if (apply(filmsByUser, likersByFilm, filmId, userId, liked) && !similarFilms.isEmpty()) {
+                staleFilms.add(filmId);
+            }
+            version.incrementAndGet();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private long pollStaleFilm() {
+        Iterator<Long> iterator = staleFilms.iterator();
+        long filmId = iterator.next();
+        iterator.remove();
+        return filmId;
+    }
+
+    // У фильма изменилось число лайков, поэтому сходство меняется только в парах с ним; пары считаются
+    // по текущей матрице, так что порядок разбора отмеченных фильмов не важен.
+    // Один проход по соседям через общих пользователей дает новые пересечения для всех таких пар:
+    // собственный список фильма пересобирается, в чужих списках правится одна запись
+    private void updateSimilarFilms(long filmId) {
+        if (similarFilms.isEmpty()) {
+            return;
+        }
+        IdSet likers = likersByFilm.get(filmId);
+        int filmLikes = likers != null ? likers.size() : 0;
+        LongIntCounter commonLikers = likers != null ? countCommonLikers(filmId, likers) : new LongIntCounter();
+
+        IdSet listedBy = listedIn.get(filmId);
+        if (listedBy != null) {
+            for (long otherId : listedBy.toLongArray()) {
+                if (commonLikers.get(otherId) == 0) {
+                    updateEntry(otherId, filmId, 0);
+                }
+            }
+        }
+        commonLikers.forEach((otherId, common) -> {
+            if (similarFilms.containsKey(otherId)) {
+                updateEntry(otherId, filmId, jaccard(common, filmLikes, likersByFilm.get(otherId).size()));
+            }
+        });
+
+        if (similarFilms.containsKey(filmId)) {
+            dropNeighbours(filmId);
+            FilmNeighbours neighbours = new FilmNeighbours(SIMILAR_FILMS);
+            commonLikers.forEach((otherId, common) ->
+                    neighbours.offer(otherId, jaccard(common, filmLikes, likersByFilm.get(otherId).size())));
+            store(filmId, neighbours);
+        }
+    }
+
+    // Новое сходство фильма filmId в списке фильма ownerId
+    private void updateEntry(long ownerId, long filmId, double score) {
+        FilmNeighbours neighbours = similarFilms.get(ownerId);
+        int position = neighbours.indexOf(filmId);
+        if (position >= 0) {
+            boolean wasFull = neighbours.isFull();
+            double previousScore = neighbours.scoreAt(position);
+            neighbours.removeAt(position);
+            unlist(filmId, ownerId);
+            // У полного списка сходство упало ниже всех оставшихся: за его пределами мог оказаться кандидат лучше.
+            // Такой список выбрасывается и пересобирается при следующем запросе
+            if (wasFull && score < previousScore && (score <= 0 || neighbours.size() == 0
+                    || !FilmNeighbours.isBetter(filmId, score, neighbours.filmIdAt(neighbours.size() - 1),
+                    neighbours.scoreAt(neighbours.size() - 1)))) {
+                dropNeighbours(ownerId);
+                return;
+            }
+        }
+        if (score <= 0) {
+            return;
+        }
+        long evicted = neighbours.offer(filmId, score);
+        if (evicted != filmId) {
+            listedIn.computeIfAbsent(filmId, k -> new IdSet()).add(ownerId);
+            if (evicted != FilmNeighbours.NONE) {
+                unlist(evicted, ownerId);
+            }
+        }
+    }
+
+    private FilmNeighbours computeNeighbours(long filmId, int capacity) {
+        FilmNeighbours neighbours = new FilmNeighbours(capacity);
+        IdSet likers = likersByFilm.get(filmId);
+        if (likers == null) {
+            return neighbours;
+        }
+        countCommonLikers(filmId, likers).forEach((otherId, common) ->
+                neighbours.offer(otherId, jaccard(common, likers.size(), likersByFilm.get(otherId).size())));
+        return neighbours;
+    }
+
+    // Для каждого другого фильма — сколько у него общих лайкнувших с filmId
+    private LongIntCounter countCommonLikers(long filmId, IdSet likers) {
+        LongIntCounter commonLikers = new LongIntCounter();
+        likers.forEachId(userId -> filmsByUser.get(userId).forEachId(otherId -> {
+            if (otherId != filmId) {
+                commonLikers.increment(otherId);
+            }
+        }));
+        return commonLikers;
+    }
+
+    private void store(long filmId, FilmNeighbours neighbours) {
+        similarFilms.put(filmId, neighbours);
+        for (int i = 0; i < neighbours.size(); i++) {
+            listedIn.computeIfAbsent(neighbours.filmIdAt(i), k -> new IdSet()).add(filmId);
+        }
+    }
+
+    private void dropNeighbours(long filmId) {
+        FilmNeighbours neighbours = similarFilms.remove(filmId);
+        for (int i = 0; i < neighbours.size(); i++) {
+            unlist(neighbours.filmIdAt(i), filmId);
+        }
+    }
+
+    private void unlist(long filmId, long ownerId) {
+        IdSet owners = listedIn.get(filmId);
+        if (owners != null) {
+            owners.remove(ownerId);
+            if (owners.isEmpty()) {
+                listedIn.remove(filmId);
+            }
+        }
+    }
+
+    private static double jaccard(int common, int likes, int otherLikes) {
+        return (double) common / (likes + otherLikes - common);
+    }
+
+    private static boolean apply(Map<Long, IdSet> filmsByUser, Map<Long, IdSet> likersByFilm,
+                                 long filmId, long userId, boolean liked) {
+        IdSet row = filmsByUser.get(userId);
+        if (liked) {
+            likersByFilm.computeIfAbsent(filmId, k -> new IdSet()).add(userId);
+            if (row != null && row.contains(filmId)) {
+                return false;
+            }
+            // Строка пользователя копируется: ее может обходить расчет рекомендаций
+            IdSet updated = row != null ? new IdSet(row) : new IdSet();
+            updated.add(filmId);
+            filmsByUser.put(userId, updated);
+            return true;
+        }
+        removeFrom(likersByFilm, filmId, userId);
+        if (row == null || !row.contains(filmId)) {
+            return false;
+        }
+        if (row.size() == 1) {
+            filmsByUser.remove(userId);
+        } else {
+            IdSet updated = new IdSet(row);
+            updated.remove(filmId);
+            filmsByUser.put(userId, updated);
+        }
+        return true;
+    }
+
+    private static boolean removeFrom(Map<Long, IdSet> sets, long key, long id) {
+        IdSet ids = sets.get(key);
+        if (ids == null || !ids.remove(id)) {
+            return false;
+        }
+        if (ids.isEmpty()) {
+            sets.remove(key);
+        }
+        return true;
+    }
+
+    private record LikeChange(long filmId, long userId, boolean liked) {
+    }
+}
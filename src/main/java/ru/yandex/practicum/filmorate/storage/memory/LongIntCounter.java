@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import java.util.function.LongPredicate;
+
+// Счетчик long -> int на открытой адресации: без упаковки ключей и без узлов HashMap
+final class LongIntCounter {
+    private static final int MIN_CAPACITY = 16;
+    private long[] keys;
+    // Нулевой счетчик означает свободную ячейку: значения только увеличиваются
+    private int[] counts;
+    private int size;
+
+    LongIntCounter() {
+        this(MIN_CAPACITY);
+    }
+
+    LongIntCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, expectedSize * 2) - 1) << 1;
+        keys = new long[capacity];
+        counts = new int[capacity];
+    }
+
+    void increment(long key) {
+        add(key, 1);
+    }
+
+    void add(long key, int delta) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                counts[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        counts[slot] = delta;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    void addAll(LongIntCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.counts[i] != 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (counts[slot] != 0) {
+            if (keys[slot] == key) {
+                return counts[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(EntryConsumer action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] != 0) {
+                action.accept(keys[i], counts[i]);
+            }
+        }
+    }
+
+    // Ключи с наибольшими счетчиками (при равенстве — меньший ключ первым).
+    // Куча ограничена размером limit: кандидат хуже ее вершины отбрасывается за O(1),
+    // а проверка excluded выполняется только для тех, кто в кучу проходит
+    long[] top(int limit, LongPredicate excluded) {
+        int capacity = Math.min(Math.max(0, limit), size);
+        long[] heapKeys = new long[capacity];
+        int[] heapCounts = new int[capacity];
+        int heapSize = 0;
+
+        for (int i = 0; i < keys.length && capacity > 0; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            boolean fits = heapSize < capacity || isWorse(heapKeys[0], heapCounts[0], keys[i], counts[i]);
+            if (!fits || excluded.test(keys[i])) {
+                continue;
+            }
+            if (heapSize < capacity) {
+                heapKeys[heapSize] = keys[i];
+                heapCounts[heapSize] = counts[i];
+                siftUp(heapKeys, heapCounts, heapSize++);
+            } else {
+                heapKeys[0] = keys[i];
+                heapCounts[0] = counts[i];
+                siftDown(heapKeys, heapCounts, heapSize);
+            }
+        }
+
+        // Вершина кучи — худший из оставшихся, поэтому результат заполняется с конца
+        long[] result = new long[heapSize];
+        for (int last = heapSize - 1; last >= 0; last--) {
+            result[last] = heapKeys[0];
+            heapKeys[0] = heapKeys[last];
+            heapCounts[0] = heapCounts[last];
+            siftDown(heapKeys, heapCounts, last);
+        }
+        return result;
+    }
+
+    private static boolean isWorse(long key, int count, long otherKey, int otherCount) {
+        return count < otherCount || (count == otherCount && key > otherKey);
+    }
+
+    private static void siftUp(long[] heapKeys, int[] heapCounts, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!isWorse(heapKeys[index], heapCounts[index], heapKeys[parent], heapCounts[parent])) {
+                return;
+            }
+            swap(heapKeys, heapCounts, index, parent);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(long[] heapKeys, int[] heapCounts, int heapSize) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < heapSize && isWorse(heapKeys[left], heapCounts[left], heapKeys[worst], heapCounts[worst])) {
+                worst = left;
+            }
+            if (right < heapSize && isWorse(heapKeys[right], heapCounts[right], heapKeys[worst], heapCounts[worst])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(heapKeys, heapCounts, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(long[] heapKeys, int[] heapCounts, int i, int j) {
+        long key = heapKeys[i];
+        heapKeys[i] = heapKeys[j];
+        heapKeys[j] = key;
+        int count = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = count;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        counts = new int[oldCounts.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldCounts[i] != 0) {
+                add(oldKeys[i], oldCounts[i]);
+            }
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    interface EntryConsumer {
+        void accept(long key, int count);
+    }
+}
@@ -0,0 +1,117 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import java.util.Arrays;
+
+// Отсортированные id фильмов, в которых встречается слово, в сжатом виде: для каждого фильма одно varint-число
+// (разница с предыдущим id << 2 | поля). Поля — биты TITLE и DESCRIPTION: где именно встретилось слово
+final class PostingList {
+    static final int TITLE = 1;
+    static final int DESCRIPTION = 2;
+
+    private byte[] data = new byte[8];
+    private int length;
+    private int size;
+    private long lastFilmId;
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Дописывание в конец: id должен быть больше всех уже записанных
+    void append(long filmId, int fields) {
+        writeVarint(((filmId - lastFilmId) << 2) | fields);
+        lastFilmId = filmId;
+        size++;
+    }
+
+    // Вставка или замена в середине: список перекодируется целиком
+    void put(long filmId, int fields) {
+        if (filmId > lastFilmId || size == 0) {
+            append(filmId, fields);
+            return;
+        }
+        Decoded decoded = decode();
+        int position = Arrays.binarySearch(decoded.filmIds(), filmId);
+        if (position >= 0) {
+            decoded.fields()[position] = (byte) fields;
+            rewrite(decoded.filmIds(), decoded.fields(), -1);
+            return;
+        }
+        int insertAt = -position - 1;
+        long[] filmIds = new long[size + 1];
+        byte[] fieldBits = new byte[size + 1];
+        System.arraycopy(decoded.filmIds(), 0, filmIds, 0, insertAt);
+        System.arraycopy(decoded.fields(), 0, fieldBits, 0, insertAt);
+        filmIds[insertAt] = filmId;
+        fieldBits[insertAt] = (byte) fields;
+        System.arraycopy(decoded.filmIds(), insertAt, filmIds, insertAt + 1, size - insertAt);
+        System.arraycopy(decoded.fields(), insertAt, fieldBits, insertAt + 1, size - insertAt);
+        rewrite(filmIds, fieldBits, -1);
+    }
+
+    void remove(long filmId) {
+        Decoded decoded = decode();
+        int position = Arrays.binarySearch(decoded.filmIds(), filmId);
+        if (position >= 0) {
+            rewrite(decoded.filmIds(), decoded.fields(), position);
+        }
+    }
+
+    void trimToSize() {
+        data = Arrays.copyOf(data, length);
+    }
+
+    Decoded decode() {
+        long[] filmIds = new long[size];
+        byte[] fields = new byte[size];
+        long filmId = 0;
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            filmId += value >>> 2;
+            filmIds[i] = filmId;
+            fields[i] = (byte) (value & 3);
+        }
+        return new Decoded(filmIds, fields);
+    }
+
+    long byteSize() {
+        return data.length;
+    }
+
+    private void rewrite(long[] filmIds, byte[] fields, int skip) {
+        length = 0;
+        size = 0;
+        lastFilmId = 0;
+        for (int i = 0; i < filmIds.length; i++) {
+            if (i != skip) {
+                append(filmIds[i], fields[i]);
+            }
+        }
+    }
+
+    private void writeVarint(long value) {
+        if (length + 10 > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10));
+        }
+        while ((value & ~0x7FL) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+
+    record Decoded(long[] filmIds, byte[] fields) {
+    }
+}
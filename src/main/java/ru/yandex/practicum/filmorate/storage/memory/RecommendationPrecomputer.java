@@ -0,0 +1,245 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+// Рекомендации всех пользователей пересчитываются в фоне, запрос только читает готовый результат.
+// Проход идет по возрастанию id порциями; после каждой порции в конец файла дописываются ее рекомендации
+// и курсор, и после перезапуска проход продолжается с места остановки, а ответы сразу берутся из файла.
+// Файл — заголовок и кадры вида «число пользователей, их рекомендации, курсор»; при чтении поздний кадр
+// перекрывает ранние. В конце прохода файл переписывается одним кадром
+@Component
+@ConditionalOnProperty(name = "filmorate.recommendations.precompute.enabled", havingValue = "true")
+@Slf4j
+public class RecommendationPrecomputer {
+    private static final int CHECKPOINT_MAGIC = 0x46524544;
+    // Значение курсора, когда проход завершен
+    private static final long PASS_COMPLETE = -1;
+
+    private final LikesMatrix likesMatrix;
+    private final int size;
+    private final int chunkSize;
+    private final long refreshIntervalMs;
+    private final Path checkpointFile;
+
+    private final Map<Long, long[]> recommendations = new ConcurrentHashMap<>();
+    // Последний обработанный пользователь незавершенного прохода
+    private long cursor = PASS_COMPLETE;
+    // Версия матрицы, по которой посчитан последний завершенный проход
+    private long computedVersion = -1;
+    private ScheduledExecutorService refresher;
+
+    @Autowired
+    public RecommendationPrecomputer(LikesMatrix likesMatrix,
+                                     @Value("${filmorate.recommendations.precompute.size:20}") int size,
+                                     @Value("${filmorate.recommendations.precompute.chunk-size:1000}") int chunkSize,
+                                     @Value("${filmorate.recommendations.precompute.refresh-interval-ms:60000}")
+                                     long refreshIntervalMs,
+                                     @Value("${filmorate.recommendations.precompute.checkpoint-file:" +
+                                            "./db/recommendations.checkpoint}") String checkpointFile) {
+        this.likesMatrix = likesMatrix;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.checkpointFile = Path.of(checkpointFile);
+    }
+
+    @PostConstruct
+    public void start() {
+        // Завершенный проход из файла сразу пригоден для ответов, незавершенный продолжается без ожидания
+        boolean loaded = loadCheckpoint();
+        // Накопленные кадры сжимаются в один, заодно отрезается недописанный при сбое хвост,
+        // и следующие порции дописываются к заведомо целому файлу
+        writeSnapshot();
+        long initialDelayMs = loaded && cursor == PASS_COMPLETE ? refreshIntervalMs : 0;
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "recommendations-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, initialDelayMs, refreshIntervalMs,
+                TimeUnit.MILLISECONDS);
+        log.info("Фоновый расчет рекомендаций включен. Размер: {}, интервал: {} мс, файл: {}",
+                size, refreshIntervalMs, checkpointFile.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        refresher.shutdownNow();
+    }
+
+    // null, если готового ответа нет: пользователь появился после прохода или запрошено больше, чем хранится
+    public long[] getRecommendations(long userId, int limit) {
+        if (limit > size) {
+            return null;
+        }
+        long[] filmIds = recommendations.get(userId);
+        return filmIds != null ? Arrays.copyOf(filmIds, Math.min(limit, filmIds.length)) : null;
+    }
+
+    public synchronized void refresh() {
+        long version = likesMatrix.getVersion();
+        if (cursor == PASS_COMPLETE && version == computedVersion) {
+            return;
+        }
+
+        long[] userIds = likesMatrix.getUserIds();
+        int start = 0;
+        if (cursor != PASS_COMPLETE) {
+            int position = Arrays.binarySearch(userIds, cursor);
+            start = position >= 0 ? position + 1 : -position - 1;
+            log.debug("Продолжение прохода рекомендаций после пользователя {}", cursor);
+        }
+
+        for (int from = start; from < userIds.length; from += chunkSize) {
+            int to = Math.min(from + chunkSize, userIds.length);
+            long[][] chunk = new long[to - from][];
+            int offset = from;
+            IntStream.range(from, to).parallel()
+                    .forEach(i -> chunk[i - offset] = likesMatrix.recommendFilms(userIds[i], size));
+            for (int i = from; i < to; i++) {
+                recommendations.put(userIds[i], chunk[i - from]);
+            }
+            cursor = userIds[to - 1];
+            if (to < userIds.length) {
+                appendChunk(userIds, from, chunk);
+            }
+        }
+
+        // Пользователи, снявшие все лайки, из матрицы пропали: их старые рекомендации не нужны
+        recommendations.keySet().removeIf(userId -> Arrays.binarySearch(userIds, userId) < 0);
+        cursor = PASS_COMPLETE;
+        computedVersion = version;
+        writeSnapshot();
+        log.debug("Рекомендации пересчитаны. Пользователей: {}", userIds.length);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.error("Ошибка при фоновом расчете рекомендаций", e);
+        }
+    }
+
+    // Дописывает в файл рекомендации порции и курсор, не трогая уже записанное
+    private void appendChunk(long[] userIds, int from, long[][] chunk) {
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+        } catch (IOException e) {
+            log.error("Не удалось создать каталог контрольной точки рекомендаций {}", checkpointFile, e);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(checkpointFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)))) {
+            if (Files.size(checkpointFile) == 0) {
+                out.writeInt(CHECKPOINT_MAGIC);
+            }
+            out.writeInt(chunk.length);
+            for (int i = 0; i < chunk.length; i++) {
+                writeEntry(out, userIds[from + i], chunk[i]);
+            }
+            out.writeLong(cursor);
+        } catch (IOException e) {
+            log.error("Не удалось дописать контрольную точку рекомендаций {}", checkpointFile, e);
+        }
+    }
+
+    private void writeSnapshot() {
+        Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try {
+            Path parent = checkpointFile.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(CHECKPOINT_MAGIC);
+                out.writeInt(recommendations.size());
+                for (Map.Entry<Long, long[]> entry : recommendations.entrySet()) {
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                }
+                out.writeLong(cursor);
+            }
+            // Файл подменяется целиком: при сбое остается предыдущая контрольная точка
+            Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Не удалось сохранить контрольную точку рекомендаций {}", checkpointFile, e);
+        }
+    }
+
+    private boolean loadCheckpoint() {
+        if (!Files.exists(checkpointFile)) {
+            return false;
+        }
+        int frames = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC) {
+                log.warn("Файл {} не является контрольной точкой рекомендаций", checkpointFile);
+                return false;
+            }
+            // Кадр применяется, только если прочитан целиком
+            while (in.available() > 0) {
+                Map<Long, long[]> frame = new HashMap<>();
+                int users = in.readInt();
+                for (int i = 0; i < users; i++) {
+                    long userId = in.readLong();
+                    long[] filmIds = new long[in.readInt()];
+                    for (int j = 0; j < filmIds.length; j++) {
+                        filmIds[j] = in.readLong();
+                    }
+                    frame.put(userId, filmIds);
+                }
+                long frameCursor = in.readLong();
+                recommendations.putAll(frame);
+                cursor = frameCursor;
+                frames++;
+            }
+        } catch (EOFException e) {
+            log.warn("Контрольная точка рекомендаций {} оборвана, прочитано кадров: {}", checkpointFile, frames);
+        } catch (IOException e) {
+            // Без контрольной точки рекомендации просто считаются заново
+            recommendations.clear();
+            cursor = PASS_COMPLETE;
+            log.warn("Не удалось прочитать контрольную точку рекомендаций {}", checkpointFile, e);
+            return false;
+        }
+        if (frames == 0) {
+            return false;
+        }
+        log.info("Рекомендации загружены из контрольной точки. Пользователей: {}, кадров: {}",
+                recommendations.size(), frames);
+        return true;
+    }
+
+    private static void writeEntry(DataOutputStream out, long userId, long[] filmIds) throws IOException {
+        out.writeLong(userId);
+        out.writeInt(filmIds.length);
+        for (long filmId : filmIds) {
+            out.writeLong(filmId);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+// Скалярные произведения запроса со всеми векторами плоского массива
+final class ScalarFeatureScorer {
+
+    void score(float[] vectors, int count, float[] query, float[] scores) {
+        int dimension = query.length;
+        for (int i = 0, base = 0; i < count; i++, base += dimension) {
+            float sum = 0;
+            for (int j = 0; j < dimension; j++) {
+                sum += vectors[base + j] * query[j];
+            }
+            scores[i] = sum;
+        }
+    }
+}
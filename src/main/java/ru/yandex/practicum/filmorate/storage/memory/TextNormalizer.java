@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// Разбиение текста на слова и приведение слов к общей форме: нижний регистр, ё -> е,
+// отбрасывание типичных окончаний русских слов и английского множественного числа
+final class TextNormalizer {
+    // Окончания от длинных к коротким: отбрасывается первое подошедшее
+    private static final String[] RUSSIAN_ENDINGS = {
+        "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "иях", "ием", "иям", "ией", "ах", "ях",
+        "ов", "ев", "ей", "ой", "ий", "ый", "ая", "яя", "ое", "ее", "ые", "ие", "ия", "ию", "ии", "ам", "ям",
+        "ом", "ем", "ую", "юю", "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"
+    };
+    // Основа короче не обрезается: иначе разные короткие слова сливаются
+    private static final int MIN_STEM_LENGTH = 3;
+
+    private TextNormalizer() {
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT).replace('ё', 'е'));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // Строка целиком без разбиения на слова: нижний регистр, ё -> е, пробельные символы подряд -> один пробел.
+    // Пробелы в начале отбрасываются, в конце — остаются: так набранное начало названия сравнивается с названием
+    static String foldCase(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder folded = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                if (!folded.isEmpty() && folded.charAt(folded.length() - 1) != ' ') {
+                    folded.append(' ');
+                }
+            } else {
+                folded.append(c == 'ё' || c == 'Ё' ? 'е' : Character.toLowerCase(c));
+            }
+        }
+        return folded.toString();
+    }
+
+    static List<String> normalize(String text) {
+        List<String> terms = tokenize(text);
+        terms.replaceAll(TextNormalizer::stem);
+        return terms;
+    }
+
+    static String stem(String word) {
+        if (isCyrillic(word)) {
+            for (String ending : RUSSIAN_ENDINGS) {
+                if (word.endsWith(ending) && word.length() - ending.length() >= MIN_STEM_LENGTH) {
+                    return word.substring(0, word.length() - ending.length());
+                }
+            }
+            return word;
+        }
+        if (word.length() > MIN_STEM_LENGTH + 1 && !word.endsWith("ss")) {
+            if (word.endsWith("ies")) {
+                return word.substring(0, word.length() - 3) + "y";
+            }
+            if (word.endsWith("ches") || word.endsWith("shes") || word.endsWith("xes")) {
+                return word.substring(0, word.length() - 2);
+            }
+            if (word.endsWith("s")) {
+                return word.substring(0, word.length() - 1);
+            }
+        }
+        return word;
+    }
+
+    private static boolean isCyrillic(String word) {
+        return !word.isEmpty() && Character.UnicodeBlock.of(word.charAt(word.length() - 1))
+                == Character.UnicodeBlock.CYRILLIC;
+    }
+}
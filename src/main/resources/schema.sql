@@ -15,11 +15,15 @@ CREATE TABLE IF NOT EXISTS PUBLIC.FILMS (
 	RELEASE_DATE DATE NOT NULL,
 	DURATION INTEGER NOT NULL,
 	RATING_ID INTEGER,
+	LIKE_COUNT INTEGER DEFAULT 0 NOT NULL,
 	CONSTRAINT FILMS_PK PRIMARY KEY (FILM_ID)
 );
+ALTER TABLE PUBLIC.FILMS ADD COLUMN IF NOT EXISTS LIKE_COUNT INTEGER DEFAULT 0 NOT NULL;
 
 CREATE INDEX IF NOT EXISTS FILMS_RATINGS_FK_INDEX_3 ON PUBLIC.FILMS (RATING_ID);
 CREATE UNIQUE INDEX IF NOT EXISTS PRIMARY_KEY_3 ON PUBLIC.FILMS (FILM_ID);
+-- счетчик лайков поддерживается LikesDbStorage, индекс отдает топ без агрегации LIKES
+CREATE INDEX IF NOT EXISTS FILMS_LIKE_COUNT_INDEX ON PUBLIC.FILMS (LIKE_COUNT DESC, FILM_ID);
 
 
 CREATE TABLE IF NOT EXISTS PUBLIC.GENRES (
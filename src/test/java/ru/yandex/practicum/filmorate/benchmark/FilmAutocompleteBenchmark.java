@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 100 тыс. фильмов с названиями из 2-4 слов словаря в 5000 слов и случайными лайками.
+// Запуск — как у FriendSuggestionsBenchmark, с фильтром FilmAutocomplete
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FilmAutocompleteBenchmark {
+    private static final int FILMS = 100_000;
+    private static final int VOCABULARY = 5000;
+    private static final int LIMIT = 10;
+
+    private FilmTitleIndex index;
+    private String[] titles;
+    private Random random;
+
+    @Setup
+    public void buildIndex() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        index = new FilmTitleIndex(null);
+        random = new Random(42);
+        titles = new String[FILMS];
+        for (int i = 0; i < FILMS; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int j = 0, words = 2 + random.nextInt(3); j < words; j++) {
+                title.append(j > 0 ? " " : "").append("слово").append(random.nextInt(VOCABULARY));
+            }
+            titles[i] = title.toString();
+            Film film = new Film();
+            film.setId((long) i + 1);
+            film.setName(titles[i]);
+            index.putFilm(film);
+            index.changeLikes(i + 1, random.nextInt(1000));
+        }
+
+        System.gc();
+        System.out.printf("%nИндекс названий: %d МБ%n", (memory.getHeapMemoryUsage().getUsed() - before) >> 20);
+    }
+
+    // Префикс из начала случайного названия: от 1 до 12 символов
+    @Benchmark
+    public long[] complete() {
+        String title = titles[random.nextInt(FILMS)];
+        return index.complete(title.substring(0, 1 + random.nextInt(12)), LIMIT);
+    }
+
+    // Лайк и его снятие: пересчет списков на пути фильма
+    @Benchmark
+    public void likeAndUnlike() {
+        long filmId = 1 + random.nextInt(FILMS);
+        index.changeLikes(filmId, 1);
+        index.changeLikes(filmId, -1);
+    }
+}
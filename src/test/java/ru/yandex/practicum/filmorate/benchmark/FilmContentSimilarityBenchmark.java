@@ -0,0 +1,53 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// 100 тыс. фильмов: полный проход по векторам признаков.
+// Запуск — как у FriendSuggestionsBenchmark, с фильтром FilmContentSimilarity
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilmContentSimilarityBenchmark {
+    private static final int FILMS = 100_000;
+    private static final int COUNT = 10;
+
+    private FilmFeatureIndex index;
+    private Random random;
+
+    @Setup
+    public void buildIndex() {
+        index = new FilmFeatureIndex(null);
+        random = new Random(42);
+        for (long filmId = 1; filmId <= FILMS; filmId++) {
+            Set<Genre> genres = new HashSet<>();
+            for (int i = 0, genreCount = 1 + random.nextInt(3); i < genreCount; i++) {
+                genres.add(new Genre(1 + random.nextInt(6), null));
+            }
+            Film film = new Film();
+            film.setId(filmId);
+            film.setReleaseDate(LocalDate.of(1920 + random.nextInt(105), 1, 1));
+            film.setDuration(60 + random.nextInt(150));
+            film.setMpaRating(new MpaRating(1 + random.nextInt(5), null));
+            film.setFilmGenres(genres);
+            index.putFilm(film);
+        }
+    }
+
+    @Benchmark
+    public long[] similarFilms() {
+        return index.getSimilarFilms(1 + random.nextInt(FILMS), COUNT);
+    }
+}
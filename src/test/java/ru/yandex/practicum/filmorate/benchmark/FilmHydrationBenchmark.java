@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.db.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.LikesDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.MpaRatingDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+// 20 тыс. фильмов, по 2 жанра и по 5 лайков. Сравнивается последовательная и параллельная загрузка
+// всех фильмов: с H2 в памяти (без сети) и с H2 по TCP на localhost.
+// Запуск — как у FriendSuggestionsBenchmark, с фильтром FilmHydration
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FilmHydrationBenchmark {
+    private static final int FILMS = 20_000;
+    private static final int USERS = 2_000;
+    private static final int LIKES_PER_FILM = 5;
+
+    @Param({"mem", "tcp"})
+    private String connection;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private Server server;
+    private HikariDataSource dataSource;
+    private FilmDbStorage storage;
+
+    @Setup
+    public void fillDatabase() throws SQLException {
+        String url = "jdbc:h2:mem:hydration;DB_CLOSE_DELAY=-1";
+        if (connection.equals("tcp")) {
+            server = Server.createTcpServer("-tcpPort", "0", "-ifNotExists").start();
+            url = "jdbc:h2:tcp://localhost:" + server.getPort() + "/mem:hydration;DB_CLOSE_DELAY=-1";
+        }
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(10);
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(dataSource);
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.update("INSERT INTO USERS(EMAIL, LOGIN, BIRTHDAY) " +
+                "SELECT 'user' || X || '@mail.ru', 'user' || X, DATE '1990-01-01' FROM SYSTEM_RANGE(1, ?)", USERS);
+        jdbc.update("INSERT INTO FILMS(FILM_NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID) " +
+                "SELECT 'Фильм ' || X, 'Описание фильма ' || X, DATE '2000-01-01', 120, 1 + MOD(X, 5) " +
+                "FROM SYSTEM_RANGE(1, ?)", FILMS);
+        jdbc.update("INSERT INTO FILM_GENRES(FILM_ID, GENRE_ID) " +
+                "SELECT X, 1 + MOD(X, 6) FROM SYSTEM_RANGE(1, ?) " +
+                "UNION ALL SELECT X, 1 + MOD(X + 3, 6) FROM SYSTEM_RANGE(1, ?)", FILMS, FILMS);
+        for (int i = 0; i < LIKES_PER_FILM; i++) {
+            jdbc.update("INSERT INTO LIKES(USER_ID, FILM_ID) " +
+                    "SELECT 1 + MOD(X * 7 + ?, ?), X FROM SYSTEM_RANGE(1, ?)", i * 131, USERS, FILMS);
+        }
+        jdbc.update("UPDATE FILMS f SET LIKE_COUNT = (SELECT COUNT(*) FROM LIKES l WHERE l.FILM_ID = f.FILM_ID)");
+
+        EntityVersions versions = new EntityVersions();
+        GenreDbStorage genreStorage = new GenreDbStorage(jdbc, new GenreRowMapper(), versions, 1000);
+        genreStorage.refresh();
+        // Индексы в памяти нужны только при записи фильмов
+        storage = new FilmDbStorage(jdbc, new FilmRowMapper(), genreStorage,
+                new MpaRatingDbStorage(jdbc, new MpaRatingRowMapper(), versions, 1000),
+                new LikesDbStorage(jdbc, Optional.empty(), versions), null, null, null, versions, parallel, 5000);
+    }
+
+    @TearDown
+    public void close() {
+        storage.shutdown();
+        new JdbcTemplate(dataSource).execute("SHUTDOWN");
+        dataSource.close();
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    // Три независимых запроса: фильмы, жанры, лайки
+    @Benchmark
+    public Collection<Film> allFilms() {
+        return storage.getAllFilms();
+    }
+}
@@ -0,0 +1,99 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Нагрузочный тест запущенного приложения: concurrency клиентов в течение seconds секунд шлют запросы
+// без пауз, клиент с номером i — на путь paths[i % paths.length]. По каждому пути печатаются
+// пропускная способность, перцентили задержки и число ответов по статусам.
+// -Dloadtest.accept=application/x-ndjson направляет запросы в потоковые эндпоинты профиля reactive,
+// -Dloadtest.if-none-match=<ETag> проверяет условные запросы с ответом 304.
+// Запуск (classpath — как у FriendSuggestionsBenchmark):
+// java -cp ... ru.yandex.practicum.filmorate.benchmark.FilmLoadTest http://localhost:8080 1000 20 /films /genres
+public class FilmLoadTest {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private static final String ACCEPT = System.getProperty("loadtest.accept", "application/json");
+    private static final String IF_NONE_MATCH = System.getProperty("loadtest.if-none-match");
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args[0];
+        int concurrency = Integer.parseInt(args[1]);
+        long seconds = Long.parseLong(args[2]);
+        String[] paths = Arrays.copyOfRange(args, 3, args.length);
+
+        Map<String, PathStats> stats = new LinkedHashMap<>();
+        for (String path : paths) {
+            stats.put(path, new PathStats());
+        }
+
+        // Ресурсы закрываются в обратном порядке: сначала дожидаемся клиентов, потом закрываем HttpClient
+        try (HttpClient http = HttpClient.newBuilder()
+                     .executor(Executors.newVirtualThreadPerTaskExecutor())
+                     .connectTimeout(REQUEST_TIMEOUT)
+                     .build();
+             ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            for (int i = 0; i < concurrency; i++) {
+                String path = paths[i % paths.length];
+                PathStats pathStats = stats.get(path);
+                HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(baseUrl + path))
+                        .timeout(REQUEST_TIMEOUT)
+                        .header("Accept", ACCEPT);
+                if (IF_NONE_MATCH != null) {
+                    builder.header("If-None-Match", IF_NONE_MATCH);
+                }
+                HttpRequest request = builder.build();
+                clients.submit(() -> {
+                    while (System.nanoTime() < deadline) {
+                        long start = System.nanoTime();
+                        String status;
+                        try {
+                            status = String.valueOf(http.send(request, HttpResponse.BodyHandlers.discarding())
+                                    .statusCode());
+                        } catch (Exception e) {
+                            status = e.getClass().getSimpleName();
+                        }
+                        pathStats.record(status, System.nanoTime() - start);
+                    }
+                });
+            }
+        }
+
+        System.out.printf("Клиентов: %d, длительность: %d с, Accept: %s%n", concurrency, seconds, ACCEPT);
+        stats.forEach((path, pathStats) -> pathStats.print(path, seconds));
+    }
+
+    private static final class PathStats {
+        private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        private final Map<String, AtomicInteger> statuses = new ConcurrentHashMap<>();
+
+        private void record(String status, long latencyNanos) {
+            latencies.add(latencyNanos);
+            statuses.computeIfAbsent(status, k -> new AtomicInteger()).incrementAndGet();
+        }
+
+        private void print(String path, long seconds) {
+            long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+            if (sorted.length == 0) {
+                System.out.printf("%s: нет ответов%n", path);
+                return;
+            }
+            System.out.printf("%s: %.0f запр/с, p50 %.1f мс, p95 %.1f мс, p99 %.1f мс, max %.1f мс, статусы %s%n",
+                    path, (double) sorted.length / seconds, millis(sorted, 0.50), millis(sorted, 0.95),
+                    millis(sorted, 0.99), sorted[sorted.length - 1] / 1e6, new TreeMap<>(statuses));
+        }
+
+        private static double millis(long[] sorted, double quantile) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 100 тыс. фильмов: название из 3 слов и описание из 20 слов словаря в 5000 слов с неравномерной частотой.
+// Запуск — как у FriendSuggestionsBenchmark, с фильтром FilmSearch
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+public class FilmSearchBenchmark {
+    private static final int FILMS = 100_000;
+    private static final int VOCABULARY = 5000;
+    private static final int LIMIT = 10;
+
+    private FilmSearchIndex index;
+    private Random random;
+
+    @Setup
+    public void buildIndex() {
+        index = new FilmSearchIndex(null);
+        random = new Random(42);
+        for (long filmId = 1; filmId <= FILMS; filmId++) {
+            Film film = new Film();
+            film.setId(filmId);
+            film.setName(words(3));
+            film.setDescription(words(20));
+            index.putFilm(film);
+        }
+    }
+
+    // Одно слово средней частоты
+    @Benchmark
+    public long[] singleWord() {
+        return index.search(word(), true, true, LIMIT, null);
+    }
+
+    // Два слова: пересечение списков
+    @Benchmark
+    public long[] twoWords() {
+        return index.search(word() + " " + word(), true, true, LIMIT, null);
+    }
+
+    // Начало слова без последней буквы: объединение списков до 11 подходящих слов
+    @Benchmark
+    public long[] prefix() {
+        String word = word();
+        return index.search(word.substring(0, word.length() - 1), true, true, LIMIT, null);
+    }
+
+    private String words(int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(word()).append(' ');
+        }
+        return text.toString();
+    }
+
+    // Частота по степенному закону: слова с малыми номерами встречаются чаще
+    private String word() {
+        double r = random.nextDouble();
+        return "word" + (int) (VOCABULARY * r * r);
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.IdSet;
+import ru.yandex.practicum.filmorate.storage.memory.LikesMatrix;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 100 тыс. фильмов, 10 млн лайков: 200 тыс. пользователей по 50 лайков, популярность фильмов неравномерная.
+// Запуск — как у FriendSuggestionsBenchmark, с фильтром FilmSimilarity
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx3g"})
+public class FilmSimilarityBenchmark {
+    private static final int FILMS = 100_000;
+    private static final int USERS = 200_000;
+    private static final int LIKES_PER_USER = 50;
+    private static final int WARM_FILMS = 10_000;
+    private static final int COUNT = 10;
+
+    private LikesMatrix matrix;
+    private long[] warmFilmIds;
+    private Random random;
+
+    @Setup
+    public void buildMatrix() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        random = new Random(42);
+        Map<Long, IdSet> likersByFilm = new HashMap<>();
+        for (long userId = 1; userId <= USERS; userId++) {
+            IdSet userFilms = new IdSet();
+            while (userFilms.size() < LIKES_PER_USER) {
+                userFilms.add(randomFilm());
+            }
+            long id = userId;
+            userFilms.forEachId(filmId -> likersByFilm.computeIfAbsent(filmId, k -> new IdSet()).add(id));
+        }
+        matrix = new LikesMatrix(null);
+        matrix.rebuild(() -> likersByFilm);
+        likersByFilm.clear();
+
+        System.gc();
+        long afterMatrix = memory.getHeapMemoryUsage().getUsed();
+        warmFilmIds = new long[WARM_FILMS];
+        long started = System.nanoTime();
+        for (int i = 0; i < WARM_FILMS; i++) {
+            warmFilmIds[i] = randomFilm();
+            matrix.getSimilarFilms(warmFilmIds[i], COUNT);
+        }
+        long warmMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        System.gc();
+        long afterLists = memory.getHeapMemoryUsage().getUsed();
+
+        System.out.printf("%nМатрица лайков: %d МБ, списки для %d фильмов: %d МБ, построены за %d мс%n",
+                (afterMatrix - before) >> 20, WARM_FILMS, (afterLists - afterMatrix) >> 20, warmMs);
+    }
+
+    // Готовый список: только чтение
+    @Benchmark
+    public long[] lookup() {
+        return matrix.getSimilarFilms(warmFilmIds[random.nextInt(WARM_FILMS)], COUNT);
+    }
+
+    // Сборка списка с нуля: списки длиннее хранимых считаются по запросу
+    @Benchmark
+    public long[] computeFromScratch() {
+        return matrix.getSimilarFilms(randomFilm(), 21);
+    }
+
+    // Лайк и его снятие с поправкой всех затронутых списков
+    @Benchmark
+    public void likeAndUnlike() {
+        long filmId = randomFilm();
+        long userId = 1 + random.nextInt(USERS);
+        matrix.addLike(filmId, userId);
+        matrix.deleteLike(filmId, userId);
+    }
+
+    // Популярность по степенному закону: фильмы с малыми id лайкают чаще
+    private long randomFilm() {
+        double r = random.nextDouble();
+        return 1 + (long) (FILMS * r * r);
+    }
+}
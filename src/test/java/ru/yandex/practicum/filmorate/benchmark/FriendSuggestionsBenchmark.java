@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Запуск:
+// mvn test-compile dependency:build-classpath -Dmdep.includeScope=test -Dmdep.outputFile=target/cp.txt
+// java -cp target/test-classes:target/classes:$(cat target/cp.txt) org.openjdk.jmh.Main FriendSuggestions
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FriendSuggestionsBenchmark {
+    private static final int USERS = 100_000;
+    private static final int FRIENDS_OF_FRIEND = 150;
+    private static final int LIMIT = 10;
+    private static final long USER_ID = 1;
+
+    @Param({"50", "500", "5000"})
+    private int friendCount;
+
+    private FriendGraphIndex index;
+    private Map<Long, Set<Long>> graph;
+
+    @Setup
+    public void buildGraph() {
+        index = new FriendGraphIndex(null);
+        graph = new HashMap<>();
+        Random random = new Random(42);
+        addFriends(USER_ID, friendCount, random);
+        for (long friendId : graph.get(USER_ID)) {
+            addFriends(friendId, FRIENDS_OF_FRIEND, random);
+        }
+    }
+
+    @Benchmark
+    public long[] primitiveTopK() {
+        return index.getFriendSuggestions(USER_ID, LIMIT);
+    }
+
+    // Прямолинейный вариант для сравнения: HashMap<Long, Integer> и полная сортировка кандидатов
+    @Benchmark
+    public void boxedSort(Blackhole blackhole) {
+        Set<Long> userFriends = graph.get(USER_ID);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Long friendId : userFriends) {
+            for (Long candidateId : graph.getOrDefault(friendId, Set.of())) {
+                if (candidateId != USER_ID && !userFriends.contains(candidateId)) {
+                    counts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(LIMIT)
+                .forEach(blackhole::consume);
+    }
+
+    private void addFriends(long userId, int count, Random random) {
+        Set<Long> friends = graph.computeIfAbsent(userId, k -> new HashSet<>());
+        while (friends.size() < count) {
+            long friendId = 1 + random.nextInt(USERS);
+            if (friendId != userId && friends.add(friendId)) {
+                index.addFriend(userId, friendId);
+            }
+        }
+    }
+}
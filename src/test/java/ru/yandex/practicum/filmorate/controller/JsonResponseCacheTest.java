@@ -0,0 +1,139 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonResponseCacheTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void shouldServeStoredBytesUntilETagChanges() {
+        JsonResponseCache cache = new JsonResponseCache(new ObjectMapper(), registry, 1 << 20);
+
+        byte[] first = cache.respond("film:1", "\"a-1\"", () -> load("Матрица"), request(null)).getBody();
+        byte[] second = cache.respond("film:1", "\"a-1\"", () -> load("Матрица"), request(null)).getBody();
+        byte[] changed = cache.respond("film:1", "\"a-2\"", () -> load("Матрица 2"), request(null)).getBody();
+
+        assertThat(second).isSameAs(first);
+        assertThat(new String(changed, StandardCharsets.UTF_8)).isEqualTo("[\"Матрица 2\"]");
+        assertThat(loads).hasValue(2);
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(registry.get("filmorate.json.cache.hit.ratio").gauge().value()).isEqualTo(1.0 / 3);
+    }
+
+    @Test
+    public void shouldCompressOnceForGzipClients() throws IOException {
+        JsonResponseCache cache = new JsonResponseCache(new ObjectMapper(), registry, 1 << 20);
+        byte[] json = cache.respond("popular:10", "\"a-1\"", () -> load("Матрица"), request(null)).getBody();
+
+        ResponseEntity<byte[]> gzipped = cache.respond("popular:10", "\"a-1\"", () -> load("Матрица"),
+                request("gzip, deflate"));
+        ResponseEntity<byte[]> again = cache.respond("popular:10", "\"a-1\"", () -> load("Матрица"),
+                request("gzip"));
+
+        assertThat(gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipped.getHeaders().getFirst(HttpHeaders.VARY)).isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(again.getBody()).isSameAs(gzipped.getBody());
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.getBody()))) {
+            assertThat(in.readAllBytes()).isEqualTo(json);
+        }
+        assertThat(cache.bytes()).isGreaterThan(json.length + gzipped.getBody().length);
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    public void shouldTagGzipVariantSeparately() {
+        JsonResponseCache cache = new JsonResponseCache(new ObjectMapper(), registry, 1 << 20);
+        MockHttpServletResponse plain = new MockHttpServletResponse();
+        MockHttpServletResponse compressed = new MockHttpServletResponse();
+
+        cache.respond("film:1", "\"a-1\"", () -> load("Матрица"), request(null, null, plain));
+        cache.respond("film:1", "\"a-1\"", () -> load("Матрица"), request("gzip", null, compressed));
+
+        assertThat(plain.getHeader(HttpHeaders.ETAG)).isEqualTo("\"a-1\"");
+        assertThat(compressed.getHeader(HttpHeaders.ETAG)).isEqualTo("\"a-1-gz\"");
+        // ETag одного представления не подтверждает другое
+        assertThat(cache.respond("film:1", "\"a-1\"", () -> load("Матрица"),
+                request("gzip", "\"a-1\"", new MockHttpServletResponse()))).isNotNull();
+        assertThat(cache.respond("film:1", "\"a-1\"", () -> load("Матрица"),
+                request(null, "\"a-1-gz\"", new MockHttpServletResponse()))).isNotNull();
+        assertThat(cache.respond("film:1", "\"a-1\"", () -> load("Матрица"),
+                request("gzip", "\"a-1-gz\"", new MockHttpServletResponse()))).isNull();
+        assertThat(cache.respond("film:1", "\"a-1\"", () -> load("Матрица"),
+                request(null, "\"a-1\"", new MockHttpServletResponse()))).isNull();
+    }
+
+    @Test
+    public void shouldRespectGzipQuality() {
+        assertThat(JsonResponseCache.acceptsGzip(null)).isFalse();
+        assertThat(JsonResponseCache.acceptsGzip("gzip")).isTrue();
+        assertThat(JsonResponseCache.acceptsGzip("deflate, GZIP;q=0.5")).isTrue();
+        assertThat(JsonResponseCache.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(JsonResponseCache.acceptsGzip("gzip; q=0.000, identity")).isFalse();
+        assertThat(JsonResponseCache.acceptsGzip("*;q=0.1")).isTrue();
+        assertThat(JsonResponseCache.acceptsGzip("gzip;q=0, *")).isFalse();
+        assertThat(JsonResponseCache.acceptsGzip("deflate, br")).isFalse();
+        assertThat(JsonResponseCache.acceptsGzip("gzip;q=abc")).isFalse();
+
+        JsonResponseCache cache = new JsonResponseCache(new ObjectMapper(), registry, 1 << 20);
+        ResponseEntity<byte[]> response = cache.respond("film:1", "\"a-1\"", () -> load("Матрица"),
+                request("gzip;q=0, identity"));
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8)).isEqualTo("[\"Матрица\"]");
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyRequestedWhenFull() {
+        // Запись около 900 байт: в 8000 байт помещается восемь записей
+        JsonResponseCache cache = new JsonResponseCache(new ObjectMapper(), registry, 8000);
+        String title = "x".repeat(870);
+        for (int i = 1; i <= 8; i++) {
+            cache.respond("film:" + i, "\"a-1\"", () -> load(title), request(null));
+        }
+        cache.respond("film:1", "\"a-1\"", () -> load(title), request(null));
+        cache.respond("film:9", "\"a-1\"", () -> load(title), request(null));
+        loads.set(0);
+
+        cache.respond("film:1", "\"a-1\"", () -> load(title), request(null));
+        cache.respond("film:2", "\"a-1\"", () -> load(title), request(null));
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.bytes()).isLessThanOrEqualTo(8000);
+    }
+
+    private List<String> load(String title) {
+        loads.incrementAndGet();
+        return List.of(title);
+    }
+
+    private ServletWebRequest request(String acceptEncoding) {
+        return request(acceptEncoding, null, new MockHttpServletResponse());
+    }
+
+    private ServletWebRequest request(String acceptEncoding, String ifNoneMatch, MockHttpServletResponse response) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/films/1");
+        if (acceptEncoding != null) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        if (ifNoneMatch != null) {
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        }
+        return new ServletWebRequest(request, response);
+    }
+}
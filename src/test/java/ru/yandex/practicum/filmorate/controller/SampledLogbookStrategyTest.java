@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.zalando.logbook.Correlation;
+import org.zalando.logbook.HttpRequest;
+import org.zalando.logbook.HttpResponse;
+import org.zalando.logbook.Precorrelation;
+import org.zalando.logbook.Sink;
+
+import java.io.IOException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class SampledLogbookStrategyTest {
+    private final HttpRequest request = mock(HttpRequest.class);
+    private final Sink sink = mock(Sink.class);
+    private int exchanges;
+
+    @BeforeEach
+    public void returnSameMessages() throws IOException {
+        when(request.withBody()).thenReturn(request);
+        when(request.withoutBody()).thenReturn(request);
+    }
+
+    @Test
+    public void shouldNotBufferBodiesOfUnsampledSuccesses() throws IOException {
+        SampledLogbookStrategy strategy = new SampledLogbookStrategy(0, 400);
+
+        HttpResponse ok = exchange(strategy, 200);
+        HttpResponse notModified = exchange(strategy, 304);
+
+        verify(request, never()).withBody();
+        verify(request, times(2)).withoutBody();
+        verify(ok, never()).withBody();
+        verify(ok).withoutBody();
+        verify(notModified).withoutBody();
+        verifyNoInteractions(sink);
+    }
+
+    @Test
+    public void shouldAlwaysWriteErrors() throws IOException {
+        SampledLogbookStrategy strategy = new SampledLogbookStrategy(0, 400);
+
+        HttpResponse error = exchange(strategy, 404);
+
+        // Обмен не попал в выборку: ошибка пишется, но без тел
+        verify(error).withoutBody();
+        verify(sink).writeBoth(any(Correlation.class), eq(request), eq(error));
+        verifyNoMoreInteractions(sink);
+    }
+
+    @Test
+    public void shouldWriteEverySuccessWithBodiesWhenSampleRateIsOne() throws IOException {
+        SampledLogbookStrategy strategy = new SampledLogbookStrategy(1, 400);
+
+        for (int i = 0; i < 10; i++) {
+            HttpResponse ok = exchange(strategy, 200);
+            verify(ok).withBody();
+        }
+
+        verify(request, times(10)).withBody();
+        verify(request, never()).withoutBody();
+        verify(sink, times(10)).writeBoth(any(), any(), any());
+    }
+
+    // Тот же порядок вызовов, что у фильтра Logbook: обработка и запись запроса, обработка ответа, запись ответа
+    private HttpResponse exchange(SampledLogbookStrategy strategy, int status) throws IOException {
+        String id = "exchange-" + exchanges++;
+        Precorrelation precorrelation = mock(Precorrelation.class);
+        when(precorrelation.getId()).thenReturn(id);
+        Correlation correlation = mock(Correlation.class);
+        when(correlation.getId()).thenReturn(id);
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.withBody()).thenReturn(response);
+        when(response.withoutBody()).thenReturn(response);
+        when(response.getStatus()).thenReturn(status);
+
+        HttpRequest processed = strategy.process(request);
+        strategy.write(precorrelation, processed, sink);
+        HttpResponse processedResponse = strategy.process(processed, response);
+        strategy.write(correlation, processed, processedResponse, sink);
+        return response;
+    }
+}
@@ -0,0 +1,144 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.assertj.core.api.Assertions.*;
+
+public class IdSetTest {
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Test
+    public void shouldKeepIdsSortedAndUnique() {
+        IdSet ids = new IdSet();
+
+        assertThat(ids.add(5L)).isTrue();
+        assertThat(ids.add(1L)).isTrue();
+        assertThat(ids.add(9L)).isTrue();
+        assertThat(ids.add(5L)).isFalse();
+
+        assertThat(ids).containsExactly(1L, 5L, 9L);
+        assertThat(ids.contains(5L)).isTrue();
+        assertThat(ids.contains(Long.valueOf(4L))).isFalse();
+        assertThat(ids.contains("5")).isFalse();
+        assertThat(IdSet.of(3, 1, 3, 2).toLongArray()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    public void shouldRemoveIds() {
+        IdSet ids = IdSet.of(1, 2, 3, 4);
+
+        assertThat(ids.remove(2L)).isTrue();
+        assertThat(ids.remove(Long.valueOf(7L))).isFalse();
+
+        Iterator<Long> iterator = ids.iterator();
+        iterator.next();
+        iterator.remove();
+
+        assertThat(ids).containsExactly(3L, 4L);
+    }
+
+    @Test
+    public void shouldIntersectSortedSets() {
+        IdSet first = IdSet.of(1, 3, 5, 7, 9);
+        IdSet second = IdSet.of(2, 3, 4, 9, 10);
+
+        assertThat(first.intersection(second)).containsExactly(3L, 9L);
+        assertThat(first.intersection(new IdSet())).isEmpty();
+        assertThat(first.intersectionSize(second)).isEqualTo(2);
+        assertThat(first.intersectionSize(new IdSet())).isZero();
+    }
+
+    @Test
+    public void shouldCountIntersectionWithMuchLargerSet() {
+        IdSet large = new IdSet();
+        for (long id = 0; id < 10_000; id += 2) {
+            large.add(id);
+        }
+        IdSet small = IdSet.of(0, 1, 500, 501, 9_998, 20_000);
+
+        assertThat(small.intersectionSize(large)).isEqualTo(3);
+        assertThat(large.intersectionSize(small)).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldMatchTreeSetUnderRandomInsertsAndRemovals() throws Exception {
+        Random random = new Random(42);
+        IdSet ids = new IdSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        // Сначала упорядоченное заполнение, затем вставки и удаления вразнобой — множество делится на блоки
+        for (long id = 0; id < 20_000; id += 2) {
+            ids.add(id);
+            expected.add(id);
+        }
+        for (int i = 0; i < 30_000; i++) {
+            long id = random.nextInt(40_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(ids.remove(id)).isEqualTo(expected.remove(id));
+            } else {
+                assertThat(ids.add(id)).isEqualTo(expected.add(id));
+            }
+        }
+
+        assertThat(ids).hasSize(expected.size()).containsExactlyElementsOf(expected);
+        assertThat(ids.hashCode()).isEqualTo(expected.hashCode());
+        assertThat(ids).isEqualTo(new IdSet(expected));
+        assertThat(ids.contains(expected.first())).isTrue();
+        assertThat(ids.contains(40_001L)).isFalse();
+
+        IdSet odd = new IdSet();
+        for (long id = 39_999; id > 0; id -= 2) {
+            odd.add(id);
+        }
+        Set<Long> common = new TreeSet<>(expected);
+        common.retainAll(odd);
+        assertThat(ids.intersection(odd)).containsExactlyElementsOf(common);
+        assertThat(odd.intersectionSize(ids)).isEqualTo(common.size());
+        assertThat(objectMapper.writeValueAsString(ids))
+                .isEqualTo(objectMapper.writeValueAsString(expected));
+
+        Iterator<Long> iterator = ids.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 3 == 0) {
+                iterator.remove();
+            }
+        }
+        expected.removeIf(id -> id % 3 == 0);
+        assertThat(ids).containsExactlyElementsOf(expected);
+
+        expected.forEach(ids::remove);
+        assertThat(ids).isEmpty();
+        assertThat(ids.add(7L)).isTrue();
+        assertThat(ids).containsExactly(7L);
+    }
+
+    @Test
+    public void shouldBeEqualToOtherSetsWithSameIds() {
+        IdSet ids = new IdSet(Set.of(3L, 1L, 2L));
+
+        assertThat(ids).isEqualTo(Set.of(1L, 2L, 3L));
+        assertThat(Set.of(1L, 2L, 3L)).isEqualTo(ids);
+        assertThat(ids.hashCode()).isEqualTo(Set.of(1L, 2L, 3L).hashCode());
+        assertThat(ids).isEqualTo(IdSet.of(1, 2, 3));
+    }
+
+    @Test
+    public void shouldSerializeAsJsonArray() throws Exception {
+        Film film = new Film();
+        film.setLikes(IdSet.of(7, 3));
+
+        String json = objectMapper.writeValueAsString(film);
+        Film restored = objectMapper.readValue(json, Film.class);
+
+        assertThat(json).contains("\"likes\":[3,7]");
+        assertThat(restored.getLikes())
+                .isInstanceOf(IdSet.class)
+                .containsExactly(3L, 7L);
+    }
+}
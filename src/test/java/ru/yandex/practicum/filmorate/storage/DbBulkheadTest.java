@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import ru.yandex.practicum.filmorate.exception.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.storage.db.DbBulkhead;
+import ru.yandex.practicum.filmorate.storage.db.DbBulkheadDataSourceWrapper;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DbBulkheadTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    public void shouldRejectImmediatelyWhenQueueIsFull() {
+        DbBulkhead bulkhead = new DbBulkhead(registry, 1, 0, 10_000);
+        bulkhead.acquire();
+
+        long start = System.nanoTime();
+        assertThatThrownBy(bulkhead::acquire).isInstanceOf(ServiceUnavailableException.class);
+
+        assertThat(System.nanoTime() - start).isLessThan(1_000_000_000L);
+        assertThat(registry.get("filmorate.db.bulkhead.rejected").tag("reason", "queue-full").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectAfterWaitTimeoutAndRecordQueueTime() {
+        DbBulkhead bulkhead = new DbBulkhead(registry, 1, 10, 50);
+        bulkhead.acquire();
+
+        assertThatThrownBy(bulkhead::acquire).isInstanceOf(ServiceUnavailableException.class);
+        bulkhead.release();
+        bulkhead.acquire();
+
+        assertThat(registry.get("filmorate.db.bulkhead.rejected").tag("reason", "timeout").counter().count())
+                .isEqualTo(1);
+        assertThat(registry.get("filmorate.db.bulkhead.wait").timer().count()).isEqualTo(3);
+        assertThat(registry.get("filmorate.db.bulkhead.wait").timer().max(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(50);
+        assertThat(registry.get("filmorate.db.bulkhead.waiting").gauge().value()).isZero();
+    }
+
+    @Test
+    public void shouldReturnPermitOnceWhenConnectionIsClosed() throws Exception {
+        DbBulkhead bulkhead = new DbBulkhead(registry, 1, 0, 10_000);
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bulkhead");
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("dbBulkhead", bulkhead);
+        DbBulkheadDataSourceWrapper wrapper = new DbBulkheadDataSourceWrapper(
+                beanFactory.getBeanProvider(DbBulkhead.class));
+        DataSource dataSource = (DataSource) wrapper.postProcessAfterInitialization(h2, "dataSource");
+
+        Connection connection = dataSource.getConnection();
+        assertThatThrownBy(dataSource::getConnection).isInstanceOf(ServiceUnavailableException.class);
+        connection.close();
+        connection.close();
+
+        assertThat(registry.get("filmorate.db.bulkhead.available").gauge().value()).isEqualTo(1);
+        try (Connection next = dataSource.getConnection()) {
+            assertThat(next.isValid(1)).isTrue();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.db.*;
+import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
+
+import java.time.LocalDate;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Версии меняются только после фиксации, поэтому тесты работают вне транзакции и чистят таблицы сами
+@JdbcTest
+@Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
+        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class, UserRowMapper.class,
+        UserDbStorage.class, FriendDbStorage.class, FriendGraphIndex.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class EntityVersionsTest {
+    private final EntityVersions versions;
+    private final FilmDbStorage filmDbStorage;
+    private final LikesDbStorage likesDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final FriendDbStorage friendDbStorage;
+    private final GenreDbStorage genreDbStorage;
+    private final MpaRatingDbStorage mpaRatingDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private Film film;
+    private User user;
+    private User friend;
+
+    @BeforeEach
+    public void createFilmAndUsers() {
+        Film newFilm = new Film();
+        newFilm.setName("Матрица");
+        newFilm.setDescription("Хакер Нео узнает, что его мир - виртуальная реальность");
+        newFilm.setReleaseDate(LocalDate.of(1999, 3, 31));
+        newFilm.setDuration(136);
+        newFilm.setMpaRating(mpaRatingDbStorage.getMpaById(2));
+        newFilm.setFilmGenres(Set.of(genreDbStorage.getGenreById(6)));
+        film = filmDbStorage.createFilm(newFilm);
+
+        user = userDbStorage.createUser(newUser("ivan"));
+        friend = userDbStorage.createUser(newUser("petr"));
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        jdbcTemplate.update("DELETE FROM LIKES");
+        jdbcTemplate.update("DELETE FROM FRIENDSHIPS");
+        jdbcTemplate.update("DELETE FROM FILM_GENRES");
+        jdbcTemplate.update("DELETE FROM FILMS");
+        jdbcTemplate.update("DELETE FROM USERS");
+    }
+
+    @Test
+    public void shouldChangeFilmVersionOnEveryWrite() {
+        long created = versions.getFilmVersion(film.getId());
+        assertThat(created).isPositive();
+
+        likesDbStorage.addLike(film.getId(), user.getId());
+        long liked = versions.getFilmVersion(film.getId());
+        assertThat(liked).isGreaterThan(created);
+        assertThat(versions.getFilmsVersion()).isEqualTo(liked);
+
+        film.setName("Матрица: Перезагрузка");
+        filmDbStorage.updateFilm(film);
+        long updated = versions.getFilmVersion(film.getId());
+        assertThat(updated).isGreaterThan(liked);
+
+        // Повторный лайк ничего не меняет, и ETag остается прежним
+        likesDbStorage.addLike(film.getId(), user.getId());
+        assertThat(versions.getFilmVersion(film.getId())).isEqualTo(updated);
+        assertThat(versions.toETag(created)).isNotEqualTo(versions.toETag(updated));
+    }
+
+    @Test
+    public void shouldChangeVersionOnlyAfterCommit() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        long before = versions.getFilmVersion(film.getId());
+
+        transaction.executeWithoutResult(status -> {
+            likesDbStorage.addLike(film.getId(), user.getId());
+            status.setRollbackOnly();
+        });
+        assertThat(versions.getFilmVersion(film.getId())).isEqualTo(before);
+
+        transaction.executeWithoutResult(status -> {
+            likesDbStorage.addLike(film.getId(), user.getId());
+            assertThat(versions.getFilmVersion(film.getId())).isEqualTo(before);
+        });
+        assertThat(versions.getFilmVersion(film.getId())).isGreaterThan(before);
+    }
+
+    @Test
+    public void shouldChangeUserVersionWhenFriendListChanges() {
+        long before = versions.getUserVersion(user.getId());
+        long friendBefore = versions.getUserVersion(friend.getId());
+
+        friendDbStorage.addFriend(user.getId(), friend.getId());
+        long added = versions.getUserVersion(user.getId());
+        friendDbStorage.deleteFriend(user.getId(), friend.getId());
+
+        assertThat(added).isGreaterThan(before);
+        assertThat(versions.getUserVersion(user.getId())).isGreaterThan(added);
+        // Дружба односторонняя: у друга список не меняется
+        assertThat(versions.getUserVersion(friend.getId())).isEqualTo(friendBefore);
+    }
+
+    @Test
+    public void shouldKeepReferenceVersionsWhenReloadedDataIsUnchanged() {
+        long genres = versions.getGenresVersion();
+        long mpa = versions.getMpaVersion();
+
+        genreDbStorage.refresh();
+        mpaRatingDbStorage.refresh();
+
+        assertThat(genres).isPositive();
+        assertThat(versions.getGenresVersion()).isEqualTo(genres);
+        assertThat(versions.getMpaVersion()).isEqualTo(mpa);
+    }
+
+    private User newUser(String login) {
+        User newUser = new User();
+        newUser.setEmail(login + "@mail.ru");
+        newUser.setLogin(login);
+        newUser.setName(login);
+        newUser.setBirthday(LocalDate.of(1990, 5, 15));
+        return newUser;
+    }
+}
@@ -7,16 +7,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.LikesView;
 import ru.yandex.practicum.filmorate.storage.db.*;
 import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.*;
@@ -24,7 +32,8 @@ import static org.assertj.core.api.Assertions.*;
 @JdbcTest
 @Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
         MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class,
-        LikesDbStorage.class})
+        LikesDbStorage.class, FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class,
+        EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class FilmDbStorageTest {
@@ -32,6 +41,7 @@ public class FilmDbStorageTest {
     private final FilmDbStorage filmDbStorage;
     private final MpaRatingDbStorage mpaRatingDbStorage;
     private final GenreDbStorage genreDbStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     private Film createdFilm1;
     private Film createdFilm2;
@@ -90,6 +100,38 @@ public class FilmDbStorageTest {
                 .hasFieldOrPropertyWithValue("name", "Король Лев");
     }
 
+    @Test
+    public void shouldCreateFilmsInBatch() {
+        Film film3 = new Film();
+        film3.setName("Король Лев");
+        film3.setDescription("Молодой лев Симба борется за свое право на трон после убийства отца");
+        film3.setReleaseDate(LocalDate.of(1994, 6, 15));
+        film3.setDuration(88);
+        film3.setMpaRating(mpaRatingDbStorage.getMpaById(1));
+        film3.setFilmGenres(new HashSet<>(Set.of(genreDbStorage.getGenreById(3))));
+
+        Film film4 = new Film();
+        film4.setName("Интерстеллар");
+        film4.setDescription("Группа исследователей отправляется через червоточину");
+        film4.setReleaseDate(LocalDate.of(2014, 11, 6));
+        film4.setDuration(169);
+
+        List<Film> createdFilms = filmDbStorage.createFilms(List.of(film3, film4));
+
+        assertThat(createdFilms)
+                .extracting(Film::getId)
+                .doesNotContainNull()
+                .doesNotHaveDuplicates();
+        assertThat(filmDbStorage.getFilm(createdFilms.get(0).getId()))
+                .hasFieldOrPropertyWithValue("name", "Король Лев");
+        assertThat(filmDbStorage.getFilm(createdFilms.get(0).getId()).getFilmGenres())
+                .extracting(Genre::getId)
+                .containsExactly(3);
+        assertThat(filmDbStorage.getFilm(createdFilms.get(1).getId()).getMpaRating().getId()).isEqualTo(1);
+        assertThat(filmDbStorage.getExistingIds(Set.of(createdFilms.get(1).getId(), 999L)))
+                .containsExactly(createdFilms.get(1).getId());
+    }
+
     @Test
     public void shouldUpdateFilm() {
         createdFilm1.setName("Матрица 2.0");
@@ -112,6 +154,85 @@ public class FilmDbStorageTest {
                 .contains("Матрица", "Форрест Гамп");
     }
 
+    @Test
+    public void shouldFindFilmsPage() {
+        Collection<Film> firstPage = filmDbStorage.getFilmsPage(0, 1);
+        Collection<Film> secondPage = filmDbStorage.getFilmsPage(createdFilm1.getId(), 10);
+
+        assertThat(firstPage)
+                .hasSize(1)
+                .extracting(Film::getName)
+                .containsExactly("Матрица");
+        assertThat(firstPage.iterator().next().getFilmGenres())
+                .extracting(Genre::getId)
+                .containsExactlyInAnyOrder(2, 6);
+        assertThat(secondPage)
+                .hasSize(1)
+                .extracting(Film::getName)
+                .containsExactly("Форрест Гамп");
+    }
+
+    @Test
+    public void shouldStreamAllFilms() {
+        List<Film> films = new ArrayList<>();
+
+        filmDbStorage.streamAllFilms(films::add);
+
+        assertThat(films)
+                .extracting(Film::getName)
+                .containsExactly("Матрица", "Форрест Гамп");
+        assertThat(films.get(0).getFilmGenres())
+                .extracting(Genre::getId)
+                .containsExactly(2, 6);
+        assertThat(films.get(1).getFilmGenres())
+                .extracting(Genre::getId)
+                .containsExactly(1, 2);
+        assertThat(films.get(1).getLikes()).isEmpty();
+    }
+
+    @Test
+    public void shouldMergeGenresAndLikesIntoStreamedFilms() {
+        Long user1 = createUser("a");
+        Long user2 = createUser("b");
+        Long user3 = createUser("c");
+
+        // Фильм без жанров и лайков стоит между фильмами, у которых они есть
+        Film film3 = new Film();
+        film3.setName("Король Лев");
+        film3.setDescription("Молодой лев Симба борется за свое право на трон после убийства отца");
+        film3.setReleaseDate(LocalDate.of(1994, 6, 15));
+        film3.setDuration(88);
+        Film createdFilm3 = filmDbStorage.createFilm(film3);
+
+        Film film4 = new Film();
+        film4.setName("Интерстеллар");
+        film4.setDescription("Группа исследователей отправляется через червоточину");
+        film4.setReleaseDate(LocalDate.of(2014, 11, 6));
+        film4.setDuration(169);
+        film4.setFilmGenres(new HashSet<>(Set.of(genreDbStorage.getGenreById(3))));
+        Film createdFilm4 = filmDbStorage.createFilm(film4);
+
+        likesDbStorage.addLike(createdFilm1.getId(), user2);
+        likesDbStorage.addLike(createdFilm1.getId(), user1);
+        likesDbStorage.addLike(createdFilm2.getId(), user3);
+        likesDbStorage.addLike(createdFilm4.getId(), user3);
+        likesDbStorage.addLike(createdFilm4.getId(), user1);
+
+        List<Film> films = new ArrayList<>();
+        filmDbStorage.streamAllFilms(films::add);
+
+        assertThat(films)
+                .extracting(Film::getId)
+                .containsExactly(createdFilm1.getId(), createdFilm2.getId(), createdFilm3.getId(),
+                        createdFilm4.getId());
+        assertThat(films)
+                .extracting(film -> List.copyOf(film.getLikes()))
+                .containsExactly(List.of(user1, user2), List.of(user3), List.of(), List.of(user1, user3));
+        assertThat(films)
+                .extracting(film -> film.getFilmGenres().stream().map(Genre::getId).toList())
+                .containsExactly(List.of(2, 6), List.of(1, 2), List.of(), List.of(3));
+    }
+
     @Test
     public void shouldFindFilm() {
         Film film = filmDbStorage.getFilm(createdFilm1.getId());
@@ -121,6 +242,42 @@ public class FilmDbStorageTest {
                 .hasFieldOrPropertyWithValue("name", "Матрица");
     }
 
+    @Test
+    public void shouldFindFilmWithLikeCountOnly() {
+        jdbcTemplate.update("INSERT INTO USERS(EMAIL, LOGIN, BIRTHDAY) VALUES ('a@mail.ru', 'a', '1990-01-01')");
+        Long userId = jdbcTemplate.queryForObject("SELECT MAX(USER_ID) FROM USERS", Long.class);
+        likesDbStorage.addLike(createdFilm1.getId(), userId);
+
+        Film film = filmDbStorage.getFilm(createdFilm1.getId(), LikesView.COUNT);
+        List<Film> popular = filmDbStorage.getFilmsByIds(List.of(createdFilm1.getId()), LikesView.COUNT);
+        List<Film> page = filmDbStorage.getFilmsPage(0, 10, LikesView.COUNT);
+        List<Film> streamed = new ArrayList<>();
+        filmDbStorage.streamAllFilms(streamed::add, LikesView.COUNT);
+
+        assertThat(film.getLikes()).isNull();
+        assertThat(film.getLikeCount()).isEqualTo(1);
+        assertThat(film.getFilmGenres()).extracting(Genre::getId).containsExactly(2, 6);
+        assertThat(popular).extracting(Film::getLikeCount).containsExactly(1);
+        assertThat(page).extracting(Film::getLikeCount).containsExactly(1, 0);
+        assertThat(streamed).extracting(Film::getLikeCount).containsExactly(1, 0);
+        assertThat(filmDbStorage.getAllFilms(LikesView.COUNT)).extracting(Film::getLikes).containsOnlyNulls();
+        assertThat(filmDbStorage.getFilm(createdFilm1.getId()).getLikeCount()).isNull();
+    }
+
+    @Test
+    public void shouldFindFilmsByIdsInRequestedOrder() {
+        List<Film> films = filmDbStorage.getFilmsByIds(List.of(createdFilm2.getId(), 999L, createdFilm1.getId()));
+
+        assertThat(films)
+                .extracting(Film::getName)
+                .containsExactly("Форрест Гамп", "Матрица");
+        assertThat(films.get(0).getFilmGenres())
+                .extracting(Genre::getName)
+                .containsExactly("Комедия", "Драма");
+        assertThat(films.get(1).getMpaRating())
+                .hasFieldOrPropertyWithValue("name", "PG");
+    }
+
     @Test
     public void shouldFindPopularFilm() {
         Collection<Film> films = filmDbStorage.getPopularFilms(1);
@@ -140,4 +297,10 @@ public class FilmDbStorageTest {
         assertThat(verification1).isTrue();
         assertThat(verification2).isFalse();
     }
+
+    private Long createUser(String login) {
+        jdbcTemplate.update("INSERT INTO USERS(EMAIL, LOGIN, BIRTHDAY) VALUES (?, ?, '1990-01-01')",
+                login + "@mail.ru", login);
+        return jdbcTemplate.queryForObject("SELECT MAX(USER_ID) FROM USERS", Long.class);
+    }
 }
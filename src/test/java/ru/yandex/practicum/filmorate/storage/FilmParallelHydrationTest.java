@@ -0,0 +1,111 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.db.*;
+import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Подзапросы идут на других соединениях и не видят данных незафиксированной транзакции,
+// поэтому тесты работают вне транзакции и чистят таблицы сами
+@JdbcTest(properties = "filmorate.films.parallel-hydration.enabled=true")
+@Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
+        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
+@AutoConfigureTestDatabase
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class FilmParallelHydrationTest {
+    private final FilmDbStorage filmDbStorage;
+    private final LikesDbStorage likesDbStorage;
+    private final GenreDbStorage genreDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final List<Long> filmIds = new ArrayList<>();
+
+    @BeforeEach
+    public void createFilmsWithLikes() {
+        for (int i = 0; i < 3; i++) {
+            jdbcTemplate.update("INSERT INTO USERS(EMAIL, LOGIN, BIRTHDAY) VALUES (?, ?, '1990-01-01')",
+                    "user" + i + "@mail.ru", "user" + i);
+        }
+        List<Long> userIds = jdbcTemplate.queryForList("SELECT USER_ID FROM USERS ORDER BY USER_ID", Long.class);
+
+        for (int i = 0; i < 3; i++) {
+            Film film = new Film();
+            film.setName("Фильм " + i);
+            film.setDescription("Описание " + i);
+            film.setReleaseDate(LocalDate.of(2000 + i, 1, 1));
+            film.setDuration(90);
+            film.setFilmGenres(Set.of(genreDbStorage.getGenreById(6 - i), genreDbStorage.getGenreById(1)));
+            long filmId = filmDbStorage.createFilm(film).getId();
+            filmIds.add(filmId);
+            // У первого фильма один лайк, у второго три, у третьего лайков нет
+            int likeCount = new int[]{1, 3, 0}[i];
+            for (int j = 0; j < likeCount; j++) {
+                likesDbStorage.addLike(filmId, userIds.get(j));
+            }
+        }
+    }
+
+    @AfterEach
+    public void cleanUp() {
+        jdbcTemplate.update("DELETE FROM LIKES");
+        jdbcTemplate.update("DELETE FROM FILM_GENRES");
+        jdbcTemplate.update("DELETE FROM FILMS");
+        jdbcTemplate.update("DELETE FROM USERS");
+    }
+
+    @Test
+    public void shouldHydrateAllFilmsLikeSequentialQueries() {
+        Collection<Film> films = filmDbStorage.getAllFilms();
+
+        assertThat(films)
+                .extracting(Film::getId)
+                .containsExactlyInAnyOrderElementsOf(filmIds);
+        // Сравнение с агрегатным запросом, который собирает жанры и лайки в одном SELECT
+        assertThat(films)
+                .filteredOn(film -> film.getLikes() != null)
+                .allSatisfy(film -> assertThat(film)
+                        .isEqualTo(filmDbStorage.getFilmsByIds(List.of(film.getId())).getFirst()));
+        assertThat(films)
+                .filteredOn(film -> film.getId().equals(filmIds.get(1)))
+                .singleElement()
+                .satisfies(film -> assertThat(film.getLikes()).hasSize(3));
+    }
+
+    @Test
+    public void shouldPropagateSubqueryErrorUnwrapped() {
+        jdbcTemplate.execute("ALTER TABLE LIKES RENAME TO LIKES_HIDDEN");
+        try {
+            assertThatThrownBy(filmDbStorage::getAllFilms).isInstanceOf(DataAccessException.class);
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE LIKES_HIDDEN RENAME TO LIKES");
+        }
+    }
+}
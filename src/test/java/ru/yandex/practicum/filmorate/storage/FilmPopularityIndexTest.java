@@ -0,0 +1,285 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.db.*;
+import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmPopularityIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@JdbcTest
+@Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
+        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class, UserRowMapper.class,
+        UserDbStorage.class, FriendDbStorage.class, FriendGraphIndex.class, FilmPopularityIndex.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class FilmPopularityIndexTest {
+    private final FilmPopularityIndex popularityIndex;
+    private final FilmDbStorage filmDbStorage;
+    private final LikesDbStorage likesDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final MpaRatingDbStorage mpaRatingDbStorage;
+    private final GenreDbStorage genreDbStorage;
+    private final JdbcTemplate jdbc;
+
+    private final List<Film> films = new ArrayList<>();
+    private final List<User> users = new ArrayList<>();
+
+    @BeforeEach
+    public void createFilmsAndUsers() {
+        for (int i = 0; i < 5; i++) {
+            Film film = new Film();
+            film.setName("Фильм " + i);
+            film.setDescription("Описание " + i);
+            film.setReleaseDate(LocalDate.of(2000 + i, 1, 1));
+            film.setDuration(90 + i);
+            film.setMpaRating(mpaRatingDbStorage.getMpaById(1));
+            films.add(filmDbStorage.createFilm(film));
+
+            User user = new User();
+            user.setEmail("user" + i + "@mail.ru");
+            user.setLogin("user" + i);
+            user.setName("Пользователь " + i);
+            user.setBirthday(LocalDate.of(1990, 1, 1 + i));
+            users.add(userDbStorage.createUser(user));
+        }
+
+        // Фильм 3 — три лайка, фильм 1 — два, фильм 4 — один
+        like(3, 0);
+        like(3, 1);
+        like(3, 2);
+        like(1, 0);
+        like(1, 1);
+        like(4, 4);
+    }
+
+    @Test
+    public void shouldMatchSqlRankingAfterRebuild() {
+        popularityIndex.rebuild();
+
+        assertThat(popularityIndex.getTopFilmIds(films.size()))
+                .containsExactlyElementsOf(sqlTopFilmIds(films.size()));
+        assertThat(popularityIndex.getTopFilmIds(2))
+                .containsExactly(films.get(3).getId(), films.get(1).getId());
+    }
+
+    @Test
+    public void shouldMatchSqlRankingAfterIncrementalUpdates() {
+        popularityIndex.rebuild();
+
+        like(0, 0);
+        like(0, 1);
+        like(0, 2);
+        like(0, 3);
+        likesDbStorage.deleteLike(films.get(3).getId(), users.get(2).getId());
+        popularityIndex.changeLikes(films.get(3).getId(), -1);
+
+        assertThat(popularityIndex.getTopFilmIds(films.size()))
+                .containsExactlyElementsOf(sqlTopFilmIds(films.size()));
+        assertThat(popularityIndex.getLikeCount(films.get(0).getId())).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldNotDriftWhenUnlikeArrivesBeforeLike() {
+        popularityIndex.rebuild();
+        long filmId = films.get(2).getId();
+
+        // Лайк и снятие лайка записаны в БД, а индекс получает изменения в обратном порядке
+        likesDbStorage.addLike(filmId, users.get(0).getId());
+        likesDbStorage.deleteLike(filmId, users.get(0).getId());
+        popularityIndex.changeLikes(filmId, -1);
+        popularityIndex.changeLikes(filmId, 1);
+
+        assertThat(popularityIndex.getLikeCount(filmId)).isZero();
+        assertThat(popularityIndex.getTopFilmIds(films.size()))
+                .containsExactlyElementsOf(sqlTopFilmIds(films.size()));
+    }
+
+    @Test
+    public void shouldNotCountLikesCommittedDuringRebuildTwice() {
+        long likedFilmId = films.get(2).getId();
+        long unlikedFilmId = films.get(3).getId();
+        LikesStorage noPendingLikes = mock(LikesStorage.class);
+        when(noPendingLikes.readWithPendingLikes(any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(0).get());
+        FilmPopularityIndex index = new FilmPopularityIndex(jdbc, noPendingLikes);
+        index.rebuild();
+
+        // Лайк начат до перестроения, снятие лайка — во время него; оба записываются в БД посреди чтения
+        // рейтинга, а до индекса доходят уже после подмены
+        index.beginLikeChange(likedFilmId);
+        AtomicBoolean committed = new AtomicBoolean();
+        when(noPendingLikes.getPendingLikesDelta(anyLong())).thenAnswer(invocation -> {
+            if (committed.compareAndSet(false, true)) {
+                likesDbStorage.addLike(likedFilmId, users.get(0).getId());
+                index.beginLikeChange(unlikedFilmId);
+                likesDbStorage.deleteLike(unlikedFilmId, users.get(0).getId());
+            }
+            return 0;
+        });
+        index.rebuild();
+        index.changeLikes(likedFilmId, 1);
+        index.changeLikes(unlikedFilmId, -1);
+
+        assertThat(committed).isTrue();
+        assertThat(index.getLikeCount(likedFilmId)).isEqualTo(1);
+        assertThat(index.getLikeCount(unlikedFilmId)).isEqualTo(2);
+        assertThat(index.getTopFilmIds(films.size())).containsExactlyElementsOf(sqlTopFilmIds(films.size()));
+
+        // После того как лайки в пути дошли, изменения снова применяются как обычно
+        index.beginLikeChange(likedFilmId);
+        likesDbStorage.addLike(likedFilmId, users.get(1).getId());
+        index.changeLikes(likedFilmId, 1);
+        assertThat(index.getLikeCount(likedFilmId)).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldRankNewFilmWithoutLikes() {
+        popularityIndex.rebuild();
+
+        Film film = new Film();
+        film.setName("Новинка");
+        film.setDescription("Без лайков");
+        film.setReleaseDate(LocalDate.of(2024, 1, 1));
+        film.setDuration(100);
+        Film created = filmDbStorage.createFilm(film);
+        popularityIndex.putFilm(created);
+
+        assertThat(popularityIndex.getTopFilmIds(films.size() + 1))
+                .containsExactlyElementsOf(sqlTopFilmIds(films.size() + 1))
+                .contains(created.getId());
+        assertThat(popularityIndex.containsFilm(created.getId())).isTrue();
+        assertThat(popularityIndex.containsFilm(created.getId() + 1)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchSqlRankingForEveryFilter() {
+        popularityIndex.rebuild();
+
+        // Фильмы 0 и 2 — жанр 1, MPA 2, 2001 год; фильмы 1 и 3 — жанры 1 и 2, MPA 1, 2000 год
+        for (int i = 0; i < 4; i++) {
+            Film film = films.get(i);
+            film.setFilmGenres(new HashSet<>(i % 2 == 0
+                    ? List.of(genreDbStorage.getGenreById(1))
+                    : List.of(genreDbStorage.getGenreById(1), genreDbStorage.getGenreById(2))));
+            film.setMpaRating(mpaRatingDbStorage.getMpaById(i % 2 == 0 ? 2 : 1));
+            film.setReleaseDate(LocalDate.of(i % 2 == 0 ? 2001 : 2000, 6, 1));
+            popularityIndex.putFilm(filmDbStorage.updateFilm(film));
+        }
+        like(2, 3);
+
+        assertFiltersMatchSql();
+        assertThat(popularityIndex.getTopFilmIds(10, 1, 2, 2001))
+                .containsExactly(films.get(2).getId(), films.get(0).getId());
+        assertThat(popularityIndex.getTopFilmIds(10, 2, 2, null)).isEmpty();
+
+        popularityIndex.rebuild();
+        assertFiltersMatchSql();
+    }
+
+    @Test
+    public void shouldKeepQueriedFilterCombinationsUpToDate() {
+        popularityIndex.rebuild();
+        // Все сочетания фильтров запрошены до изменений, в том числе пустые
+        assertFiltersMatchSql();
+
+        // Фильм 0 переходит в жанр 2, MPA 2 и 2001 год, фильм 3 — в жанр 1 и 2004 год
+        Film moved = films.get(0);
+        moved.setFilmGenres(new HashSet<>(List.of(genreDbStorage.getGenreById(2))));
+        moved.setMpaRating(mpaRatingDbStorage.getMpaById(2));
+        moved.setReleaseDate(LocalDate.of(2001, 6, 1));
+        popularityIndex.putFilm(filmDbStorage.updateFilm(moved));
+        Film other = films.get(3);
+        other.setFilmGenres(new HashSet<>(List.of(genreDbStorage.getGenreById(1))));
+        other.setReleaseDate(LocalDate.of(2004, 6, 1));
+        popularityIndex.putFilm(filmDbStorage.updateFilm(other));
+        like(0, 1);
+        like(0, 2);
+        like(0, 3);
+        like(0, 4);
+
+        assertThat(popularityIndex.getTopFilmIds(10, 2, 2, 2001)).containsExactly(moved.getId());
+        assertFiltersMatchSql();
+    }
+
+    private void assertFiltersMatchSql() {
+        List<Integer> genreIds = Arrays.asList(null, 1, 2, 3);
+        List<Integer> mpaIds = Arrays.asList(null, 1, 2, 3);
+        List<Integer> years = Arrays.asList(null, 2000, 2001, 2004, 2010);
+        for (Integer genreId : genreIds) {
+            for (Integer mpaId : mpaIds) {
+                for (Integer year : years) {
+                    for (int count : new int[]{1, 10}) {
+                        assertThat(popularityIndex.getTopFilmIds(count, genreId, mpaId, year))
+                                .as("genreId=%s, mpaId=%s, year=%s, count=%s", genreId, mpaId, year, count)
+                                .containsExactlyElementsOf(sqlTopFilmIds(count, genreId, mpaId, year));
+                    }
+                }
+            }
+        }
+    }
+
+    private void like(int filmIndex, int userIndex) {
+        long filmId = films.get(filmIndex).getId();
+        likesDbStorage.addLike(filmId, users.get(userIndex).getId());
+        popularityIndex.changeLikes(filmId, 1);
+    }
+
+    private List<Long> sqlTopFilmIds(int count) {
+        return filmDbStorage.getPopularFilms(count).stream()
+                .map(Film::getId)
+                .toList();
+    }
+
+    // Эталон для фильтров: тот же порядок, что у индекса, посчитанный запросом к FILMS
+    private List<Long> sqlTopFilmIds(int count, Integer genreId, Integer mpaId, Integer year) {
+        List<String> conditions = new ArrayList<>();
+        List<Object> params = new ArrayList<>();
+        if (genreId != null) {
+            conditions.add("FILM_ID IN (SELECT FILM_ID FROM FILM_GENRES WHERE GENRE_ID = ?)");
+            params.add(genreId);
+        }
+        if (mpaId != null) {
+            conditions.add("RATING_ID = ?");
+            params.add(mpaId);
+        }
+        if (year != null) {
+            conditions.add("EXTRACT(YEAR FROM RELEASE_DATE) = ?");
+            params.add(year);
+        }
+        params.add(count);
+        return jdbc.queryForList("SELECT FILM_ID FROM FILMS"
+                + (conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions))
+                + " ORDER BY LIKE_COUNT DESC, FILM_ID LIMIT ?", Long.class, params.toArray());
+    }
+}
@@ -7,10 +7,13 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.db.FriendDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
 
 import java.time.LocalDate;
 import java.util.Collection;
@@ -20,12 +23,14 @@ import java.util.Set;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @JdbcTest
-@Import({FriendDbStorage.class, UserRowMapper.class, UserDbStorage.class})
+@Import({FriendDbStorage.class, FriendGraphIndex.class, UserRowMapper.class, UserDbStorage.class, EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class FriendDbStorageTest {
     private final FriendDbStorage friendDbStorage;
     private final UserDbStorage userDbStorage;
+    private final FriendGraphIndex friendGraphIndex;
+    private final JdbcTemplate jdbcTemplate;
     private User createdUser1;
     private User createdUser2;
     private User createdUser3;
@@ -143,4 +148,54 @@ public class FriendDbStorageTest {
                 .containsEntry(createdUser2.getId(), friendDbStorage.getAllFriendsIdByUserId(id2))
                 .containsEntry(createdUser3.getId(), friendDbStorage.getAllFriendsIdByUserId(id3));
     }
+
+    @Test
+    public void shouldLoadFriendGraphFromDatabase() {
+        long id1 = createdUser1.getId();
+        long id2 = createdUser2.getId();
+        long id3 = createdUser3.getId();
+        String insertQuery = "INSERT INTO FRIENDSHIPS(USER_ID, FRIEND_ID) VALUES (?, ?)";
+        jdbcTemplate.update(insertQuery, id1, id3);
+        jdbcTemplate.update(insertQuery, id2, id3);
+
+        friendGraphIndex.rebuild();
+
+        assertThat(friendGraphIndex.getCommonFriendIds(id1, id2)).containsExactly(id3);
+        assertThat(friendDbStorage.getCommonFriends(id1, id2))
+                .extracting(User::getId)
+                .containsExactly(id3);
+
+        // Откат транзакции теста не затрагивает индекс в памяти
+        jdbcTemplate.update("DELETE FROM FRIENDSHIPS WHERE FRIEND_ID = ?", id3);
+        friendGraphIndex.rebuild();
+    }
+
+    @Test
+    public void shouldSuggestFriendsByMutualFriends() {
+        long id1 = createdUser1.getId();
+        long id2 = createdUser2.getId();
+        long id3 = createdUser3.getId();
+
+        User testUser4 = new User();
+        testUser4.setEmail("olga.smirnova@mail.ru");
+        testUser4.setLogin("olga_s");
+        testUser4.setName("Ольга Смирнова");
+        testUser4.setBirthday(LocalDate.of(1992, 1, 10));
+        long id4 = userDbStorage.createUser(testUser4).getId();
+
+        friendDbStorage.addFriend(id1, id2);
+        friendDbStorage.addFriend(id1, id3);
+        friendDbStorage.addFriend(id2, id1);
+        friendDbStorage.addFriend(id2, id4);
+        friendDbStorage.addFriend(id3, id4);
+        friendDbStorage.addFriend(id4, id3);
+
+        assertThat(friendDbStorage.getFriendSuggestions(id1, 10))
+                .extracting(User::getId)
+                .containsExactly(id4);
+        assertThat(friendDbStorage.getFriendSuggestions(id2, 10))
+                .extracting(User::getId)
+                .containsExactly(id3);
+        assertThat(friendDbStorage.getFriendSuggestions(id3, 10)).isEmpty();
+    }
 }
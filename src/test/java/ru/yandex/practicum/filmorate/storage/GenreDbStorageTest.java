@@ -7,6 +7,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.storage.db.FilmDbStorage;
@@ -16,6 +18,10 @@ import ru.yandex.practicum.filmorate.storage.db.MpaRatingDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
 
 import java.time.LocalDate;
 import java.util.Collection;
@@ -25,15 +31,18 @@ import java.util.Set;
 
 import static org.assertj.core.api.Assertions.*;
 
-@JdbcTest
+// Справочник перечитывается при каждом промахе, чтобы тест видел жанр, добавленный сразу после загрузки
+@JdbcTest(properties = "filmorate.reference.miss-refresh-interval-ms=0")
 @Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
-        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class})
+        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class GenreDbStorageTest {
     private final GenreDbStorage genreDbStorage;
     private final FilmDbStorage filmDbStorage;
     private final MpaRatingDbStorage mpaRatingDbStorage;
+    private final JdbcTemplate jdbcTemplate;
     private Film createdFilm1;
     private Film createdFilm2;
 
@@ -109,4 +118,27 @@ public class GenreDbStorageTest {
                 .containsEntry(createdFilm1.getId(), createdFilm1.getFilmGenres())
                 .containsEntry(createdFilm2.getId(), createdFilm2.getFilmGenres());
     }
+
+    @Test
+    public void shouldNotFindUnknownGenre() {
+        assertThatThrownBy(() -> genreDbStorage.getGenreById(999))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void shouldFindGenreAddedAfterCacheLoad() {
+        jdbcTemplate.update("INSERT INTO GENRES (GENRE_ID, GENRE_NAME) VALUES (7, 'Вестерн')");
+
+        Genre genre = genreDbStorage.getGenreById(7);
+
+        assertThat(genre).hasFieldOrPropertyWithValue("name", "Вестерн");
+        assertThat(genreDbStorage.getAllGenres()).hasSize(7);
+
+        genreDbStorage.getGenreById(1).setName("Изменено снаружи");
+        assertThat(genreDbStorage.getGenreById(1).getName()).isEqualTo("Комедия");
+
+        // Откат транзакции теста не затрагивает справочник в памяти
+        jdbcTemplate.update("DELETE FROM GENRES WHERE GENRE_ID = 7");
+        genreDbStorage.refresh();
+    }
 }
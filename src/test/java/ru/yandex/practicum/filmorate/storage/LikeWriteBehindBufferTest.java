@@ -0,0 +1,241 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.db.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.FriendDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.LikeWriteBehindBuffer;
+import ru.yandex.practicum.filmorate.storage.db.LikesDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.MpaRatingDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval-ms=3600000",
+        "filmorate.likes.write-behind.journal-dir=${java.io.tmpdir}/filmorate-likes-${random.uuid}"
+})
+@Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
+        MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class, UserRowMapper.class,
+        UserDbStorage.class, FriendDbStorage.class, FriendGraphIndex.class, LikeWriteBehindBuffer.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
+@AutoConfigureTestDatabase
+// Буфер пишет пачку в своей транзакции и узнает о коммите по afterCommit, поэтому тесты идут без общей транзакции
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class LikeWriteBehindBufferTest {
+    private static final String COUNT_LIKES_QUERY = "SELECT COUNT(*) FROM LIKES WHERE FILM_ID = ?";
+    private static final String LIKE_COUNT_QUERY = "SELECT LIKE_COUNT FROM FILMS WHERE FILM_ID = ?";
+
+    private final LikeWriteBehindBuffer writeBehindBuffer;
+    private final LikesDbStorage likesDbStorage;
+    private final FilmDbStorage filmDbStorage;
+    private final UserDbStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    private Film createdFilm;
+    private User createdUser;
+
+    @BeforeEach
+    public void createFilmAndUser() {
+        Film film = new Film();
+        film.setName("Матрица");
+        film.setDescription("Хакер Нео узнает, что его мир - виртуальная реальность");
+        film.setReleaseDate(LocalDate.of(1999, 3, 31));
+        film.setDuration(136);
+        createdFilm = filmDbStorage.createFilm(film);
+
+        User user = new User();
+        user.setEmail("ivan.petrov@mail.ru");
+        user.setLogin("ivan_petrov");
+        user.setName("Иван Петров");
+        user.setBirthday(LocalDate.of(1990, 5, 15));
+        createdUser = userDbStorage.createUser(user);
+    }
+
+    @AfterEach
+    public void deleteFilmAndUser() {
+        jdbcTemplate.update("DELETE FROM LIKES");
+        jdbcTemplate.update("DELETE FROM FILMS");
+        jdbcTemplate.update("DELETE FROM USERS");
+    }
+
+    @Test
+    public void shouldSeeOwnLikeBeforeFlush() {
+        boolean added = likesDbStorage.addLike(createdFilm.getId(), createdUser.getId());
+        boolean addedAgain = likesDbStorage.addLike(createdFilm.getId(), createdUser.getId());
+
+        assertThat(added).isTrue();
+        assertThat(addedAgain).isFalse();
+        assertThat(countLikesInTable()).isEqualTo(0);
+        assertThat(likesDbStorage.getLikesByFilmId(createdFilm.getId())).containsExactly(createdUser.getId());
+        assertThat(filmDbStorage.getFilm(createdFilm.getId()).getLikes()).containsExactly(createdUser.getId());
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm.getId())).isEqualTo(1);
+
+        writeBehindBuffer.flush();
+
+        assertThat(countLikesInTable()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, createdFilm.getId())).isEqualTo(1);
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm.getId())).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCollapseOppositeEvents() {
+        likesDbStorage.addLike(createdFilm.getId(), createdUser.getId());
+        likesDbStorage.deleteLike(createdFilm.getId(), createdUser.getId());
+
+        assertThat(likesDbStorage.getLikesByFilmId(createdFilm.getId())).isEmpty();
+        assertThat(likesDbStorage.deleteLike(createdFilm.getId(), createdUser.getId())).isFalse();
+
+        writeBehindBuffer.flush();
+
+        assertThat(countLikesInTable()).isEqualTo(0);
+        assertThat(jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, createdFilm.getId())).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReplayJournalAfterCrash(@TempDir Path journalDir) {
+        LikeWriteBehindBuffer crashed = newBuffer(journalDir);
+        crashed.start();
+        crashed.addLike(createdFilm.getId(), createdUser.getId());
+
+        // Буфер не сброшен и не остановлен — как при падении процесса
+        assertThat(countLikesInTable()).isEqualTo(0);
+
+        LikeWriteBehindBuffer restarted = newBuffer(journalDir);
+        restarted.start();
+
+        assertThat(countLikesInTable()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, createdFilm.getId())).isEqualTo(1);
+        restarted.stop();
+    }
+
+    @Test
+    public void shouldWriteFailedBatchBeforeNewerEvents(@TempDir Path journalDir) {
+        LikeWriteBehindBuffer buffer = new LikeWriteBehindBuffer(jdbcTemplate, failingFirst(2), 1000, 3_600_000,
+                journalDir.toString());
+        buffer.start();
+        long filmId = createdFilm.getId();
+        long userId = createdUser.getId();
+
+        buffer.addLike(filmId, userId);
+        buffer.flush();
+
+        // Пачка с лайком не записана, но по-прежнему видна: повторный лайк отклоняется, снятие принимается
+        assertThat(buffer.getPendingLikesDelta(filmId)).isEqualTo(1);
+        assertThat(buffer.addLike(filmId, userId)).isFalse();
+        assertThat(buffer.deleteLike(filmId, userId)).isTrue();
+
+        // Повтор снова неудачен: снятие лайка не уходит в БД раньше самого лайка
+        buffer.flush();
+        Set<Long> likes = new HashSet<>();
+        buffer.applyPendingLikes(filmId, likes);
+        assertThat(likes).isEmpty();
+        assertThat(buffer.getPendingLikesDelta(filmId)).isZero();
+        assertThat(countLikesInTable()).isEqualTo(0);
+
+        buffer.flush();
+
+        assertThat(countLikesInTable()).isEqualTo(0);
+        assertThat(jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, filmId)).isEqualTo(0);
+        assertThat(buffer.getPendingLikesDelta(filmId)).isZero();
+        buffer.stop();
+    }
+
+    @Test
+    public void shouldNotCommitBatchWhileLikeCountIsRead(@TempDir Path journalDir) throws Exception {
+        LikeWriteBehindBuffer buffer = newBuffer(journalDir);
+        buffer.start();
+        long filmId = createdFilm.getId();
+        buffer.addLike(filmId, createdUser.getId());
+
+        CompletableFuture<Void> flush = new CompletableFuture<>();
+        int count = buffer.readConsistently(() -> {
+            int stored = jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, filmId);
+            CompletableFuture.runAsync(buffer::flush).whenComplete((result, error) -> flush.complete(null));
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Пачка не фиксируется, пока счетчик и дельта читаются: лайк учтен ровно один раз
+            assertThat(flush).isNotDone();
+            return stored + buffer.getPendingLikesDelta(filmId);
+        });
+        flush.get(10, TimeUnit.SECONDS);
+
+        assertThat(count).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(LIKE_COUNT_QUERY, Integer.class, filmId)).isEqualTo(1);
+        assertThat(buffer.getPendingLikesDelta(filmId)).isZero();
+        buffer.stop();
+    }
+
+    private LikeWriteBehindBuffer newBuffer(Path journalDir) {
+        return new LikeWriteBehindBuffer(jdbcTemplate, transactionManager, 1000, 3_600_000,
+                journalDir.toString());
+    }
+
+    // Первые failures транзакций не открываются — как при недоступной БД
+    private PlatformTransactionManager failingFirst(int failures) {
+        AtomicInteger remaining = new AtomicInteger(failures);
+        return new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                if (remaining.getAndDecrement() > 0) {
+                    throw new CannotCreateTransactionException("БД недоступна");
+                }
+                return transactionManager.getTransaction(definition);
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                transactionManager.commit(status);
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                transactionManager.rollback(status);
+            }
+        };
+    }
+
+    private Integer countLikesInTable() {
+        return jdbcTemplate.queryForObject(COUNT_LIKES_QUERY, Integer.class, createdFilm.getId());
+    }
+}
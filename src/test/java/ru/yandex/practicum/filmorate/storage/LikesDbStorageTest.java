@@ -7,8 +7,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.db.*;
 import ru.yandex.practicum.filmorate.storage.db.mapper.FilmRowMapper;
@@ -16,17 +20,27 @@ import ru.yandex.practicum.filmorate.storage.db.mapper.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
 import ru.yandex.practicum.filmorate.storage.db.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FilmFeatureIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FilmTitleIndex;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.*;
 
 @JdbcTest
 @Import({GenreDbStorage.class, GenreRowMapper.class, FilmDbStorage.class, FilmRowMapper.class,
         MpaRatingRowMapper.class, MpaRatingDbStorage.class, LikesDbStorage.class, UserRowMapper.class,
-        UserDbStorage.class, FriendDbStorage.class})
+        UserDbStorage.class, FriendDbStorage.class, FriendGraphIndex.class,
+        FilmFeatureIndex.class, FilmSearchIndex.class, FilmTitleIndex.class, EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class LikesDbStorageTest {
@@ -35,6 +49,7 @@ public class LikesDbStorageTest {
     private final MpaRatingDbStorage mpaRatingDbStorage;
     private final GenreDbStorage genreDbStorage;
     private final UserDbStorage userDbStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     private Film createdFilm1;
     private User createdUser1;
@@ -73,6 +88,28 @@ public class LikesDbStorageTest {
                 .hasSize(1);
     }
 
+    @Test
+    public void shouldAddLikesInBatch() {
+        likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
+
+        User testUser2 = new User();
+        testUser2.setEmail("maria.sidorova@gmail.com");
+        testUser2.setLogin("maria_s");
+        testUser2.setName("Мария Сидорова");
+        testUser2.setBirthday(LocalDate.of(1985, 5, 15));
+        User createdUser2 = userDbStorage.createUser(testUser2);
+
+        boolean[] added = likesDbStorage.addLikes(List.of(
+                new Like(createdFilm1.getId(), createdUser1.getId()),
+                new Like(createdFilm1.getId(), createdUser2.getId()),
+                new Like(createdFilm1.getId(), createdUser2.getId())));
+
+        assertThat(added).containsExactly(false, true, false);
+        assertThat(likesDbStorage.getLikesByFilmId(createdFilm1.getId()))
+                .containsExactlyInAnyOrder(createdUser1.getId(), createdUser2.getId());
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(2);
+    }
+
     @Test
     public void shouldDeleteLike() {
         likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
@@ -93,4 +130,88 @@ public class LikesDbStorageTest {
                 .hasSize(1)
                 .contains(createdUser1.getId());
     }
+
+    @Test
+    public void shouldKeepLikeCountInStep() {
+        likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
+
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(1);
+
+        likesDbStorage.deleteLike(createdFilm1.getId(), createdUser1.getId());
+        likesDbStorage.deleteLike(createdFilm1.getId(), createdUser1.getId());
+
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRebuildLikeCounts() {
+        likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
+        jdbcTemplate.update("UPDATE FILMS SET LIKE_COUNT = 42 WHERE FILM_ID = ?", createdFilm1.getId());
+
+        int repaired = likesDbStorage.rebuildLikeCounts();
+
+        assertThat(repaired).isEqualTo(1);
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldReportAlreadyLiked() {
+        boolean first = likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
+        boolean second = likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId());
+
+        assertThat(first).isTrue();
+        assertThat(second).isFalse();
+        assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(1);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void shouldNotDuplicateLikesUnderConcurrency() throws Exception {
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger added = concurrently(executor, threads,
+                    () -> likesDbStorage.addLike(createdFilm1.getId(), createdUser1.getId()));
+
+            assertThat(added.get()).isEqualTo(1);
+            assertThat(likesDbStorage.getLikesByFilmId(createdFilm1.getId())).containsExactly(createdUser1.getId());
+            assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(1);
+
+            AtomicInteger deleted = concurrently(executor, threads,
+                    () -> likesDbStorage.deleteLike(createdFilm1.getId(), createdUser1.getId()));
+
+            assertThat(deleted.get()).isEqualTo(1);
+            assertThat(likesDbStorage.getLikesCountByFilmId(createdFilm1.getId())).isEqualTo(0);
+        } finally {
+            executor.shutdownNow();
+            // Тест работает вне транзакции, поэтому данные удаляются вручную
+            jdbcTemplate.update("DELETE FROM LIKES WHERE FILM_ID = ?", createdFilm1.getId());
+            jdbcTemplate.update("DELETE FROM FILM_GENRES WHERE FILM_ID = ?", createdFilm1.getId());
+            jdbcTemplate.update("DELETE FROM FILMS WHERE FILM_ID = ?", createdFilm1.getId());
+            jdbcTemplate.update("DELETE FROM USERS WHERE USER_ID = ?", createdUser1.getId());
+        }
+    }
+
+    private AtomicInteger concurrently(ExecutorService executor, int threads, Callable<Boolean> action)
+            throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < threads; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                if (action.call()) {
+                    succeeded.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            // Любое исключение из потока (ложная ошибка) провалит тест
+            future.get(30, TimeUnit.SECONDS);
+        }
+        return succeeded;
+    }
 }
@@ -6,20 +6,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.MpaRating;
 import ru.yandex.practicum.filmorate.storage.db.MpaRatingDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.mapper.MpaRatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
 
 import java.util.Collection;
 
 import static org.assertj.core.api.Assertions.*;
 
 @JdbcTest
-@Import({MpaRatingDbStorage.class, MpaRatingRowMapper.class})
+@Import({MpaRatingDbStorage.class, MpaRatingRowMapper.class, EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class MpaRatingDbStorageTest {
     private final MpaRatingDbStorage mpaRatingDbStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void shouldFindMpaById() {
@@ -37,4 +41,25 @@ public class MpaRatingDbStorageTest {
                 .extracting(MpaRating::getName)
                 .contains("G", "PG", "PG-13", "R", "NC-17");
     }
+
+    @Test
+    public void shouldNotFindUnknownMpa() {
+        assertThatThrownBy(() -> mpaRatingDbStorage.getMpaById(6))
+                .isInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void shouldNotReloadOnEveryUnknownId() {
+        MpaRatingDbStorage storage = new MpaRatingDbStorage(jdbcTemplate, new MpaRatingRowMapper(),
+                new EntityVersions(), 60_000);
+        storage.refresh();
+        jdbcTemplate.update("INSERT INTO MPA_RATINGS (RATING_ID, RATING_NAME) VALUES (6, 'NR')");
+
+        // Справочник только что загружен: промах отвечает 404 по снимку, не обращаясь к БД
+        assertThatThrownBy(() -> storage.getMpaById(6))
+                .isInstanceOf(NotFoundException.class);
+
+        storage.refresh();
+        assertThat(storage.getMpaById(6)).hasFieldOrPropertyWithValue("name", "NR");
+    }
 }
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.db.SlowQueryDataSourceWrapper;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SlowQueryDataSourceWrapperTest {
+    private final Logger logger = (Logger) LoggerFactory.getLogger(SlowQueryDataSourceWrapper.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final JdbcDataSource h2 = new JdbcDataSource();
+
+    @BeforeEach
+    public void attachAppender() {
+        appender.start();
+        logger.addAppender(appender);
+        h2.setURL("jdbc:h2:mem:slow-query;DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(h2).execute("CREATE TABLE IF NOT EXISTS T(ID INT, NAME VARCHAR)");
+    }
+
+    @AfterEach
+    public void detachAppender() {
+        logger.detachAppender(appender);
+        new JdbcTemplate(h2).execute("DROP TABLE T");
+    }
+
+    @Test
+    public void shouldLogSqlWithParametersWhenThresholdIsCrossed() {
+        JdbcTemplate jdbc = new JdbcTemplate(wrap(0));
+
+        jdbc.update("INSERT INTO T(ID, NAME) VALUES (?, ?)", 1, "Матрица");
+        jdbc.batchUpdate("INSERT INTO T(ID, NAME) VALUES (?, ?)",
+                List.of(new Object[]{2, "Пила"}, new Object[]{3, null}));
+        jdbc.queryForList("SELECT ID FROM T WHERE ID = ANY(?)", Integer.class, (Object) new Integer[]{1, 2});
+        jdbc.execute("DELETE FROM T WHERE ID = 3");
+
+        assertThat(appender.list)
+                .filteredOn(event -> event.getLevel() == Level.WARN)
+                .extracting(ILoggingEvent::getFormattedMessage)
+                .satisfiesExactly(
+                        message -> assertThat(message).contains("INSERT INTO T", "[1, Матрица]"),
+                        message -> assertThat(message).contains("пакет из 2 строк", "[3, null]"),
+                        message -> assertThat(message).contains("ANY(?)", "[[1, 2]]"),
+                        message -> assertThat(message).contains("DELETE FROM T WHERE ID = 3"));
+    }
+
+    @Test
+    public void shouldStaySilentForFastQueries() {
+        JdbcTemplate jdbc = new JdbcTemplate(wrap(60_000));
+
+        jdbc.update("INSERT INTO T(ID, NAME) VALUES (?, ?)", 1, "Матрица");
+
+        assertThat(jdbc.queryForObject("SELECT NAME FROM T WHERE ID = ?", String.class, 1)).isEqualTo("Матрица");
+        assertThat(appender.list).noneMatch(event -> event.getLevel() == Level.WARN);
+    }
+
+    private DataSource wrap(long thresholdMs) {
+        return (DataSource) new SlowQueryDataSourceWrapper(thresholdMs).postProcessAfterInitialization(h2, "h2");
+    }
+}
@@ -10,14 +10,17 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.db.FriendDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.db.mapper.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.memory.EntityVersions;
+import ru.yandex.practicum.filmorate.storage.memory.FriendGraphIndex;
 
 import java.time.LocalDate;
 import java.util.Collection;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
 
 @JdbcTest
-@Import({UserDbStorage.class, UserRowMapper.class, FriendDbStorage.class})
+@Import({UserDbStorage.class, UserRowMapper.class, FriendDbStorage.class, FriendGraphIndex.class, EntityVersions.class})
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 public class UserDbStorageTest {
@@ -41,6 +44,30 @@ public class UserDbStorageTest {
         assertThat(createdUser2.getBirthday()).isEqualTo(LocalDate.of(1985, 5, 15));
     }
 
+    @Test
+    public void shouldCreateUsersInBatch() {
+        User testUser1 = new User();
+        testUser1.setEmail("ivan.petrov@mail.ru");
+        testUser1.setLogin("ivan_petrov");
+        testUser1.setName("Иван Петров");
+        testUser1.setBirthday(LocalDate.of(1990, 5, 15));
+
+        User testUser2 = new User();
+        testUser2.setEmail("maria.sidorova@gmail.com");
+        testUser2.setLogin("maria_s");
+        testUser2.setName("Мария Сидорова");
+        testUser2.setBirthday(LocalDate.of(1985, 5, 15));
+
+        List<User> createdUsers = userDbStorage.createUsers(List.of(testUser1, testUser2));
+
+        assertThat(createdUsers)
+                .extracting(User::getId)
+                .doesNotContainNull()
+                .doesNotHaveDuplicates();
+        assertThat(userDbStorage.getUser(createdUsers.get(1).getId()))
+                .hasFieldOrPropertyWithValue("login", "maria_s");
+    }
+
     @Test
     public void shouldFindUserById() {
         User testUser1 = new User();
@@ -103,4 +130,34 @@ public class UserDbStorageTest {
                 .extracting(User::getName)
                 .contains("Иван Петров", "Мария Сидорова");
     }
+
+    @Test
+    public void shouldFindUsersPage() {
+        User testUser1 = new User();
+        testUser1.setEmail("ivan.petrov@mail.ru");
+        testUser1.setLogin("ivan_petrov");
+        testUser1.setName("Иван Петров");
+        testUser1.setBirthday(LocalDate.of(1990, 5, 15));
+        User createdUser1 = userDbStorage.createUser(testUser1);
+
+        User testUser2 = new User();
+        testUser2.setEmail("maria.sidorova@gmail.com");
+        testUser2.setLogin("maria_s");
+        testUser2.setName("Мария Сидорова");
+        testUser2.setBirthday(LocalDate.of(1985, 5, 15));
+        User createdUser2 = userDbStorage.createUser(testUser2);
+
+        Collection<User> firstPage = userDbStorage.getUsersPage(0, 1);
+        Collection<User> secondPage = userDbStorage.getUsersPage(createdUser1.getId(), 1);
+
+        assertThat(firstPage)
+                .hasSize(1)
+                .extracting(User::getId)
+                .containsExactly(createdUser1.getId());
+        assertThat(secondPage)
+                .hasSize(1)
+                .extracting(User::getId)
+                .containsExactly(createdUser2.getId());
+        assertThat(userDbStorage.getUsersPage(createdUser2.getId(), 1)).isEmpty();
+    }
 }
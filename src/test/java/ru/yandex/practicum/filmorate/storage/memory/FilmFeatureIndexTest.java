@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MpaRating;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class FilmFeatureIndexTest {
+
+    @Test
+    public void shouldRankFilmsBySimilarContent() {
+        FilmFeatureIndex index = new FilmFeatureIndex(null);
+        index.putFilm(film(1, LocalDate.of(2000, 1, 1), 120, 3, 1, 2));
+        // Те же жанры и рейтинг, близкий год
+        index.putFilm(film(2, LocalDate.of(2002, 1, 1), 115, 3, 1, 2));
+        // Общий только один жанр
+        index.putFilm(film(3, LocalDate.of(2001, 1, 1), 120, 3, 1));
+        // Ничего общего, кроме длительности
+        index.putFilm(film(4, LocalDate.of(1930, 1, 1), 120, 5, 6));
+        index.putFilm(film(5, LocalDate.of(2002, 1, 1), 115, 3, 1, 2));
+
+        assertThat(index.getSimilarFilms(1, 10)).containsExactly(2, 5, 3, 4);
+        assertThat(index.getSimilarFilms(1, 1)).containsExactly(2);
+        assertThat(index.getSimilarFilms(99, 10)).isEmpty();
+
+        // После изменения фильм 2 теряет сходство с первым
+        index.putFilm(film(2, LocalDate.of(1930, 1, 1), 120, 5, 6));
+        assertThat(index.getSimilarFilms(1, 10)).containsExactly(5, 3, 2, 4);
+        assertThat(index.getSimilarFilms(4, 1)).containsExactly(2);
+    }
+
+    @Test
+    public void shouldScoreDotProductsWithEveryFilm() {
+        Random random = new Random(7);
+        int count = 1000;
+        float[] vectors = new float[count * FilmFeatureIndex.DIMENSION];
+        for (int i = 0; i < count; i++) {
+            Set<Integer> genreIds = IntStream.range(0, 1 + random.nextInt(3))
+                    .mapToObj(k -> 1 + random.nextInt(6))
+                    .collect(Collectors.toSet());
+            float[] vector = FilmFeatureIndex.encode(genreIds, 1 + random.nextInt(5),
+                    LocalDate.of(1900 + random.nextInt(125), 1, 1), 60 + random.nextInt(150));
+            System.arraycopy(vector, 0, vectors, i * FilmFeatureIndex.DIMENSION, FilmFeatureIndex.DIMENSION);
+        }
+        float[] query = FilmFeatureIndex.encode(Set.of(1, 2), 3, LocalDate.of(2000, 1, 1), 120);
+
+        float[] scores = new float[count];
+        new ScalarFeatureScorer().score(vectors, count, query, scores);
+        for (int i = 0; i < count; i++) {
+            double expected = 0;
+            for (int j = 0; j < FilmFeatureIndex.DIMENSION; j++) {
+                expected += (double) vectors[i * FilmFeatureIndex.DIMENSION + j] * query[j];
+            }
+            // Векторы единичной длины: сходство — косинус от 0 до 1
+            assertThat(scores[i]).isCloseTo((float) expected, within(1e-5f)).isBetween(0f, 1.0001f);
+        }
+    }
+
+    private static Film film(long id, LocalDate releaseDate, int duration, int mpaId, int... genreIds) {
+        Film film = new Film();
+        film.setId(id);
+        film.setReleaseDate(releaseDate);
+        film.setDuration(duration);
+        film.setMpaRating(new MpaRating(mpaId, null));
+        film.setFilmGenres(IntStream.of(genreIds)
+                .mapToObj(genreId -> new Genre(genreId, null))
+                .collect(Collectors.toSet()));
+        return film;
+    }
+}
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilmSearchIndexTest {
+
+    @Test
+    public void shouldFindFilmsByAllQueryWords() {
+        FilmSearchIndex index = createIndex();
+
+        // Разные формы слова и ё/е приводятся к одной основе
+        assertThat(index.search("приключение", true, true, 10, null)).containsExactly(1, 3);
+        assertThat(index.search("Приключения Ёжика", true, true, 10, null)).containsExactly(3);
+        assertThat(index.search("star war", true, true, 10, null)).containsExactly(2);
+        // Последнее слово ищется как начало слова
+        assertThat(index.search("косм", true, true, 10, null)).containsExactly(4, 2);
+        assertThat(index.search("ежик нет", true, true, 10, null)).isEmpty();
+    }
+
+    @Test
+    public void shouldRankTitleMatchesAndLikes() {
+        FilmSearchIndex index = createIndex();
+
+        // В названии фильма 4 слово весит больше, чем в описании фильма 2
+        assertThat(index.search("космос", true, true, 10, null)).containsExactly(4, 2);
+        assertThat(index.search("космос", false, true, 10, null)).containsExactly(2);
+        assertThat(index.search("космос", true, false, 10, null)).containsExactly(4);
+        // С учетом лайков фильм 2 выходит вперед
+        Map<Long, Integer> likes = Map.of(2L, 100);
+        assertThat(index.search("космос", true, true, 10, filmId -> likes.getOrDefault(filmId, 0)))
+                .containsExactly(2, 4);
+    }
+
+    @Test
+    public void shouldFollowFilmUpdates() {
+        FilmSearchIndex index = createIndex();
+
+        index.putFilm(film(3, "Зимний лес", "Тихая история"));
+        assertThat(index.search("ежик", true, true, 10, null)).isEmpty();
+        assertThat(index.search("приключения", true, true, 10, null)).containsExactly(1);
+        assertThat(index.search("лес", true, true, 10, null)).containsExactly(3);
+    }
+
+    @Test
+    public void shouldKeepPostingListsInOrder() {
+        Random random = new Random(11);
+        PostingList list = new PostingList();
+        TreeMap<Long, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            long filmId = 1 + random.nextInt(5000);
+            if (random.nextInt(4) == 0) {
+                list.remove(filmId);
+                expected.remove(filmId);
+            } else {
+                int fields = 1 + random.nextInt(3);
+                list.put(filmId, fields);
+                expected.put(filmId, fields);
+            }
+        }
+
+        PostingList.Decoded decoded = list.decode();
+        assertThat(decoded.filmIds()).containsExactly(expected.keySet().stream().mapToLong(Long::longValue).toArray());
+        for (int i = 0; i < decoded.filmIds().length; i++) {
+            assertThat((int) decoded.fields()[i]).isEqualTo(expected.get(decoded.filmIds()[i]));
+        }
+    }
+
+    private static FilmSearchIndex createIndex() {
+        FilmSearchIndex index = new FilmSearchIndex(null);
+        index.putFilm(film(1, "Приключения капитана", "Морское путешествие"));
+        index.putFilm(film(2, "Star Wars", "Битва в космосе"));
+        index.putFilm(film(3, "Приключение ежика", "Мультфильм о лесе"));
+        index.putFilm(film(4, "Космос", "Документальный фильм о звездах"));
+        return index;
+    }
+
+    private static Film film(long id, String name, String description) {
+        Film film = new Film();
+        film.setId(id);
+        film.setName(name);
+        film.setDescription(description);
+        return film;
+    }
+}
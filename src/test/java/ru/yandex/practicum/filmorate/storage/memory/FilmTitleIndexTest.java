@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FilmTitleIndexTest {
+
+    @Test
+    public void shouldCompleteByPopularity() {
+        FilmTitleIndex index = new FilmTitleIndex(null);
+        index.putFilm(film(1, "Звездные войны"));
+        index.putFilm(film(2, "Звезда"));
+        index.putFilm(film(3, "Звёздный путь"));
+        index.putFilm(film(4, "Зеленая миля"));
+        index.changeLikes(3, 2);
+        index.changeLikes(1, 1);
+
+        assertThat(index.complete("звезд", 10)).containsExactly(3, 1, 2);
+        assertThat(index.complete("ЗВЁЗДН", 10)).containsExactly(3, 1);
+        assertThat(index.complete("з", 2)).containsExactly(3, 1);
+        assertThat(index.complete("звездные  в", 10)).containsExactly(1);
+        assertThat(index.complete("звездо", 10)).isEmpty();
+
+        // Новое название убирает фильм из старой ветки
+        index.putFilm(film(3, "Путь"));
+        assertThat(index.complete("звезд", 10)).containsExactly(1, 2);
+        assertThat(index.complete("пу", 10)).containsExactly(3);
+    }
+
+    @Test
+    public void shouldMatchBruteForceAfterRandomChanges() {
+        Random random = new Random(5);
+        FilmTitleIndex index = new FilmTitleIndex(null);
+        Map<Long, String> titles = new HashMap<>();
+        Map<Long, Integer> likes = new HashMap<>();
+
+        for (int step = 0; step < 3000; step++) {
+            long filmId = 1 + random.nextInt(300);
+            if (random.nextInt(3) == 0 || !titles.containsKey(filmId)) {
+                // Короткие названия из трех букв: много общих префиксов, ребра часто делятся
+                String title = randomTitle(random);
+                index.putFilm(film(filmId, title));
+                titles.put(filmId, title);
+                likes.putIfAbsent(filmId, 0);
+            } else {
+                int delta = random.nextInt(4) == 0 ? -1 : 1;
+                index.changeLikes(filmId, delta);
+                likes.merge(filmId, delta, Integer::sum);
+            }
+
+            if (step % 50 == 0) {
+                for (String prefix : List.of("a", "b", "ab", "ba", "abc", "cab", "aab", "c")) {
+                    assertThat(index.complete(prefix, FilmTitleIndex.TOP_K))
+                            .as("prefix %s, step %s", prefix, step)
+                            .containsExactly(bruteForce(titles, likes, prefix));
+                }
+            }
+        }
+    }
+
+    private static long[] bruteForce(Map<Long, String> titles, Map<Long, Integer> likes, String prefix) {
+        return titles.entrySet().stream()
+                .filter(entry -> entry.getValue().startsWith(prefix))
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.comparing((Long filmId) -> -likes.get(filmId)).thenComparing(filmId -> filmId))
+                .limit(FilmTitleIndex.TOP_K)
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private static String randomTitle(Random random) {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0, length = 1 + random.nextInt(6); i < length; i++) {
+            title.append((char) ('a' + random.nextInt(3)));
+        }
+        return title.toString();
+    }
+
+    private static Film film(long id, String name) {
+        Film film = new Film();
+        film.setId(id);
+        film.setName(name);
+        return film;
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FriendGraphIndexTest {
+
+    @Test
+    public void shouldRankSuggestionsByMutualFriendsThenById() {
+        FriendGraphIndex index = new FriendGraphIndex(null);
+        index.addFriend(1, 2);
+        index.addFriend(1, 3);
+        index.addFriend(1, 4);
+        index.addFriend(2, 7);
+        index.addFriend(3, 7);
+        index.addFriend(3, 5);
+        index.addFriend(4, 6);
+        index.addFriend(4, 5);
+        index.addFriend(4, 1);
+
+        assertThat(index.getFriendSuggestions(1, 10)).containsExactly(5, 7, 6);
+        assertThat(index.getFriendSuggestions(1, 2)).containsExactly(5, 7);
+        assertThat(index.getFriendSuggestions(8, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchNaiveCountingOnLargeGraph() {
+        // Больше друзей, чем обрабатывает одна задача: счет делится между воркерами пула
+        FriendGraphIndex index = new FriendGraphIndex(null);
+        Map<Long, Set<Long>> graph = new HashMap<>();
+        Random random = new Random(42);
+        for (long userId = 1; userId <= 2_000; userId++) {
+            int friendCount = userId == 1 ? 1_500 : random.nextInt(40);
+            for (int i = 0; i < friendCount; i++) {
+                long friendId = 1 + random.nextInt(5_000);
+                if (friendId != userId) {
+                    index.addFriend(userId, friendId);
+                    graph.computeIfAbsent(userId, k -> new HashSet<>()).add(friendId);
+                }
+            }
+        }
+
+        Set<Long> userFriends = graph.get(1L);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Long friendId : userFriends) {
+            for (Long candidateId : graph.getOrDefault(friendId, Set.of())) {
+                if (candidateId != 1L && !userFriends.contains(candidateId)) {
+                    counts.merge(candidateId, 1, Integer::sum);
+                }
+            }
+        }
+        long[] expected = counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(50)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+
+        assertThat(index.getFriendSuggestions(1, 50)).containsExactly(expected);
+    }
+}
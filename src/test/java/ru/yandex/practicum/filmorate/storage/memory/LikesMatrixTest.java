@@ -0,0 +1,154 @@
+package ru.yandex.practicum.filmorate.storage.memory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class LikesMatrixTest {
+
+    @Test
+    public void shouldRecommendFilmsLikedBySimilarUsers() {
+        LikesMatrix matrix = createMatrix();
+
+        // У пользователя 2 три общих лайка с первым, у пользователей 3 и 4 — по одному
+        assertThat(matrix.recommendFilms(1, 10)).containsExactly(20, 30, 40);
+        assertThat(matrix.recommendFilms(1, 1)).containsExactly(20);
+        assertThat(matrix.recommendFilms(4, 10)).containsExactly(2, 3, 20, 30);
+        assertThat(matrix.recommendFilms(99, 10)).isEmpty();
+
+        matrix.deleteLike(20, 2);
+        assertThat(matrix.recommendFilms(1, 10)).containsExactly(30, 40);
+    }
+
+    @Test
+    public void shouldServeRecommendationsFromCheckpoint(@TempDir Path dir) {
+        Path checkpoint = dir.resolve("recommendations.checkpoint");
+        LikesMatrix matrix = createMatrix();
+        RecommendationPrecomputer precomputer = new RecommendationPrecomputer(matrix, 5, 1000, 3_600_000,
+                checkpoint.toString());
+        precomputer.refresh();
+
+        assertThat(precomputer.getRecommendations(1, 5)).containsExactly(20, 30, 40);
+        assertThat(precomputer.getRecommendations(1, 6)).isNull();
+
+        // После перезапуска ответы берутся из файла еще до первого пересчета
+        RecommendationPrecomputer restarted = new RecommendationPrecomputer(new LikesMatrix(null), 5, 1000, 3_600_000,
+                checkpoint.toString());
+        restarted.start();
+        restarted.stop();
+
+        assertThat(restarted.getRecommendations(1, 2)).containsExactly(20, 30);
+        assertThat(restarted.getRecommendations(2, 5)).containsExactly(30, 40);
+    }
+
+    @Test
+    public void shouldResumeInterruptedPassFromAppendedChunks(@TempDir Path dir) throws IOException {
+        Path checkpoint = dir.resolve("recommendations.checkpoint");
+        LikesMatrix matrix = createMatrix();
+        // Проход порциями по одному пользователю обрывается на третьем: в файле уже два кадра
+        LikesMatrix failing = new LikesMatrix(null) {
+            @Override
+            public long[] getUserIds() {
+                return matrix.getUserIds();
+            }
+
+            @Override
+            public long[] recommendFilms(long userId, int limit) {
+                if (userId == 3) {
+                    throw new IllegalStateException("сбой");
+                }
+                return matrix.recommendFilms(userId, limit);
+            }
+        };
+        RecommendationPrecomputer interrupted = new RecommendationPrecomputer(failing, 5, 1, 3_600_000,
+                checkpoint.toString());
+        assertThatThrownBy(interrupted::refresh).isInstanceOf(IllegalStateException.class);
+        // Недописанный кадр от сбоя посреди записи отбрасывается
+        Files.write(checkpoint, new byte[]{0, 0, 0, 1, 0, 0}, StandardOpenOption.APPEND);
+
+        RecommendationPrecomputer restarted = new RecommendationPrecomputer(matrix, 5, 1, 3_600_000,
+                checkpoint.toString());
+        restarted.start();
+        restarted.stop();
+        assertThat(restarted.getRecommendations(1, 5)).containsExactly(20, 30, 40);
+        assertThat(restarted.getRecommendations(2, 5)).containsExactly(30, 40);
+        assertThat(restarted.getRecommendations(3, 5)).isNull();
+
+        // Проход продолжается с третьего пользователя
+        restarted.refresh();
+        assertThat(restarted.getRecommendations(3, 5)).containsExactly(matrix.recommendFilms(3, 5));
+        assertThat(restarted.getRecommendations(4, 5)).containsExactly(2, 3, 20, 30);
+    }
+
+    @Test
+    public void shouldRankSimilarFilmsByJaccard() {
+        LikesMatrix matrix = createMatrix();
+
+        // Фильм 1: лайкнувшие {1, 2, 3, 4}; 2 и 3 — {1, 2}: 2/4; 20 — {2}, 30 — {3}, 40 — {4}: 1/4
+        assertThat(matrix.getSimilarFilms(1, 10)).containsExactly(2, 3, 20, 30, 40);
+        assertThat(matrix.getSimilarFilms(20, 2)).containsExactly(2, 3);
+
+        matrix.addLike(40, 1);
+        matrix.addLike(40, 2);
+        assertThat(matrix.getSimilarFilms(1, 10)).containsExactly(40, 2, 3, 20, 30);
+        assertThat(matrix.getSimilarFilms(20, 2)).containsExactly(2, 3);
+        assertThat(matrix.getSimilarFilms(99, 10)).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepSimilarFilmsInSyncWithLikes() {
+        // Списки, поправленные по одному изменению, совпадают со списками, собранными с нуля
+        Random random = new Random(7);
+        LikesMatrix matrix = new LikesMatrix(null);
+        Map<Long, Set<Long>> likersByFilm = new HashMap<>();
+        for (int step = 0; step < 3_000; step++) {
+            long filmId = 1 + random.nextInt(60);
+            long userId = 1 + random.nextInt(40);
+            Set<Long> likers = likersByFilm.computeIfAbsent(filmId, k -> new HashSet<>());
+            if (random.nextInt(3) == 0) {
+                matrix.deleteLike(filmId, userId);
+                likers.remove(userId);
+            } else {
+                matrix.addLike(filmId, userId);
+                likers.add(userId);
+            }
+            if (step % 10 == 0) {
+                matrix.getSimilarFilms(1 + random.nextInt(60), 5);
+            }
+            // Часть отмеченных фильмов разбирает фоновый пересчет, часть — запрос похожих
+            if (step % 17 == 0) {
+                matrix.refreshSimilarFilms();
+            }
+        }
+
+        LikesMatrix rebuilt = new LikesMatrix(null);
+        rebuilt.rebuild(() -> likersByFilm);
+        for (long filmId = 1; filmId <= 60; filmId++) {
+            assertThat(matrix.getSimilarFilms(filmId, 20))
+                    .as("фильм %d", filmId)
+                    .containsExactly(rebuilt.getSimilarFilms(filmId, 20));
+        }
+    }
+
+    private LikesMatrix createMatrix() {
+        LikesMatrix matrix = new LikesMatrix(null);
+        for (long filmId : new long[]{1, 2, 3}) {
+            matrix.addLike(filmId, 1);
+            matrix.addLike(filmId, 2);
+        }
+        matrix.addLike(20, 2);
+        matrix.addLike(1, 3);
+        matrix.addLike(30, 3);
+        matrix.addLike(40, 4);
+        matrix.addLike(1, 4);
+        return matrix;
+    }
+}